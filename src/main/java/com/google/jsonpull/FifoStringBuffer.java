@@ -22,6 +22,10 @@ final class FifoStringBuffer {
 
     private final StringBuffer buffer;
     char[] toStringHelperBuffer;
+    int growths;
+
+    // longest token copied out since the last reset
+    int highWater;
 
     public FifoStringBuffer() {
 
@@ -54,20 +58,63 @@ final class FifoStringBuffer {
         return new String( toStringHelperBuffer, start, length );
     }
 
+    /**
+     * Copies the chars from beginning to end into a shared array, which is
+     * overwritten by the next call.
+     * @param end as an integer marking last char to copy
+     * @return the shared array, holding the chars from index 0
+     */
+    public char[] getChars( int end ) {
+
+        ensureToStringHelperBufferCapacity( end );
+
+        buffer.getChars( 0, end, toStringHelperBuffer, 0 );
+        return toStringHelperBuffer;
+    }
+
     private void ensureToStringHelperBufferCapacity( int capacity ) {
 
         int oldCapacity = toStringHelperBuffer.length;
 
-        if ( capacity > oldCapacity ) {
+        if ( capacity > highWater ) {
 
-            char[] newToStringHelperBuffer = new char[capacity];
-            for (int i = 0; i < oldCapacity; i++) {
+            highWater = capacity;
+        }
 
-                newToStringHelperBuffer[i] = toStringHelperBuffer[i];
-            }
+        if ( capacity > oldCapacity ) {
 
+            char[] newToStringHelperBuffer = new char[Math.max( capacity, oldCapacity << 1 )];
+            System.arraycopy( toStringHelperBuffer, 0, newToStringHelperBuffer, 0, oldCapacity );
             toStringHelperBuffer = newToStringHelperBuffer;
+            growths++;
+        }
+    }
+
+    /**
+     * Replaces the helper arrays with ones of the given size, and releases unused
+     * capacity of the buffer, if they are far larger.
+     */
+    public void shrink( int capacity ) {
+
+        if ( JsonBufferProfile.isOversized( toStringHelperBuffer.length, capacity ) ) {
+
+            toStringHelperBuffer = new char[capacity];
         }
+
+        if ( JsonBufferProfile.isOversized( buffer.capacity(), Math.max( capacity, buffer.length() ) ) ) {
+
+            buffer.trimToSize();
+            buffer.ensureCapacity( capacity );
+        }
+    }
+
+    /**
+     * Sizes the helper array for tokens of up to the given length.
+     */
+    public void presize( int capacity ) {
+
+        toStringHelperBuffer = new char[capacity];
+        buffer.ensureCapacity( capacity );
     }
 
     public void trim() {
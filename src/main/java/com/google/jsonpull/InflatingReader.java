@@ -0,0 +1,353 @@
+/*
+ * Copyright (c) 2008-2010 Metova, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jsonpull;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads UTF-8 text from gzip, zlib or raw deflate compressed input.
+ *
+ * Replaces a GZIPInputStream and InputStreamReader stack: compressed bytes are inflated
+ * into one block and decoded straight into the array passed to read(), which for a
+ * parser created with new Json(Reader) is its working buffer.
+ * The format is detected from the first bytes, concatenated gzip members are read in sequence.
+ */
+public final class InflatingReader extends Reader {
+
+    private static final int BLOCK_SIZE = 8192;
+
+    private static final int FORMAT_GZIP = 1;
+    private static final int FORMAT_ZLIB = 2;
+    private static final int FORMAT_DEFLATE = 3;
+
+    private static final int GZIP_MAGIC_1 = 0x1F;
+    private static final int GZIP_MAGIC_2 = 0x8B;
+    private static final int GZIP_DEFLATE = 8;
+    private static final int GZIP_FHCRC = 2;
+    private static final int GZIP_FEXTRA = 4;
+    private static final int GZIP_FNAME = 8;
+    private static final int GZIP_FCOMMENT = 16;
+
+    private final InputStream in;
+    private final byte[] input;
+    private int inputPosition, inputLimit;
+
+    private final byte[] output;
+    private int outputPosition, outputLimit;
+
+    private Inflater inflater;
+    private final CRC32 crc;
+    private int format;
+    private boolean finished;
+
+    private final Utf8Decoder decoder = new Utf8Decoder();
+
+    public InflatingReader(InputStream in) {
+
+        this.in = in;
+        input = new byte[BLOCK_SIZE];
+        output = new byte[BLOCK_SIZE];
+        crc = new CRC32();
+    }
+
+    public int read( char[] chars, int offset, int length ) throws IOException {
+
+        if ( length == 0 ) {
+
+            return 0;
+        }
+
+        if ( format == 0 ) {
+
+            start();
+        }
+
+        while (true) {
+
+            // a utf-8 sequence is at most 4 bytes, keep them together
+            if ( outputLimit - outputPosition < 4 && !finished ) {
+
+                inflate();
+            }
+
+            if ( outputPosition == outputLimit && finished && !decoder.hasPendingLowSurrogate() ) {
+
+                return -1;
+            }
+
+            int count = decoder.decode( output, outputPosition, outputLimit, finished, chars, offset, length );
+            outputPosition = decoder.getPosition();
+
+            if ( count > 0 ) {
+
+                return count;
+            }
+        }
+    }
+
+    public void close() throws IOException {
+
+        if ( inflater != null ) {
+
+            inflater.end();
+        }
+
+        in.close();
+    }
+
+    private void start() throws IOException {
+
+        if ( !ensureInput( 2 ) ) {
+
+            throw new EOFException( "Unexpected end of compressed input" );
+        }
+
+        int first = input[inputPosition] & 0xFF;
+        int second = input[inputPosition + 1] & 0xFF;
+
+        if ( first == GZIP_MAGIC_1 && second == GZIP_MAGIC_2 ) {
+
+            format = FORMAT_GZIP;
+            inflater = new Inflater( true );
+            inputPosition += 2;
+            readGzipHeader();
+        }
+        else if ( ( first & 0x0F ) == GZIP_DEFLATE && ( ( first << 8 ) | second ) % 31 == 0 ) {
+
+            format = FORMAT_ZLIB;
+            inflater = new Inflater( false );
+        }
+        else {
+
+            format = FORMAT_DEFLATE;
+            inflater = new Inflater( true );
+        }
+    }
+
+    /**
+     * Inflates the next block, after the bytes that are still to be decoded.
+     */
+    private void inflate() throws IOException {
+
+        int remaining = outputLimit - outputPosition;
+        System.arraycopy( output, outputPosition, output, 0, remaining );
+        outputPosition = 0;
+        outputLimit = remaining;
+
+        while (!finished && outputLimit < output.length) {
+
+            if ( inflater.needsInput() ) {
+
+                if ( inputPosition == inputLimit && !fillInput() ) {
+
+                    throw new EOFException( "Unexpected end of compressed input" );
+                }
+
+                inflater.setInput( input, inputPosition, inputLimit - inputPosition );
+                inputPosition = inputLimit;
+            }
+
+            int count;
+
+            try {
+
+                count = inflater.inflate( output, outputLimit, output.length - outputLimit );
+            }
+            catch (DataFormatException e) {
+
+                throw new IOException( e.getMessage() );
+            }
+
+            if ( format == FORMAT_GZIP ) {
+
+                crc.update( output, outputLimit, count );
+            }
+
+            outputLimit += count;
+
+            if ( inflater.finished() ) {
+
+                inputPosition = inputLimit - inflater.getRemaining();
+                endMember();
+            }
+            else if ( inflater.needsDictionary() ) {
+
+                throw new IOException( "Preset dictionaries are not supported" );
+            }
+            else if ( count > 0 ) {
+
+                return;
+            }
+        }
+    }
+
+    private void endMember() throws IOException {
+
+        if ( format != FORMAT_GZIP ) {
+
+            finished = true;
+            return;
+        }
+
+        long expectedCrc = readInt() & 0xFFFFFFFFL;
+        long expectedSize = readInt() & 0xFFFFFFFFL;
+
+        if ( expectedCrc != crc.getValue() || expectedSize != ( inflater.getBytesWritten() & 0xFFFFFFFFL ) ) {
+
+            throw new IOException( "Corrupt gzip trailer" );
+        }
+
+        // concatenated members, anything else after a member is ignored like GZIPInputStream does
+        int first = readByte();
+        int second = ( first == GZIP_MAGIC_1 ) ? readByte() : -1;
+
+        if ( second != GZIP_MAGIC_2 ) {
+
+            finished = true;
+            return;
+        }
+
+        inflater.reset();
+        crc.reset();
+        readGzipHeader();
+    }
+
+    /**
+     * Reads the rest of a gzip member header, after the magic bytes.
+     */
+    private void readGzipHeader() throws IOException {
+
+        if ( readByte() != GZIP_DEFLATE ) {
+
+            throw new IOException( "Unsupported gzip compression method" );
+        }
+
+        int flags = readByte();
+
+        // mtime, xfl, os
+        skipBytes( 6 );
+
+        if ( ( flags & GZIP_FEXTRA ) != 0 ) {
+
+            skipBytes( readByte() | ( readByte() << 8 ) );
+        }
+
+        if ( ( flags & GZIP_FNAME ) != 0 ) {
+
+            skipString();
+        }
+
+        if ( ( flags & GZIP_FCOMMENT ) != 0 ) {
+
+            skipString();
+        }
+
+        if ( ( flags & GZIP_FHCRC ) != 0 ) {
+
+            skipBytes( 2 );
+        }
+    }
+
+    private void skipString() throws IOException {
+
+        for (int read = readByte(); read != 0; read = readByte()) {
+
+            if ( read == -1 ) {
+
+                throw new EOFException( "Unexpected end of gzip header" );
+            }
+        }
+    }
+
+    private void skipBytes( int count ) throws IOException {
+
+        for (int i = 0; i < count; i++) {
+
+            if ( readByte() == -1 ) {
+
+                throw new EOFException( "Unexpected end of gzip header" );
+            }
+        }
+    }
+
+    private int readInt() throws IOException {
+
+        int value = 0;
+
+        for (int i = 0; i < 4; i++) {
+
+            int read = readByte();
+
+            if ( read == -1 ) {
+
+                throw new EOFException( "Unexpected end of gzip trailer" );
+            }
+
+            value |= read << ( i * 8 );
+        }
+
+        return value;
+    }
+
+    private int readByte() throws IOException {
+
+        if ( inputPosition == inputLimit && !fillInput() ) {
+
+            return -1;
+        }
+
+        return input[inputPosition++] & 0xFF;
+    }
+
+    /**
+     * Reads until at least count bytes are buffered.
+     * @return false if the input ends first
+     */
+    private boolean ensureInput( int count ) throws IOException {
+
+        System.arraycopy( input, inputPosition, input, 0, inputLimit - inputPosition );
+        inputLimit -= inputPosition;
+        inputPosition = 0;
+
+        while (inputLimit < count) {
+
+            int read = in.read( input, inputLimit, input.length - inputLimit );
+
+            if ( read < 0 ) {
+
+                return false;
+            }
+
+            inputLimit += read;
+        }
+
+        return true;
+    }
+
+    private boolean fillInput() throws IOException {
+
+        int count = in.read( input, 0, input.length );
+        inputPosition = 0;
+        inputLimit = ( count < 0 ) ? 0 : count;
+        return count > 0;
+    }
+}
@@ -16,21 +16,71 @@
  */
 package com.google.jsonpull;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.util.Enumeration;
 
-import m.org.apache.commons.io.StringInputStream;
-import m.org.apache.commons.lang.StringEscapeUtils;
+import m.java.io.StringReader;
 
 public final class Json extends JsonBase {
 
+    private static final int STREAM_CHUNK = 1024;
+    private static final byte[] BASE64_VALUES = new byte[128];
+
+    static {
+
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+
+        for (int i = 0; i < BASE64_VALUES.length; i++) {
+
+            BASE64_VALUES[i] = -1;
+        }
+
+        for (int i = 0; i < alphabet.length(); i++) {
+
+            BASE64_VALUES[alphabet.charAt( i )] = (byte) i;
+        }
+
+        // url-safe alphabet
+        BASE64_VALUES['-'] = 62;
+        BASE64_VALUES['_'] = 63;
+    }
+
+    /**
+     * Returned by getTimestampValue() and getTimestampNanos() for a null value.
+     */
+    public static final long NO_DATE = Long.MIN_VALUE;
+
+    private static final int LONG_DIGITS = 18;
+    private static final BigInteger LONG_DIGITS_SCALE = BigInteger.valueOf( 1000000000000000000L );
+
+    // the most integer digits getBigIntegerValue() expands an exponent to, 1e999999999 would take minutes
+    private static final int MAX_INTEGER_DIGITS = 10000;
+
+    // set by parseDate()
+    private long dateSeconds;
+    private int dateNanos;
+
     /**
      * Creates a json object from a String.
      * @param input - a String used to create the json object
      */
     public Json(String input) {
 
-        this( new StringInputStream( input ) );
+        this( new StringReader( input ) );
+    }
+
+    /**
+     * Creates a json object from a character stream.
+     * @param reader - a Reader used to create the json object
+     */
+    public Json(Reader reader) {
+
+        super( reader );
     }
 
     /**
@@ -86,6 +136,54 @@ public final class Json extends JsonBase {
         }
     }
 
+    /**
+     * Reads the next object once, recording where the value of each key starts, so that
+     * JsonObjectIndex.seek() can move back to any of them, in any order. The parser is left after the object.
+     * Only a parser reading from a String, StringReader or CharArrayReader can do this.
+     * @return the index, or null if the value is null
+     */
+    public JsonObjectIndex indexObject() {
+
+        if ( !isSeekable() ) {
+
+            throw new IllegalStateException( "Only a parser reading from memory can index an object" );
+        }
+
+        if ( !next( START_OBJECT ) ) {
+
+            return null;
+        }
+
+        JsonObjectIndex index = new JsonObjectIndex( this );
+        int event;
+
+        while (( event = next() ) != END_OBJECT) {
+
+            assertEventType( event, KEY );
+            index.add( getTokenChars(), getTokenStart(), getTokenLength() );
+
+            int depth = 0;
+
+            do {
+
+                event = next();
+
+                if ( event == START_OBJECT || event == START_ARRAY ) {
+
+                    depth++;
+                }
+                else if ( event == END_OBJECT || event == END_ARRAY ) {
+
+                    depth--;
+                }
+            }
+            while (depth > 0);
+        }
+
+        index.end();
+        return index;
+    }
+
     /**
      * Consumes a single event, which must be of the specified type.
      * @return boolean - returns whether or not the next element is of the expected type
@@ -160,7 +258,84 @@ public final class Json extends JsonBase {
     public String getStringValue() {
 
         next( STRING );
-        return StringEscapeUtils.unescapeJava( getString() );
+        return JsonEscapes.unescape( getString() );
+    }
+
+    /**
+     * Return the next String value as a Reader, which unescapes the characters as they are read.
+     * The value is never held in memory as a whole. The Reader is only valid until the next
+     * call to any other method of this object, unread characters are skipped then.
+     * @return Reader - the characters of the next string, or null if the value is null
+     */
+    public Reader getStringReader() {
+
+        int event = nextStreamed();
+        assertEventType( event, STRING );
+        return ( event == NULL ) ? null : new JsonStringReader( this );
+    }
+
+    /**
+     * Decodes the next base64 String value to an output stream, without holding the value in memory.
+     * Both the standard and the url-safe alphabets are accepted, whitespace and padding are ignored.
+     * @param out - the stream that receives the decoded bytes
+     * @return long - the number of bytes written, or -1 if the value is null
+     */
+    public long getBase64Value( OutputStream out ) {
+
+        Reader reader = getStringReader();
+
+        if ( reader == null ) {
+
+            return -1;
+        }
+
+        char[] chars = new char[STREAM_CHUNK];
+        byte[] bytes = new byte[STREAM_CHUNK];
+        long written = 0;
+        int quantum = 0;
+        int bits = 0;
+        int count = 0;
+
+        try {
+
+            for (int read = reader.read( chars, 0, STREAM_CHUNK ); read != -1; read = reader.read( chars, 0, STREAM_CHUNK )) {
+
+                for (int i = 0; i < read; i++) {
+
+                    char c = chars[i];
+                    int value = ( c < BASE64_VALUES.length ) ? BASE64_VALUES[c] : -1;
+
+                    if ( value == -1 ) {
+
+                        if ( c == '=' || FifoStringBuffer.isWhitespace( c ) ) {
+
+                            continue;
+                        }
+
+                        throw new IllegalArgumentException( "Invalid base64 character '" + c + "'" );
+                    }
+
+                    quantum = ( quantum << 6 ) | value;
+                    bits += 6;
+
+                    if ( bits >= 8 ) {
+
+                        bits -= 8;
+                        bytes[count++] = (byte) ( quantum >> bits );
+                    }
+                }
+
+                out.write( bytes, 0, count );
+                written += count;
+                count = 0;
+            }
+        }
+        catch (IOException e) {
+
+            throw new RuntimeException( e.getMessage() );
+        }
+
+        return written;
     }
 
     public String getUnknownValue() {
@@ -208,7 +383,10 @@ public final class Json extends JsonBase {
      */
     public int getIntegerValue() {
 
-        next();
+        if ( next() == VARIABLE && getNumberType() == NUMBER_INT ) {
+
+            return (int) getNumberValue();
+        }
 
         try {
 
@@ -228,7 +406,10 @@ public final class Json extends JsonBase {
      */
     public double getDoubleValue() {
 
-        next();
+        if ( next() == VARIABLE && ( getNumberType() == NUMBER_INT || getNumberType() == NUMBER_LONG ) ) {
+
+            return getNumberValue();
+        }
 
         try {
 
@@ -248,7 +429,10 @@ public final class Json extends JsonBase {
      */
     public long getLongValue() {
 
-        next();
+        if ( next() == VARIABLE && ( getNumberType() == NUMBER_INT || getNumberType() == NUMBER_LONG ) ) {
+
+            return getNumberValue();
+        }
 
         try {
 
@@ -261,22 +445,466 @@ public final class Json extends JsonBase {
     }
 
     /**
-     * Converts to a long date value from a Date string.
-     * @return long - date value in milliseconds
+     * Return an arbitrary-precision decimal value, built from the digits of the token.
+     * @return BigDecimal - the next value, or null if it is null or not a number
+     */
+    public BigDecimal getBigDecimalValue() {
+
+        if ( next() != VARIABLE ) {
+
+            return null;
+        }
+
+        switch (getNumberType()) {
+
+            case NUMBER_INT:
+            case NUMBER_LONG: {
+
+                return BigDecimal.valueOf( getNumberValue() );
+            }
+
+            case NUMBER_BIG_INTEGER:
+            case NUMBER_DOUBLE:
+            case NUMBER_BIG_DECIMAL: {
+
+                return new BigDecimal( getTokenChars(), getTokenStart(), getTokenLength() );
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Return an arbitrary-precision integer value, built from the digits of the token.
+     * A decimal value is truncated towards zero.
+     * @return BigInteger - the next value, or null if it is null or not a number
+     * @throws NumberFormatException if the exponent makes the integer longer than 10000 digits
+     */
+    public BigInteger getBigIntegerValue() {
+
+        if ( next() != VARIABLE ) {
+
+            return null;
+        }
+
+        switch (getNumberType()) {
+
+            case NUMBER_INT:
+            case NUMBER_LONG: {
+
+                return BigInteger.valueOf( getNumberValue() );
+            }
+
+            case NUMBER_BIG_INTEGER: {
+
+                return toBigInteger( getTokenChars(), getTokenStart(), getTokenLength() );
+            }
+
+            case NUMBER_DOUBLE:
+            case NUMBER_BIG_DECIMAL: {
+
+                BigDecimal value = new BigDecimal( getTokenChars(), getTokenStart(), getTokenLength() );
+                long digits = (long) value.precision() - value.scale();
+
+                if ( digits > MAX_INTEGER_DIGITS ) {
+
+                    throw new NumberFormatException( "More than " + MAX_INTEGER_DIGITS + " integer digits" );
+                }
+
+                // below one, without dividing by a power of ten as large as the scale
+                return ( digits <= 0 ) ? BigInteger.ZERO : value.toBigInteger();
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Converts an integer token to a BigInteger, consuming as many digits as fit in a long at a time.
+     */
+    private static BigInteger toBigInteger( char[] chars, int start, int length ) {
+
+        int end = start + length;
+        boolean negative = chars[start] == '-';
+        BigInteger result = BigInteger.ZERO;
+
+        for (int i = negative ? start + 1 : start; i < end;) {
+
+            int chunkEnd = Math.min( i + LONG_DIGITS, end );
+            BigInteger scale = ( chunkEnd - i == LONG_DIGITS ) ? LONG_DIGITS_SCALE : BigInteger.valueOf( 10 ).pow( chunkEnd - i );
+            long chunk = 0;
+
+            for (; i < chunkEnd; i++) {
+
+                chunk = chunk * 10 + ( chars[i] - '0' );
+            }
+
+            result = result.multiply( scale ).add( BigInteger.valueOf( chunk ) );
+        }
+
+        return negative ? result.negate() : result;
+    }
+
+    /**
+     * Converts to a long date value from a Date string, such as "\/Date(1234567890123)\/".
+     * @return long - date value in milliseconds, 0 if the value is not a date
      */
     public long getDateValue() {
 
-        try {
+        int event = next();
+        return ( ( event == STRING || event == VARIABLE ) && parseDate() ) ? dateMillis() : 0;
+    }
+
+    /**
+     * Returns the next value as a point in time. Accepts ISO-8601 timestamps such as 2010-05-17,
+     * 2010-05-17T12:30:05Z or 2010-05-17 12:30:05.123456+02:00, where a missing offset means UTC,
+     * the "\/Date(1274099405123+0200)\/" form, whose offset does not change the instant, and
+     * numbers of milliseconds. The value is parsed from the characters of the token.
+     * @return long - milliseconds since 1970-01-01T00:00:00Z, or NO_DATE if the value is null
+     * @throws IllegalArgumentException if the value is not a date
+     */
+    public long getTimestampValue() {
+
+        return nextDate() ? dateMillis() : NO_DATE;
+    }
 
-            String text = getStringValue();
+    /**
+     * Returns the next value as a point in time, like getTimestampValue(), keeping fractions of a millisecond.
+     * @return long - nanoseconds since 1970-01-01T00:00:00Z, or NO_DATE if the value is null
+     * @throws IllegalArgumentException if the value is not a date
+     */
+    public long getTimestampNanos() {
 
-            text = text.substring( "\\/Date(".length() - 1, text.length() - ")\\/".length() + 1 );
+        return nextDate() ? dateSeconds * 1000000000L + dateNanos : NO_DATE;
+    }
 
-            return Long.parseLong( text );
+    /**
+     * Consumes the next value and parses it into dateSeconds and dateNanos, unless it is null.
+     * @return false if the value is null
+     */
+    private boolean nextDate() {
+
+        int event = next();
+
+        if ( event == NULL ) {
+
+            return false;
         }
-        catch (Exception e) {
 
-            return 0;
+        if ( event != STRING && event != VARIABLE ) {
+
+            throw new IllegalArgumentException( "expected a date, found " + (char) event );
         }
+
+        if ( !parseDate() ) {
+
+            throw new IllegalArgumentException( "Not a date: " + getString() );
+        }
+
+        return true;
+    }
+
+    private long dateMillis() {
+
+        return dateSeconds * 1000 + dateNanos / 1000000;
+    }
+
+    /**
+     * Parses the current token into dateSeconds and dateNanos.
+     * @return false if it is not a date
+     */
+    private boolean parseDate() {
+
+        char[] chars = getTokenChars();
+        int start = getTokenStart();
+        int end = start + getTokenLength();
+
+        if ( getTokenLength() == 0 || chars == null ) {
+
+            return false;
+        }
+
+        if ( getNumberType() == NUMBER_INT || getNumberType() == NUMBER_LONG ) {
+
+            return setDateMillis( getNumberValue() );
+        }
+
+        if ( chars[start] == '\\' || chars[start] == '/' ) {
+
+            return parseMicrosoftDate( chars, start, end );
+        }
+
+        return parseIsoDate( chars, start, end );
+    }
+
+    /**
+     * Parses "/Date(ms)/" or "/Date(ms+hhmm)/", with or without escaped slashes.
+     */
+    private boolean parseMicrosoftDate( char[] chars, int i, int end ) {
+
+        if ( chars[i] == '\\' ) {
+
+            i++;
+        }
+
+        if ( !regionMatches( chars, i, end, "/Date(" ) ) {
+
+            return false;
+        }
+
+        i += 6;
+        boolean negative = i < end && chars[i] == '-';
+
+        if ( negative ) {
+
+            i++;
+        }
+
+        int digitsStart = i;
+        long millis = 0;
+
+        for (; i < end && chars[i] >= '0' && chars[i] <= '9' && i - digitsStart < LONG_DIGITS; i++) {
+
+            millis = millis * 10 + ( chars[i] - '0' );
+        }
+
+        if ( i == digitsStart ) {
+
+            return false;
+        }
+
+        if ( i + 4 < end && ( chars[i] == '+' || chars[i] == '-' ) ) {
+
+            // the offset only says how the instant was displayed
+            if ( digits( chars, i + 1, 4 ) < 0 ) {
+
+                return false;
+            }
+
+            i += 5;
+        }
+
+        if ( i < end && chars[i] == ')' ) {
+
+            i++;
+        }
+        else {
+
+            return false;
+        }
+
+        if ( i < end && chars[i] == '\\' ) {
+
+            i++;
+        }
+
+        if ( i + 1 != end || chars[i] != '/' ) {
+
+            return false;
+        }
+
+        return setDateMillis( negative ? -millis : millis );
+    }
+
+    /**
+     * Parses yyyy-MM-dd, optionally followed by T or a space, HH:mm, :ss, a fraction and an offset.
+     */
+    private boolean parseIsoDate( char[] chars, int i, int end ) {
+
+        if ( end - i < 10 || chars[i + 4] != '-' || chars[i + 7] != '-' ) {
+
+            return false;
+        }
+
+        int year = digits( chars, i, 4 );
+        int month = digits( chars, i + 5, 2 );
+        int day = digits( chars, i + 8, 2 );
+
+        if ( year < 0 || month < 1 || month > 12 || day < 1 || day > monthLength( year, month ) ) {
+
+            return false;
+        }
+
+        i += 10;
+        int seconds = 0;
+        int nanos = 0;
+
+        if ( i < end && ( chars[i] == 'T' || chars[i] == 't' || chars[i] == ' ' ) ) {
+
+            if ( end - i < 6 || chars[i + 3] != ':' ) {
+
+                return false;
+            }
+
+            int hour = digits( chars, i + 1, 2 );
+            int minute = digits( chars, i + 4, 2 );
+            int second = 0;
+            i += 6;
+
+            if ( i < end && chars[i] == ':' ) {
+
+                second = ( end - i < 3 ) ? -1 : digits( chars, i + 1, 2 );
+                i += 3;
+            }
+
+            if ( hour < 0 || hour > 24 || minute < 0 || minute > 59 || second < 0 || second > 60 ) {
+
+                return false;
+            }
+
+            // 24:00:00 is the end of the day, the same instant as the start of the next
+            if ( hour == 24 && ( minute != 0 || second != 0 ) ) {
+
+                return false;
+            }
+
+            seconds = hour * 3600 + minute * 60 + second;
+
+            if ( i < end && ( chars[i] == '.' || chars[i] == ',' ) ) {
+
+                int scale = 100000000;
+                i++;
+
+                if ( i == end || chars[i] < '0' || chars[i] > '9' ) {
+
+                    return false;
+                }
+
+                for (; i < end && chars[i] >= '0' && chars[i] <= '9'; i++) {
+
+                    nanos += ( chars[i] - '0' ) * scale;
+                    scale /= 10;
+                }
+
+                if ( hour == 24 && nanos != 0 ) {
+
+                    return false;
+                }
+            }
+
+            if ( i < end ) {
+
+                char zone = chars[i];
+
+                if ( zone == 'Z' || zone == 'z' ) {
+
+                    i++;
+                }
+                else if ( zone == '+' || zone == '-' ) {
+
+                    int offsetHours = ( end - i < 3 ) ? -1 : digits( chars, i + 1, 2 );
+                    int offsetMinutes = 0;
+                    i += 3;
+
+                    if ( i < end && chars[i] == ':' ) {
+
+                        i++;
+                    }
+
+                    if ( i < end ) {
+
+                        offsetMinutes = ( end - i < 2 ) ? -1 : digits( chars, i, 2 );
+                        i += 2;
+                    }
+
+                    if ( offsetHours < 0 || offsetHours > 23 || offsetMinutes < 0 || offsetMinutes > 59 ) {
+
+                        return false;
+                    }
+
+                    int offset = offsetHours * 3600 + offsetMinutes * 60;
+                    seconds -= ( zone == '+' ) ? offset : -offset;
+                }
+            }
+        }
+
+        if ( i != end ) {
+
+            return false;
+        }
+
+        dateSeconds = epochDay( year, month, day ) * 86400 + seconds;
+        dateNanos = nanos;
+        return true;
+    }
+
+    private boolean setDateMillis( long millis ) {
+
+        long seconds = millis / 1000;
+        int remainder = (int) ( millis % 1000 );
+
+        if ( remainder < 0 ) {
+
+            seconds--;
+            remainder += 1000;
+        }
+
+        dateSeconds = seconds;
+        dateNanos = remainder * 1000000;
+        return true;
+    }
+
+    /**
+     * @return the number of days from 1970-01-01 to a date of the proleptic Gregorian calendar
+     */
+    private static long epochDay( int year, int month, int day ) {
+
+        // count years from March, so that the leap day is the last day of the year
+        long y = ( month <= 2 ) ? year - 1 : year;
+        long era = ( y >= 0 ? y : y - 399 ) / 400;
+        long yearOfEra = y - era * 400;
+        long dayOfYear = ( 153 * ( month + ( month > 2 ? -3 : 9 ) ) + 2 ) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    private static int monthLength( int year, int month ) {
+
+        if ( month == 2 ) {
+
+            return ( year % 4 == 0 && ( year % 100 != 0 || year % 400 == 0 ) ) ? 29 : 28;
+        }
+
+        return ( month == 4 || month == 6 || month == 9 || month == 11 ) ? 30 : 31;
+    }
+
+    /**
+     * @return the value of count decimal digits, or -1 if they are not all digits
+     */
+    private static int digits( char[] chars, int start, int count ) {
+
+        int value = 0;
+
+        for (int i = start; i < start + count; i++) {
+
+            char c = chars[i];
+
+            if ( c < '0' || c > '9' ) {
+
+                return -1;
+            }
+
+            value = value * 10 + ( c - '0' );
+        }
+
+        return value;
+    }
+
+    private static boolean regionMatches( char[] chars, int start, int end, String text ) {
+
+        if ( end - start < text.length() ) {
+
+            return false;
+        }
+
+        for (int i = 0; i < text.length(); i++) {
+
+            if ( chars[start + i] != text.charAt( i ) ) {
+
+                return false;
+            }
+        }
+
+        return true;
     }
 }
@@ -0,0 +1,494 @@
+/*
+ * Copyright (c) 2008-2010 Metova, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jsonpull;
+
+import java.io.Reader;
+import java.nio.ByteBuffer;
+
+/**
+ * Parses a UTF-8 document that arrives in chunks, without blocking a thread while waiting for input.
+ *
+ * Chunks are decoded into an internal queue, and the regular pull parser is only advanced
+ * once the queue holds the complete lexical units (brackets, separators, strings and
+ * scalars) of the next token, so it never reaches the end of the queue before the end of input.
+ * Brackets and strings are complete as soon as their last character arrives, a key once its
+ * ':' arrives, and a number or literal once the character after it arrives.
+ * Events are delivered to the subscriber as long as it has outstanding demand.
+ *
+ * Like a java.util.concurrent.Flow.Processor, the methods of this class must not be called
+ * concurrently, it holds no locks.
+ */
+public final class JsonAsyncParser implements JsonSubscription {
+
+    private static final int LEX_OUTSIDE = 0;
+    private static final int LEX_STRING = 1;
+    private static final int LEX_ESCAPE = 2;
+    private static final int LEX_SCALAR = 3;
+
+    private final InputQueue input;
+    private final Json parser;
+
+    private JsonSubscriber subscriber;
+    private long demand;
+    private boolean draining;
+    private boolean done;
+
+    // bytes fed but not decoded yet, at most the start of one sequence between feeds
+    private final Utf8Decoder decoder = new Utf8Decoder();
+    private final byte[] undecoded = new byte[1024];
+    private int undecodedLength;
+    private final char[] decoded = new char[1024];
+
+    // lexical units not yet consumed by the parser, as absolute end offsets and types:
+    // the bracket, ',' or ':' itself, '"' for a string and VARIABLE for a scalar
+    private int lexState = LEX_OUTSIDE;
+    private long[] unitEnds = new long[16];
+    private char[] unitTypes = new char[16];
+    private int unitHead, unitTail;
+
+    public JsonAsyncParser() {
+
+        input = new InputQueue();
+        parser = new Json( input );
+    }
+
+    /**
+     * Sets the subscriber and calls its onSubscribe().
+     */
+    public void subscribe( JsonSubscriber subscriber ) {
+
+        if ( this.subscriber != null ) {
+
+            throw new IllegalStateException( "Already subscribed" );
+        }
+
+        this.subscriber = subscriber;
+        subscriber.onSubscribe( this );
+        drain();
+    }
+
+    /**
+     * Appends a chunk of input, and delivers the events it completes.
+     */
+    public void feed( byte[] bytes, int offset, int length ) {
+
+        if ( done ) {
+
+            return;
+        }
+
+        while (length > 0) {
+
+            int count = Math.min( length, undecoded.length - undecodedLength );
+            System.arraycopy( bytes, offset, undecoded, undecodedLength, count );
+            undecodedLength += count;
+            offset += count;
+            length -= count;
+            decode( false );
+        }
+
+        drain();
+    }
+
+    /**
+     * Appends the remaining bytes of a buffer, and delivers the events it completes.
+     */
+    public void feed( ByteBuffer bytes ) {
+
+        if ( done ) {
+
+            return;
+        }
+
+        while (bytes.hasRemaining()) {
+
+            int count = Math.min( bytes.remaining(), undecoded.length - undecodedLength );
+            bytes.get( undecoded, undecodedLength, count );
+            undecodedLength += count;
+            decode( false );
+        }
+
+        drain();
+    }
+
+    /**
+     * Signals that no more input will be fed.
+     */
+    public void endOfInput() {
+
+        if ( done ) {
+
+            return;
+        }
+
+        decode( true );
+        input.endOfInput = true;
+        drain();
+    }
+
+    /**
+     * @return true when outstanding demand can only be satisfied by feeding more input
+     */
+    public boolean needsInput() {
+
+        return !done && !input.endOfInput && demand > 0 && !hasCompleteToken();
+    }
+
+    /**
+     * @return number of decoded characters waiting to be parsed
+     */
+    public int getBufferedCharacters() {
+
+        return input.limit - input.position;
+    }
+
+    public void request( long n ) {
+
+        if ( done ) {
+
+            return;
+        }
+
+        if ( n <= 0 ) {
+
+            fail( new IllegalArgumentException( "Non-positive request: " + n ) );
+            return;
+        }
+
+        demand += n;
+
+        // saturate, like Flow
+        if ( demand < 0 ) {
+
+            demand = Long.MAX_VALUE;
+        }
+
+        drain();
+    }
+
+    public void cancel() {
+
+        done = true;
+        input.clear();
+    }
+
+    private void drain() {
+
+        // a subscriber calling request() from onEvent() is served by the outer loop
+        if ( draining || subscriber == null ) {
+
+            return;
+        }
+
+        draining = true;
+
+        try {
+
+            while (!done && demand > 0 && hasCompleteToken()) {
+
+                int event = parser.next();
+                String value = ( event == JsonBase.KEY || event == JsonBase.STRING || event == JsonBase.VARIABLE ) ? parser.getString() : null;
+                int level = parser.getLevel();
+                demand--;
+
+                subscriber.onEvent( event, value, level );
+
+                if ( level == 0 && !done ) {
+
+                    done = true;
+                    subscriber.onComplete();
+                }
+            }
+        }
+        catch (RuntimeException e) {
+
+            fail( e );
+        }
+        finally {
+
+            draining = false;
+        }
+    }
+
+    private void fail( Throwable throwable ) {
+
+        if ( !done ) {
+
+            done = true;
+            input.clear();
+            subscriber.onError( throwable );
+        }
+    }
+
+    /**
+     * @return true if the next call to next() finds all the characters it reads in the queue
+     */
+    private boolean hasCompleteToken() {
+
+        if ( input.endOfInput ) {
+
+            return true;
+        }
+
+        long consumed = input.offset + input.position - parser.getUnconsumedInput();
+
+        while (unitHead != unitTail && unitEnds[unitHead] <= consumed) {
+
+            unitHead++;
+        }
+
+        int unit = unitHead;
+
+        // the separator is consumed with the token after it
+        if ( unit != unitTail && unitTypes[unit] == ',' ) {
+
+            unit++;
+        }
+
+        if ( unit == unitTail ) {
+
+            return false;
+        }
+
+        switch (unitTypes[unit]) {
+
+            case '"':
+                return !parser.isExpectingKey() || unit + 1 != unitTail;
+            case JsonBase.VARIABLE:
+                return unit + 1 != unitTail;
+        }
+
+        return true;
+    }
+
+    /**
+     * Decodes the staged bytes into the queue, keeping a sequence cut off at the end unless end is set.
+     */
+    private void decode( boolean end ) {
+
+        int position = 0;
+
+        while (true) {
+
+            int count = decoder.decode( undecoded, position, undecodedLength, end, decoded, 0, decoded.length );
+
+            for (int i = 0; i < count; i++) {
+
+                append( decoded[i] );
+            }
+
+            if ( decoder.getPosition() == position && !decoder.hasPendingLowSurrogate() ) {
+
+                break;
+            }
+
+            position = decoder.getPosition();
+        }
+
+        undecodedLength -= position;
+        System.arraycopy( undecoded, position, undecoded, 0, undecodedLength );
+    }
+
+    private void append( char c ) {
+
+        long offset = input.offset + input.limit;
+        input.append( c );
+
+        switch (lexState) {
+
+            case LEX_STRING: {
+
+                if ( c == '\\' ) {
+
+                    lexState = LEX_ESCAPE;
+                }
+                else if ( c == '"' ) {
+
+                    lexState = LEX_OUTSIDE;
+                    addUnit( offset + 1, '"' );
+                }
+
+                return;
+            }
+
+            case LEX_ESCAPE: {
+
+                lexState = LEX_STRING;
+                return;
+            }
+
+            case LEX_SCALAR: {
+
+                if ( !isDelimiter( c ) ) {
+
+                    return;
+                }
+
+                lexState = LEX_OUTSIDE;
+                addUnit( offset, (char) JsonBase.VARIABLE );
+            }
+        }
+
+        if ( c == '"' ) {
+
+            lexState = LEX_STRING;
+        }
+        else if ( isDelimiter( c ) ) {
+
+            if ( !FifoStringBuffer.isWhitespace( c ) ) {
+
+                addUnit( offset + 1, c );
+            }
+        }
+        else {
+
+            lexState = LEX_SCALAR;
+        }
+    }
+
+    private static boolean isDelimiter( char c ) {
+
+        switch (c) {
+
+            case '{':
+            case '}':
+            case '[':
+            case ']':
+            case ',':
+            case ':':
+                return true;
+        }
+
+        return FifoStringBuffer.isWhitespace( c );
+    }
+
+    private void addUnit( long end, char type ) {
+
+        if ( unitTail == unitEnds.length ) {
+
+            int count = unitTail - unitHead;
+
+            if ( count > unitEnds.length >> 1 ) {
+
+                long[] newUnitEnds = new long[unitEnds.length << 1];
+                System.arraycopy( unitEnds, unitHead, newUnitEnds, 0, count );
+                unitEnds = newUnitEnds;
+
+                char[] newUnitTypes = new char[unitTypes.length << 1];
+                System.arraycopy( unitTypes, unitHead, newUnitTypes, 0, count );
+                unitTypes = newUnitTypes;
+            }
+            else {
+
+                System.arraycopy( unitEnds, unitHead, unitEnds, 0, count );
+                System.arraycopy( unitTypes, unitHead, unitTypes, 0, count );
+            }
+
+            unitHead = 0;
+            unitTail = count;
+        }
+
+        unitEnds[unitTail] = end;
+        unitTypes[unitTail++] = type;
+    }
+
+    /**
+     * Decoded characters that the parser reads from. Only hands out characters
+     * that were fed, it never blocks.
+     */
+    private static final class InputQueue extends Reader {
+
+        char[] chars = new char[1024];
+        int position, limit;
+        long offset;
+        boolean endOfInput;
+
+        void append( char c ) {
+
+            if ( limit == chars.length ) {
+
+                int count = limit - position;
+
+                if ( count > chars.length >> 1 ) {
+
+                    char[] newChars = new char[chars.length << 1];
+                    System.arraycopy( chars, position, newChars, 0, count );
+                    chars = newChars;
+                }
+                else {
+
+                    System.arraycopy( chars, position, chars, 0, count );
+                }
+
+                offset += position;
+                position = 0;
+                limit = count;
+            }
+
+            chars[limit++] = c;
+        }
+
+        void clear() {
+
+            offset += limit;
+            position = 0;
+            limit = 0;
+        }
+
+        public int read() {
+
+            if ( position < limit ) {
+
+                return chars[position++];
+            }
+
+            if ( endOfInput ) {
+
+                return -1;
+            }
+
+            throw new IllegalStateException( "Parser read past the buffered input" );
+        }
+
+        public int read( char[] buffer, int off, int length ) {
+
+            if ( length == 0 ) {
+
+                return 0;
+            }
+
+            if ( position == limit ) {
+
+                if ( endOfInput ) {
+
+                    return -1;
+                }
+
+                throw new IllegalStateException( "Parser read past the buffered input" );
+            }
+
+            int count = Math.min( length, limit - position );
+            System.arraycopy( chars, position, buffer, off, count );
+            position += count;
+            return count;
+        }
+
+        public void close() {
+
+            clear();
+        }
+    }
+}
@@ -16,16 +16,20 @@
  */
 package com.google.jsonpull;
 
+import java.io.CharArrayReader;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.io.UnsupportedEncodingException;
+import java.net.SocketTimeoutException;
 
 public abstract class JsonBase {
 
     private static final String PARSE_STRING_OPTIONS = "\"";
     private static final String PARSE_VARIABLE_OPTIONS = ",]}";
+    private static final String PARSE_TOP_VARIABLE_OPTIONS = ",]}{[\" \t\r\n";
 
     public static final int START_OBJECT = '{';
     public static final int END_OBJECT = '}';
@@ -36,6 +40,25 @@ public abstract class JsonBase {
     public static final int VARIABLE = 'v';
     public static final int SEPERATOR = ',';
     public static final int NULL = 'n';
+    public static final int END_DOCUMENT = 'e';
+
+    public static final int NOT_A_NUMBER = 0;
+    public static final int NUMBER_INT = 1;
+    public static final int NUMBER_LONG = 2;
+    public static final int NUMBER_BIG_INTEGER = 3;
+    public static final int NUMBER_DOUBLE = 4;
+    public static final int NUMBER_BIG_DECIMAL = 5;
+
+    /**
+     * Decimals with at most this many significant digits survive a round trip through a double.
+     */
+    private static final int DOUBLE_DIGITS = 15;
+    private static final int DOUBLE_EXPONENT = 300;
+
+    private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15,
+            1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+    private static final int READ_BUFFER_SIZE = 4096;
 
     private static final int STATE_END = 1;
     private static final int STATE_VALUE = 2;
@@ -47,13 +70,99 @@ public abstract class JsonBase {
 
     private int pos, end;
     private final Reader reader;
+    private final char[] readBuffer;
+    private int readPosition, readLimit;
     private final StateStack stateStack;
     private final FifoStringBuffer buffer;
 
     private String stringValue;
+    private boolean stringMaterialized = true;
+    private char[] token;
+    private int tokenStart, tokenLength;
+    private int tokenOffset, valueOffset;
+
+    private int numberType;
+    private long numberValue;
+
+    private boolean streamingString;
+    private boolean multiDocument;
+
+    // true if the reader was marked at its start and can be repositioned by seek()
+    private final boolean seekable;
+
+    // the characters from the mark on that were taken from the reader, and how many of them the parser has
+    private char[] replay;
+    private int replayLength, replayPosition;
+    private int markLimit, markPos;
+    private long markCharacters;
+    private int[] markSnapshot;
+
+    // true if seek() moved away from the mark, so reset() seeks back to it instead of replaying
+    private boolean markSought;
+
+    private char[] batchChars;
+    private JsonCharView view;
+
+    private JsonMetrics metrics;
+    private JsonBufferProfile profile;
+    private JsonPathProfiler pathProfiler;
+
+    // true while the current document is sampled by the path profiler
+    private boolean pathProfiled;
+
+    // true when next() has to go through nextMeasured()
+    private boolean measured;
+
+    private long deadline;
+    private long maxCharacters;
+    private int maxTokens;
+    private int maxDepth = Integer.MAX_VALUE;
+    private long charactersRead;
+    private long documentCharacters;
+    private long documentStart;
+    private int documentPos;
+    private int documentTokens;
+    private int documentGrowths;
 
     protected JsonBase(InputStream inputStream, String encoding) {
 
+        this( createReader( inputStream, encoding ) );
+    }
+
+    protected JsonBase(Reader reader) {
+
+        this.reader = reader;
+        seekable = markStart( reader );
+        readBuffer = new char[READ_BUFFER_SIZE];
+        buffer = new FifoStringBuffer();
+        stateStack = new StateStack();
+        pushAndSetState( STATE_VALUE );
+    }
+
+    /**
+     * Marks the start of an in-memory reader, where a mark costs nothing and has no limit.
+     * @return true if it was marked
+     */
+    private static boolean markStart( Reader reader ) {
+
+        if ( reader instanceof m.java.io.StringReader || reader instanceof java.io.StringReader || reader instanceof CharArrayReader ) {
+
+            try {
+
+                reader.mark( Integer.MAX_VALUE );
+                return true;
+            }
+            catch (IOException e) {
+
+                // not seekable
+            }
+        }
+
+        return false;
+    }
+
+    private static Reader createReader( InputStream inputStream, String encoding ) {
+
         Reader reader = null;
 
         if ( encoding != null ) {
@@ -73,29 +182,397 @@ public abstract class JsonBase {
             reader = new InputStreamReader( inputStream );
         }
 
-        this.reader = reader;
-        buffer = new FifoStringBuffer();
-        stateStack = new StateStack();
-        pushAndSetState( STATE_VALUE );
+        return reader;
     }
 
     private int read() {
 
+        int read = ( readPosition < readLimit || fill() ) ? readBuffer[readPosition++] : -1;
+        buffer.push( (char) read );
+        pos++;
+        return read;
+    }
+
+    /**
+     * Reads the next block of characters from the reader into the read buffer.
+     * @return false at the end of the input
+     */
+    private boolean fill() {
+
+        try {
+
+            int count = 0;
+
+            if ( replayPosition < replayLength ) {
+
+                count = Math.min( readBuffer.length, replayLength - replayPosition );
+                System.arraycopy( replay, replayPosition, readBuffer, 0, count );
+                replayPosition += count;
+            }
+
+            while (count == 0) {
+
+                count = reader.read( readBuffer, 0, readBuffer.length );
+
+                if ( count > 0 && replay != null ) {
+
+                    retain( count );
+                }
+            }
+
+            readPosition = 0;
+            readLimit = ( count < 0 ) ? 0 : count;
+            charactersRead += readLimit;
+            checkLimits();
+            return count > 0;
+        }
+        catch (IOException e) {
+
+            throw readFailed( e );
+        }
+    }
+
+    /**
+     * A reader interrupted while it waits, such as a PipelinedReader, stops the parser like an interrupt between
+     * blocks, a socket that timed out like the deadline.
+     */
+    private static RuntimeException readFailed( IOException e ) {
+
+        // a socket read timeout is an InterruptedIOException too, but nobody interrupted the thread
+        if ( e instanceof SocketTimeoutException ) {
+
+            return new JsonLimitException( JsonLimitException.DEADLINE, "Read timed out" );
+        }
+
+        if ( e instanceof InterruptedIOException ) {
+
+            return new JsonLimitException( JsonLimitException.INTERRUPTED, "Interrupted" );
+        }
+
+        return new RuntimeException( e.getMessage() );
+    }
+
+    /**
+     * Checked once per block read, so a limit may be exceeded by up to a block before it is noticed.
+     * The deadline and interrupts are only seen here, so they cancel parsing from memory or from a
+     * source that returns promptly. A PipelinedReader also gives up waiting when its thread is
+     * interrupted, and a socket read timeout is reported as DEADLINE, see readFailed(). Any other
+     * reader that blocks is not woken up, neither by the deadline nor by an interrupt.
+     */
+    private void checkLimits() {
+
+        if ( maxCharacters > 0 && charactersRead - documentCharacters > maxCharacters ) {
+
+            throw new JsonLimitException( JsonLimitException.CHARACTERS, "More than " + maxCharacters + " characters" );
+        }
+
+        if ( deadline > 0 && System.currentTimeMillis() > deadline ) {
+
+            throw new JsonLimitException( JsonLimitException.DEADLINE, "Deadline passed" );
+        }
+
+        if ( Thread.currentThread().isInterrupted() ) {
+
+            throw new JsonLimitException( JsonLimitException.INTERRUPTED, "Interrupted" );
+        }
+    }
+
+    /**
+     * Stops parsing with a JsonLimitException once the time passes, checked each time a block is read.
+     * A read that blocks is not cut short, so set a timeout on a socket source as well, see checkLimits().
+     * @param deadline - the time, as returned by System.currentTimeMillis(), or 0 for none
+     */
+    public void setDeadline( long deadline ) {
+
+        this.deadline = deadline;
+    }
+
+    /**
+     * Stops parsing with a JsonLimitException after more characters than this were read for one document.
+     * @param maxCharacters - the limit, or 0 for none
+     */
+    public void setMaxCharacters( long maxCharacters ) {
+
+        this.maxCharacters = maxCharacters;
+        updateMeasured();
+    }
+
+    /**
+     * Stops parsing with a JsonLimitException after more tokens than this were read for one document.
+     * @param maxTokens - the limit, or 0 for none
+     */
+    public void setMaxTokens( int maxTokens ) {
+
+        this.maxTokens = maxTokens;
+        updateMeasured();
+    }
+
+    /**
+     * Stops parsing with a JsonLimitException when getLevel() would exceed this. Note each key
+     * counts as a level, {"a":{"b":1}} goes down to level 4.
+     * @param maxDepth - the limit, or 0 for none
+     */
+    public void setMaxDepth( int maxDepth ) {
+
+        this.maxDepth = ( maxDepth > 0 ) ? maxDepth : Integer.MAX_VALUE;
+    }
+
+    private void updateMeasured() {
+
+        measured = metrics != null || profile != null || pathProfiler != null || maxTokens > 0 || maxCharacters > 0;
+    }
+
+    /**
+     * @return the number of characters taken from the reader that were not consumed yet,
+     *         either still unscanned or held in the lookahead buffer
+     */
+    int getUnconsumedInput() {
+
+        int size = buffer.size();
+
+        if ( size > 0 && buffer.first() == (char) -1 ) {
+
+            // the dummy character left after a top-level variable
+            size--;
+        }
+
+        return readLimit - readPosition + size;
+    }
+
+    /**
+     * @return true if the next token is a key or the end of an object
+     */
+    boolean isExpectingKey() {
+
+        return state == STATE_OBJECT;
+    }
+
+    /**
+     * @return the number of UTF-8 bytes of the characters taken from the reader that were not consumed
+     *         yet, either still unscanned or held in the lookahead buffer
+     */
+    int getUnconsumedUtf8Length() {
+
+        int length = 0;
+
+        for (int i = buffer.size() - 1; i >= 0; i--) {
+
+            length += Utf8InputReader.utf8Length( buffer.get( i ) );
+        }
+
+        for (int i = readPosition; i < readLimit; i++) {
+
+            length += Utf8InputReader.utf8Length( readBuffer[i] );
+        }
+
+        return length;
+    }
+
+    /**
+     * @return true if the parser reads from memory, and can be repositioned with seek()
+     */
+    boolean isSeekable() {
+
+        return seekable;
+    }
+
+    /**
+     * @return the position in the input of the first character that was not consumed yet
+     */
+    int getConsumedOffset() {
+
+        return (int) ( charactersRead - ( readLimit - readPosition ) - buffer.size() );
+    }
+
+    /**
+     * Moves to a position of an in-memory input, as returned by getConsumedOffset(),
+     * and continues in the state recorded there by getStateSnapshot(). A mark stays,
+     * and reset() seeks back to it, however far away it is.
+     */
+    void seek( int offset, int[] snapshot ) {
+
+        if ( !seekable ) {
+
+            throw new IllegalStateException( "Only a parser reading from memory can seek" );
+        }
+
+        setState( snapshot );
+
         try {
 
-            int read = reader.read();
-            buffer.push( (char) read );
-            pos++;
-            return read;
+            reader.reset();
+            reader.skip( offset );
         }
         catch (IOException e) {
 
-            throw new RuntimeException( e.getMessage() );
+            throw readFailed( e );
+        }
+
+        moveTo( offset, offset );
+        markSought = markSought || replay != null;
+        replay = null;
+        replayLength = replayPosition = 0;
+    }
+
+    /**
+     * Marks the current position, so that reset() can parse again from there. Marking again moves the mark.
+     * The characters consumed after the mark are kept until reset(), or until more than limit of
+     * them were consumed, when the mark is dropped. A JsonObjectIndex seeking elsewhere keeps the mark,
+     * reset() then seeks back to it.
+     * @param limit - the number of characters that may be consumed before the mark is dropped
+     */
+    public void mark( int limit ) {
+
+        if ( streamingString ) {
+
+            throw new IllegalStateException( "Cannot mark while reading a string" );
+        }
+
+        int lookahead = buffer.size();
+        int unscanned = readLimit - readPosition;
+        int unreplayed = replayLength - replayPosition;
+        int length = lookahead + unscanned + unreplayed;
+        char[] chars = ( replay != null && replay.length >= length ) ? replay : new char[Math.max( length, READ_BUFFER_SIZE )];
+
+        if ( unreplayed > 0 ) {
+
+            // they may already be in the array, so they move first
+            System.arraycopy( replay, replayPosition, chars, lookahead + unscanned, unreplayed );
+        }
+
+        for (int i = 0; i < lookahead; i++) {
+
+            chars[i] = buffer.get( i );
+        }
+
+        System.arraycopy( readBuffer, readPosition, chars, lookahead, unscanned );
+
+        replay = chars;
+        replayLength = length;
+        replayPosition = length;
+        markLimit = limit;
+        markPos = pos - lookahead;
+        markCharacters = charactersRead - unscanned - lookahead;
+        markSnapshot = getStateSnapshot();
+        markSought = false;
+    }
+
+    /**
+     * Continues from the last mark, in the state the parser had there. The mark stays, so the
+     * same input can be parsed more than once.
+     * @throws IllegalStateException if there is no mark, or it was dropped
+     */
+    public void reset() {
+
+        if ( markSought ) {
+
+            seek( (int) markCharacters, markSnapshot );
+            moveTo( markPos, charactersRead );
+            return;
+        }
+
+        if ( replay == null ) {
+
+            throw new IllegalStateException( ( markSnapshot == null ) ? "Not marked" : "Mark dropped after " + markLimit + " characters" );
+        }
+
+        setState( markSnapshot );
+        replayPosition = 0;
+        moveTo( markPos, markCharacters );
+    }
+
+    /**
+     * Moves the position and the count of characters read, carrying over those of the current
+     * document, so its metrics and limits go on counting every character parsed.
+     */
+    private void moveTo( int position, long characters ) {
+
+        documentPos += position - pos;
+        documentCharacters += characters - charactersRead;
+        pos = position;
+        charactersRead = characters;
+    }
+
+    /**
+     * Keeps a block just read for reset(), or drops the mark once the parser consumed past its limit.
+     */
+    private void retain( int count ) {
+
+        if ( charactersRead - ( readLimit - readPosition ) - buffer.size() - markCharacters > markLimit ) {
+
+            replay = null;
+            replayLength = replayPosition = 0;
+            return;
+        }
+
+        if ( replayLength + count > replay.length ) {
+
+            char[] chars = new char[Math.max( replay.length << 1, replayLength + count )];
+            System.arraycopy( replay, 0, chars, 0, replayLength );
+            replay = chars;
         }
+
+        System.arraycopy( readBuffer, 0, replay, replayLength, count );
+        replayLength += count;
+        replayPosition = replayLength;
+    }
+
+    /**
+     * @return the state stack followed by the current state, for restoreState()
+     */
+    int[] getStateSnapshot() {
+
+        int size = stateStack.size();
+        int[] snapshot = new int[size + 1];
+        System.arraycopy( stateStack.values, 0, snapshot, 0, size );
+        snapshot[size] = state;
+        return snapshot;
+    }
+
+    /**
+     * Continues from a state taken by getStateSnapshot(), with the reader positioned
+     * at the first character that was not consumed then. Positions start again at 0,
+     * and a mark is dropped, as it belongs to the input before.
+     */
+    void restoreState( int[] snapshot ) {
+
+        setState( snapshot );
+        replay = null;
+        replayLength = replayPosition = 0;
+        markSnapshot = null;
+        markSought = false;
+        moveTo( 0, charactersRead );
+    }
+
+    private void setState( int[] snapshot ) {
+
+        if ( streamingString ) {
+
+            throw new IllegalStateException( "Cannot restore while reading a string" );
+        }
+
+        while (stateStack.size() > 0) {
+
+            stateStack.pop();
+        }
+
+        for (int i = 0; i < snapshot.length - 1; i++) {
+
+            stateStack.push( snapshot[i] );
+        }
+
+        state = snapshot[snapshot.length - 1];
+        buffer.pop( buffer.size() );
+        readPosition = readLimit;
     }
 
     public char nextValue() {
 
+        if ( streamingString ) {
+
+            skipStreamedString();
+        }
+
         char read = nextBuffervalue();
 
         // remove all whitespace
@@ -118,6 +595,12 @@ public abstract class JsonBase {
         return buffer.first();
     }
 
+    private int returnStructure( int value, int state ) {
+
+        tokenOffset = pos - buffer.size();
+        return returnValue( value, state );
+    }
+
     private int returnValue( int value, int state ) {
 
         buffer.pop();
@@ -125,45 +608,585 @@ public abstract class JsonBase {
         return value;
     }
 
+    /**
+     * Lets the parser read any number of top-level values from the input one after the other,
+     * either back to back or separated by whitespace, as in newline-delimited JSON. After each value,
+     * next() returns END_DOCUMENT and the parser is ready for the next one at level 1, with the same buffers.
+     * At the end of the input, next() returns -1 instead of the start of another value.
+     */
+    public void setMultiDocument( boolean multiDocument ) {
+
+        this.multiDocument = multiDocument;
+    }
+
+    public boolean isMultiDocument() {
+
+        return multiDocument;
+    }
+
+    /**
+     * Waits for the start of another top-level value if the current one is complete.
+     * In multi-document mode this starts the next document without an END_DOCUMENT event.
+     * @return false at the end of the input
+     */
+    public boolean hasNextDocument() {
+
+        if ( state == STATE_END ) {
+
+            if ( !multiDocument ) {
+
+                return false;
+            }
+
+            endDocument();
+        }
+
+        return !isAfterLastDocument();
+    }
+
+    /**
+     * @return true if the input ended where another top-level value could start
+     */
+    private boolean isAfterLastDocument() {
+
+        if ( state == STATE_AFTER_END ) {
+
+            return true;
+        }
+
+        if ( state == STATE_VALUE && stateStack.size() == 1 && nextValue() == (char) -1 ) {
+
+            state = STATE_AFTER_END;
+            return true;
+        }
+
+        return false;
+    }
+
+    private int endDocument() {
+
+        if ( !buffer.isEmpty() && buffer.first() == (char) -1 ) {
+
+            // the dummy character left after a top-level variable
+            buffer.pop();
+        }
+
+        pushAndSetState( STATE_VALUE );
+        return END_DOCUMENT;
+    }
+
+    /**
+     * Attaches counters to this parser, or detaches them when null.
+     * @param metrics - the counters to update, may be shared by several parsers on the same thread
+     */
+    public void setMetrics( JsonMetrics metrics ) {
+
+        this.metrics = metrics;
+        documentStart = 0;
+        updateMeasured();
+    }
+
+    public JsonMetrics getMetrics() {
+
+        return metrics;
+    }
+
+    /**
+     * Sizes the buffers of this parser from a profile, and records each document into it,
+     * or stops recording when null. A buffer that grew far beyond the typical size
+     * is released at the end of the document.
+     * @param profile - the profile, may be shared by several parsers
+     */
+    public void setBufferProfile( JsonBufferProfile profile ) {
+
+        this.profile = profile;
+        documentStart = 0;
+        updateMeasured();
+
+        if ( profile != null && profile.getDocuments() > 0 ) {
+
+            buffer.presize( profile.getTokenCapacity() );
+            stateStack.presize( profile.getDepthCapacity() );
+        }
+
+        buffer.highWater = 0;
+        stateStack.highWater = stateStack.size();
+    }
+
+    public JsonBufferProfile getBufferProfile() {
+
+        return profile;
+    }
+
+    /**
+     * Attributes the cost of sampled documents to their paths, or stops when null.
+     * Profiling starts with the next document.
+     */
+    public void setPathProfiler( JsonPathProfiler pathProfiler ) {
+
+        this.pathProfiler = pathProfiler;
+        documentStart = 0;
+        pathProfiled = false;
+        updateMeasured();
+    }
+
+    public JsonPathProfiler getPathProfiler() {
+
+        return pathProfiler;
+    }
+
     /** 
      * Advances to the next token, and returns its type.
      * @returns the token type, such as START_OBJECT, STRING, END_DOCUMENT.
      */
-    public int next() {
+    public int next() {
+
+        if ( multiDocument ) {
+
+            if ( state == STATE_END ) {
+
+                return endDocument();
+            }
+
+            if ( isAfterLastDocument() ) {
+
+                return -1;
+            }
+        }
+
+        if ( !measured ) {
+
+            return nextToken( false );
+        }
+
+        return nextMeasured( false );
+    }
+
+    /**
+     * Advances to the next token like next(), but leaves the characters of a STRING
+     * value unread, for readStreamedString() to consume in chunks.
+     * Keys are always read completely.
+     */
+    int nextStreamed() {
+
+        if ( multiDocument ) {
+
+            if ( state == STATE_END ) {
+
+                return endDocument();
+            }
+
+            if ( isAfterLastDocument() ) {
+
+                return -1;
+            }
+        }
+
+        if ( !measured ) {
+
+            return nextToken( true );
+        }
+
+        return nextMeasured( true );
+    }
+
+    private int nextMeasured( boolean streamString ) {
+
+        if ( documentStart == 0 ) {
+
+            documentStart = System.nanoTime();
+            documentPos = pos;
+            documentCharacters = charactersRead - ( readLimit - readPosition ) - buffer.size();
+            documentTokens = 0;
+            documentGrowths = buffer.growths + stateStack.growths;
+            pathProfiled = pathProfiler != null && pathProfiler.documentStarted();
+        }
+
+        if ( pathProfiled ) {
+
+            return nextProfiled( streamString );
+        }
+
+        int event = nextToken( streamString );
+        return tokenMeasured( event );
+    }
+
+    private int nextProfiled( boolean streamString ) {
+
+        int consumed = pos - buffer.size();
+        long start = System.nanoTime();
+        int event = nextToken( streamString );
+        long time = System.nanoTime() - start;
+
+        pathProfiler.token( event, token, tokenStart, tokenLength, pos - buffer.size() - consumed, time );
+        return tokenMeasured( event );
+    }
+
+    private int tokenMeasured( int event ) {
+
+        documentTokens++;
+
+        if ( maxTokens > 0 && documentTokens > maxTokens ) {
+
+            throw new JsonLimitException( JsonLimitException.TOKENS, "More than " + maxTokens + " tokens" );
+        }
+
+        if ( metrics != null ) {
+
+            metrics.token( event, getLevel() );
+        }
+
+        if ( state == STATE_END ) {
+
+            if ( metrics != null ) {
+
+                int growths = buffer.growths + stateStack.growths - documentGrowths;
+                metrics.document( System.nanoTime() - documentStart, pos - documentPos, documentTokens, growths );
+            }
+
+            if ( profile != null ) {
+
+                documentProfiled();
+            }
+
+            documentStart = 0;
+        }
+
+        return event;
+    }
+
+    private void documentProfiled() {
+
+        profile.documentParsed( buffer.highWater, stateStack.highWater );
+
+        int tokenCapacity = profile.getTokenCapacity();
+        buffer.shrink( tokenCapacity );
+        stateStack.shrink( profile.getDepthCapacity() );
+
+        if ( batchChars != null && JsonBufferProfile.isOversized( batchChars.length, tokenCapacity ) ) {
+
+            batchChars = null;
+        }
+
+        buffer.highWater = 0;
+        stateStack.highWater = stateStack.size();
+    }
+
+    private int nextToken( boolean streamString ) {
+
+        char next = nextValue();
+
+        if ( streamString && ( state == STATE_VALUE || state == STATE_ARRAY ) ) {
+
+            if ( next == ',' && state == STATE_ARRAY ) {
+
+                buffer.pop();
+                next = nextValue();
+            }
+
+            if ( next == '"' ) {
+
+                return streamString();
+            }
+        }
+
+        //        System.out.println( "state[" + state + "], next[" + next + "], stringValue[" + stringValue + "]" );
+
+        switch (state) {
+
+            case STATE_END: {
+
+                state = STATE_AFTER_END;
+            }
+
+            case STATE_AFTER_END: {
+
+                throw new IllegalStateException( "Called next() after the end" );
+            }
+
+            case STATE_VALUE: {
+
+                return valueState( next );
+            }
+
+            case STATE_ARRAY: {
+
+                return arrayState( next );
+            }
+
+            case STATE_OBJECT: {
+
+                return objectState( next );
+            }
+        }
+
+        throw new IllegalStateException( "lexical error: " + next );
+    }
+
+    /**
+     * Returns the type of the next token without consuming it.
+     * Does not throw for malformed input, next() reports it.
+     * @return the token type that next() would return, or -1 if next() would fail
+     */
+    public int peek() {
+
+        if ( state == STATE_END ) {
+
+            return multiDocument ? END_DOCUMENT : -1;
+        }
+
+        char next = nextValue();
+
+        switch (state) {
+
+            case STATE_VALUE: {
+
+                return peekValue( next );
+            }
+
+            case STATE_ARRAY: {
+
+                if ( next == ',' ) {
+
+                    next = peekAfterSeparator();
+                }
+
+                return ( next == END_ARRAY ) ? END_ARRAY : peekValue( next );
+            }
+
+            case STATE_OBJECT: {
+
+                if ( next == ',' ) {
+
+                    next = peekAfterSeparator();
+                }
+
+                return ( next == END_OBJECT ) ? END_OBJECT : ( next == '"' ) ? KEY : -1;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Consumes the next token only if it is of the given type.
+     * @return true if the token was consumed
+     */
+    public boolean tryNext( int type ) {
+
+        if ( peek() != type ) {
+
+            return false;
+        }
+
+        next();
+        return true;
+    }
+
+    /**
+     * Reads up to max tokens at once. The type of each token is stored in types, and for KEY,
+     * STRING and VARIABLE tokens the position of its characters in getBatchChars() in starts and
+     * lengths. Other tokens have a length of 0. The characters are raw, strings are not unescaped.
+     * The batch ends early after the last token of the document. In multi-document mode the next
+     * batch starts with the following document, END_DOCUMENT itself is not stored.
+     * @return the number of tokens read, 0 after the end of the document or the input
+     */
+    public int nextBatch( int[] types, int[] starts, int[] lengths, int max ) {
+
+        if ( batchChars == null ) {
+
+            batchChars = new char[READ_BUFFER_SIZE];
+        }
+
+        int count = 0;
+        int window = 0;
+
+        if ( multiDocument && state == STATE_END ) {
+
+            // what next() does when it returns END_DOCUMENT
+            endDocument();
+        }
+
+        while (count < max && state != STATE_END && state != STATE_AFTER_END) {
+
+            int type = next();
+
+            if ( type == END_DOCUMENT || type == -1 ) {
+
+                break;
+            }
+            int length = ( type == KEY || type == STRING || type == VARIABLE ) ? tokenLength : 0;
+
+            if ( window + length > batchChars.length ) {
+
+                char[] newChars = new char[Math.max( batchChars.length << 1, window + length )];
+                System.arraycopy( batchChars, 0, newChars, 0, window );
+                batchChars = newChars;
+            }
+
+            if ( length > 0 ) {
+
+                System.arraycopy( token, tokenStart, batchChars, window, length );
+            }
+
+            types[count] = type;
+            starts[count] = window;
+            lengths[count] = length;
+            window += length;
+            count++;
+        }
+
+        return count;
+    }
+
+    /**
+     * Reads the next value completely, passing its tokens to a handler.
+     * Keys and strings are passed as views of the buffer, without creating Strings.
+     * @throws IllegalStateException if the next token ends a document or the input instead of starting a value
+     */
+    public void parse( JsonHandler handler ) {
+
+        if ( view == null ) {
+
+            view = new JsonCharView();
+        }
+
+        JsonCharView view = this.view;
+        int depth = 0;
+
+        do {
+
+            int event = next();
+
+            switch (event) {
+
+                case START_OBJECT:
+                    depth++;
+                    handler.startObject();
+                    break;
+                case END_OBJECT:
+                    depth--;
+                    handler.endObject();
+                    break;
+                case START_ARRAY:
+                    depth++;
+                    handler.startArray();
+                    break;
+                case END_ARRAY:
+                    depth--;
+                    handler.endArray();
+                    break;
+                case KEY:
+                    view.setUnescaped( token, tokenStart, tokenLength );
+                    handler.key( view );
+                    break;
+                case STRING:
+                    view.setUnescaped( token, tokenStart, tokenLength );
+                    handler.stringValue( view );
+                    break;
+                case NULL:
+                    handler.nullValue();
+                    break;
+                case VARIABLE:
+                    variable( handler, view );
+                    break;
+                case END_DOCUMENT:
+                    throw new IllegalStateException( "No value to parse, the document ended" );
+                case -1:
+                    throw new IllegalStateException( "No value to parse, the input ended" );
+                default:
+                    throw new IllegalStateException( "Unexpected token " + (char) event );
+            }
+        }
+        while (depth > 0);
+    }
+
+    private void variable( JsonHandler handler, JsonCharView view ) {
+
+        switch (numberType) {
+
+            case NUMBER_INT:
+            case NUMBER_LONG: {
+
+                handler.longValue( numberValue );
+                return;
+            }
+
+            case NUMBER_DOUBLE: {
+
+                handler.doubleValue( getTokenDouble() );
+                return;
+            }
+
+            case NOT_A_NUMBER: {
+
+                if ( tokenLength == 4 && token[tokenStart] == 't' && token[tokenStart + 1] == 'r' && token[tokenStart + 2] == 'u'
+                        && token[tokenStart + 3] == 'e' ) {
+
+                    handler.booleanValue( true );
+                    return;
+                }
+
+                if ( tokenLength == 5 && token[tokenStart] == 'f' && token[tokenStart + 1] == 'a' && token[tokenStart + 2] == 'l'
+                        && token[tokenStart + 3] == 's' && token[tokenStart + 4] == 'e' ) {
+
+                    handler.booleanValue( false );
+                    return;
+                }
+            }
+        }
+
+        view.set( token, tokenStart, tokenLength );
+        handler.numberValue( view );
+    }
+
+    /**
+     * @return the characters of the tokens read by the last call to nextBatch(),
+     *         valid until the next call
+     */
+    public char[] getBatchChars() {
 
-        char next = nextValue();
+        return batchChars;
+    }
 
-        //        System.out.println( "state[" + state + "], next[" + next + "], stringValue[" + stringValue + "]" );
+    private int peekValue( char next ) {
 
-        switch (state) {
+        switch (next) {
 
-            case STATE_END: {
+            case '"':
+                return STRING;
+            case START_OBJECT:
+                return START_OBJECT;
+            case START_ARRAY:
+                return START_ARRAY;
+            case 'n':
+                return NULL;
+            case (char) -1:
+                return -1;
+        }
 
-                state = STATE_AFTER_END;
-            }
+        return VARIABLE;
+    }
 
-            case STATE_AFTER_END: {
+    /**
+     * Returns the first character after the separator at the head of the buffer, leaving both in the buffer.
+     */
+    private char peekAfterSeparator() {
 
-                throw new IllegalStateException( "Called next() after the end" );
-            }
+        for (int index = 1;; index++) {
 
-            case STATE_VALUE: {
+            while (buffer.size() <= index) {
 
-                return valueState( next );
+                read();
             }
 
-            case STATE_ARRAY: {
-
-                return arrayState( next );
-            }
+            char next = buffer.get( index );
 
-            case STATE_OBJECT: {
+            if ( !FifoStringBuffer.isWhitespace( next ) ) {
 
-                return objectState( next );
+                return next;
             }
         }
-
-        throw new IllegalStateException( "lexical error: " + next );
     }
 
     private int valueState( char next ) {
@@ -180,12 +1203,12 @@ public abstract class JsonBase {
 
             case START_OBJECT: {
 
-                return returnValue( START_OBJECT, STATE_OBJECT );
+                return returnStructure( START_OBJECT, STATE_OBJECT );
             }
 
             case START_ARRAY: {
 
-                return returnValue( START_ARRAY, STATE_ARRAY );
+                return returnStructure( START_ARRAY, STATE_ARRAY );
             }
 
             default: {
@@ -200,9 +1223,9 @@ public abstract class JsonBase {
         parseAndSetVariable();
         popState();
 
-        if ( isNull( getString() ) ) {
+        if ( isNullToken() ) {
 
-            stringValue = null;
+            setNull();
             return returnValue( NULL, state );
         }
 
@@ -222,7 +1245,7 @@ public abstract class JsonBase {
             case END_ARRAY: {
 
                 popState();
-                return returnValue( END_ARRAY, state );
+                return returnStructure( END_ARRAY, state );
             }
 
             case '"': {
@@ -234,13 +1257,13 @@ public abstract class JsonBase {
             case START_OBJECT: {
 
                 pushAndSetState( STATE_OBJECT );
-                return returnValue( START_OBJECT, state );
+                return returnStructure( START_OBJECT, state );
             }
 
             case START_ARRAY: {
 
                 pushAndSetState( STATE_ARRAY );
-                return returnValue( START_ARRAY, state );
+                return returnStructure( START_ARRAY, state );
             }
 
             default: {
@@ -254,9 +1277,9 @@ public abstract class JsonBase {
 
         parseAndSetVariable();
 
-        if ( isNull( getString() ) ) {
+        if ( isNullToken() ) {
 
-            stringValue = null;
+            setNull();
             return returnValue( NULL, state );
         }
 
@@ -276,7 +1299,7 @@ public abstract class JsonBase {
             case END_OBJECT: {
 
                 popState();
-                return returnValue( END_OBJECT, state );
+                return returnStructure( END_OBJECT, state );
             }
 
             case '"': {
@@ -302,28 +1325,426 @@ public abstract class JsonBase {
         }
     }
 
-    private boolean isNull( String text ) {
+    private boolean isNullToken() {
+
+        return tokenLength == 0 || ( tokenLength == 4 && token[tokenStart] == 'n' && token[tokenStart + 1] == 'u'
+                && token[tokenStart + 2] == 'l' && token[tokenStart + 3] == 'l' );
+    }
+
+    private void setNull() {
 
-        return text == null || text.length() == 0 || "null".equals( text );
+        stringValue = null;
+        stringMaterialized = true;
+        numberType = NOT_A_NUMBER;
     }
 
+    /**
+     * Returns the value of the current token, creating the String on first access.
+     */
     protected String getString() {
 
+        if ( !stringMaterialized ) {
+
+            stringValue = new String( token, tokenStart, tokenLength );
+            stringMaterialized = true;
+
+            if ( metrics != null ) {
+
+                metrics.stringMaterialized();
+            }
+        }
+
         return stringValue;
     }
 
+    /**
+     * The characters of the current token are valid until the next call to next().
+     */
+    char[] getTokenChars() {
+
+        return token;
+    }
+
+    int getTokenStart() {
+
+        return tokenStart;
+    }
+
+    int getTokenLength() {
+
+        return tokenLength;
+    }
+
+    /**
+     * @return the position of the current token in the input, in characters. For KEY and STRING
+     *         tokens this is the first character after the opening quote.
+     */
+    int getTokenOffset() {
+
+        return tokenOffset;
+    }
+
+    /**
+     * Classification of the current VARIABLE token, computed while it was scanned.
+     * @return one of NUMBER_INT, NUMBER_LONG, NUMBER_BIG_INTEGER, NUMBER_DOUBLE,
+     *         NUMBER_BIG_DECIMAL, or NOT_A_NUMBER for anything else
+     */
+    public int getNumberType() {
+
+        return numberType;
+    }
+
+    /**
+     * @return the value of the current token if getNumberType() is NUMBER_INT or NUMBER_LONG
+     */
+    long getNumberValue() {
+
+        return numberValue;
+    }
+
+    /**
+     * Parses the current VARIABLE token as a number, without creating a String in the common case. When the digits fit in a long and the power of ten is
+     * exact in a double, one multiplication or division gives the correctly rounded value.
+     */
+    double getTokenDouble() {
+
+        char[] chars = token;
+        int start = tokenStart;
+        int end = start + tokenLength;
+        int i = start;
+        boolean negative = chars[i] == '-';
+
+        if ( negative ) {
+
+            i++;
+        }
+
+        long significand = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean fraction = false;
+
+        for (; i < end; i++) {
+
+            char c = chars[i];
+
+            if ( c >= '0' && c <= '9' ) {
+
+                if ( significand != 0 || c != '0' ) {
+
+                    digits++;
+                }
+
+                significand = significand * 10 + ( c - '0' );
+
+                if ( fraction ) {
+
+                    scale--;
+                }
+            }
+            else if ( c == '.' ) {
+
+                fraction = true;
+            }
+            else {
+
+                break;
+            }
+        }
+
+        if ( i < end ) {
+
+            // exponent
+            i++;
+            boolean negativeExponent = chars[i] == '-';
+
+            if ( chars[i] == '-' || chars[i] == '+' ) {
+
+                i++;
+            }
+
+            int exponent = 0;
+
+            for (; i < end && exponent < 1000; i++) {
+
+                exponent = exponent * 10 + ( chars[i] - '0' );
+            }
+
+            scale += negativeExponent ? -exponent : exponent;
+        }
+
+        if ( digits > 15 || scale < -22 || scale > 22 ) {
+
+            return Double.parseDouble( new String( chars, start, end - start ) );
+        }
+
+        double value = ( scale < 0 ) ? significand / POWERS_OF_TEN[-scale] : significand * POWERS_OF_TEN[scale];
+        return negative ? -value : value;
+    }
+
     protected void setString( boolean trimWhitespace ) {
 
-        stringValue = buffer.toString( end );
+        token = buffer.getChars( end );
+        tokenStart = 0;
+        tokenLength = end;
+        stringValue = null;
+        stringMaterialized = false;
+        numberType = NOT_A_NUMBER;
 
         if ( trimWhitespace ) {
 
-            stringValue = stringValue.trim();
+            while (tokenLength > 0 && FifoStringBuffer.isWhitespace( token[tokenStart + tokenLength - 1] )) {
+
+                tokenLength--;
+            }
+
+            while (tokenLength > 0 && FifoStringBuffer.isWhitespace( token[tokenStart] )) {
+
+                tokenStart++;
+                tokenLength--;
+            }
+
+            classifyNumber();
         }
 
+        tokenOffset = valueOffset + tokenStart;
+
         buffer.pop( end );
     }
 
+    /**
+     * Scans the current token as a JSON number, keeping its value when it fits in a long.
+     */
+    private void classifyNumber() {
+
+        int i = tokenStart;
+        int end = tokenStart + tokenLength;
+
+        if ( i < end && token[i] == '-' ) {
+
+            i++;
+        }
+
+        int integerStart = i;
+        boolean overflow = false;
+        long limit = ( i == tokenStart ) ? -Long.MAX_VALUE : Long.MIN_VALUE;
+        long value = 0;
+
+        // accumulate negatively, like Long.parseLong(), so that Long.MIN_VALUE fits
+        for (; i < end && token[i] >= '0' && token[i] <= '9'; i++) {
+
+            int digit = token[i] - '0';
+
+            if ( value < ( limit + digit ) / 10 ) {
+
+                overflow = true;
+            }
+
+            value = value * 10 - digit;
+        }
+
+        int integerDigits = i - integerStart;
+
+        if ( integerDigits == 0 || ( integerDigits > 1 && token[integerStart] == '0' ) ) {
+
+            return;
+        }
+
+        if ( i == end ) {
+
+            if ( overflow ) {
+
+                numberType = NUMBER_BIG_INTEGER;
+                return;
+            }
+
+            numberValue = ( integerStart == tokenStart ) ? -value : value;
+            numberType = ( numberValue >= Integer.MIN_VALUE && numberValue <= Integer.MAX_VALUE ) ? NUMBER_INT : NUMBER_LONG;
+            return;
+        }
+
+        int significantDigits = ( token[integerStart] == '0' ) ? 0 : integerDigits;
+
+        if ( token[i] == '.' ) {
+
+            int fractionStart = ++i;
+
+            for (; i < end && token[i] >= '0' && token[i] <= '9'; i++) {
+
+                if ( significantDigits > 0 || token[i] != '0' ) {
+
+                    significantDigits++;
+                }
+            }
+
+            if ( i == fractionStart ) {
+
+                return;
+            }
+        }
+
+        int exponent = 0;
+
+        if ( i < end && ( token[i] == 'e' || token[i] == 'E' ) ) {
+
+            i++;
+            boolean negative = false;
+
+            if ( i < end && ( token[i] == '+' || token[i] == '-' ) ) {
+
+                negative = token[i++] == '-';
+            }
+
+            int exponentStart = i;
+
+            for (; i < end && token[i] >= '0' && token[i] <= '9'; i++) {
+
+                if ( exponent <= DOUBLE_EXPONENT ) {
+
+                    exponent = exponent * 10 + ( token[i] - '0' );
+                }
+            }
+
+            if ( i == exponentStart ) {
+
+                return;
+            }
+
+            if ( negative ) {
+
+                exponent = -exponent;
+            }
+        }
+
+        if ( i != end ) {
+
+            return;
+        }
+
+        if ( significantDigits <= DOUBLE_DIGITS && exponent >= -DOUBLE_EXPONENT && exponent <= DOUBLE_EXPONENT ) {
+
+            numberType = NUMBER_DOUBLE;
+        }
+        else {
+
+            numberType = NUMBER_BIG_DECIMAL;
+        }
+    }
+
+    private int streamString() {
+
+        // remove the starting " character, the rest is left to readStreamedString()
+        buffer.pop();
+        tokenOffset = pos - buffer.size();
+
+        if ( state == STATE_VALUE ) {
+
+            popState();
+        }
+
+        setNull();
+        streamingString = true;
+        return STRING;
+    }
+
+    /**
+     * Copies the unescaped characters of the STRING value returned by nextStreamed().
+     * @return the number of characters copied, or -1 once the closing quote was read
+     */
+    int readStreamedString( char[] chars, int offset, int length ) {
+
+        int count = 0;
+
+        while (streamingString && count < length) {
+
+            int read = readDirect();
+
+            if ( read == '"' ) {
+
+                streamingString = false;
+            }
+            else {
+
+                if ( read == '\\' ) {
+
+                    read = readEscaped();
+                }
+
+                if ( read == -1 ) {
+
+                    throw new IllegalStateException( "missing closing characters" );
+                }
+
+                chars[offset + count++] = (char) read;
+            }
+        }
+
+        return ( count == 0 && !streamingString ) ? -1 : count;
+    }
+
+    private void skipStreamedString() {
+
+        while (streamingString) {
+
+            int read = readDirect();
+
+            if ( read == '"' ) {
+
+                streamingString = false;
+            }
+            else if ( read == '\\' ) {
+
+                readDirect();
+            }
+            else if ( read == -1 ) {
+
+                throw new IllegalStateException( "missing closing characters" );
+            }
+        }
+    }
+
+    private int readEscaped() {
+
+        int read = readDirect();
+
+        if ( read != 'u' ) {
+
+            return ( read == -1 ) ? -1 : JsonEscapes.escaped( (char) read );
+        }
+
+        int value = 0;
+
+        for (int i = 0; i < 4; i++) {
+
+            int digit = Character.digit( (char) readDirect(), 16 );
+
+            if ( digit == -1 ) {
+
+                throw new IllegalStateException( "Invalid unicode escape at pos[" + pos + "]" );
+            }
+
+            value = ( value << 4 ) | digit;
+        }
+
+        return value;
+    }
+
+    /**
+     * Reads the next character without keeping it in the buffer.
+     */
+    private int readDirect() {
+
+        if ( !buffer.isEmpty() ) {
+
+            char first = buffer.first();
+            buffer.pop();
+            return first;
+        }
+
+        pos++;
+        return ( readPosition < readLimit || fill() ) ? readBuffer[readPosition++] : -1;
+    }
+
     /**
      * Advances to the next token on the given level.
      * Thus may advance through multiple tokens, until reaches the level.
@@ -346,7 +1767,8 @@ public abstract class JsonBase {
         // remove the starting " character
         buffer.pop();
 
-        end = indexOf( PARSE_STRING_OPTIONS ) - 1;
+        valueOffset = pos - buffer.size();
+        end = indexOf( PARSE_STRING_OPTIONS, false ) - 1;
 
         // remove the ending " character
         buffer.delete();
@@ -356,7 +1778,17 @@ public abstract class JsonBase {
 
     private void parseAndSetVariable() {
 
-        end = indexOf( PARSE_VARIABLE_OPTIONS );
+        valueOffset = pos - buffer.size();
+
+        if ( multiDocument && state == STATE_VALUE && stateStack.size() == 1 ) {
+
+            // a top-level value may also end with the input
+            end = indexOf( PARSE_TOP_VARIABLE_OPTIONS, true );
+        }
+        else {
+
+            end = indexOf( PARSE_VARIABLE_OPTIONS, false );
+        }
 
         setString( true );
 
@@ -364,9 +1796,14 @@ public abstract class JsonBase {
         buffer.insert( (char) -1 );
     }
 
-    private int indexOf( String find ) {
+    /**
+     * @param endOfInput - true if the end of the input counts as one of the characters
+     */
+    private int indexOf( String find, boolean endOfInput ) {
+
+        int i = 1;
 
-        for (int read = read(), i = 1; read > -1; read = read(), i++) {
+        for (int read = read(); read > -1; read = read(), i++) {
 
             if ( read == '\\' ) {
 
@@ -379,6 +1816,11 @@ public abstract class JsonBase {
             }
         }
 
+        if ( endOfInput ) {
+
+            return i;
+        }
+
         throw new IllegalStateException( "missing closing characters" );
     }
 
@@ -389,6 +1831,11 @@ public abstract class JsonBase {
 
     private void pushAndSetState( int newState ) {
 
+        if ( stateStack.size() >= maxDepth ) {
+
+            throw new JsonLimitException( JsonLimitException.DEPTH, "Deeper than " + maxDepth + " levels" );
+        }
+
         stateStack.push( state );
         state = newState;
     }
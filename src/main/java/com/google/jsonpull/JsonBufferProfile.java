@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2008-2010 Metova, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jsonpull;
+
+/**
+ * The typical longest token and deepest nesting of the documents parsed by a group of parsers,
+ * such as a pool, used to size their buffers.
+ *
+ * A parser given a profile starts with buffers of the typical size, and after each document
+ * releases a buffer that grew to several times that size. The typical values start at the default
+ * buffer sizes, and each document moves them an eighth of the way towards its own, at least by one
+ * and counting at most four times the current value, so a single outlier hardly changes them.
+ */
+public final class JsonBufferProfile {
+
+    private static final int MIN_TOKEN_CAPACITY = 64;
+    private static final int MIN_DEPTH_CAPACITY = 8;
+    private static final int WEIGHT_SHIFT = 3;
+    private static final int OUTLIER_FACTOR = 4;
+
+    private int tokenLength = MIN_TOKEN_CAPACITY;
+    private int depth = MIN_DEPTH_CAPACITY;
+    private int documents;
+
+    /**
+     * Records the longest token and the deepest nesting of a document.
+     */
+    public synchronized void documentParsed( int maxTokenLength, int maxDepth ) {
+
+        documents++;
+        tokenLength = adjust( tokenLength, maxTokenLength );
+        depth = adjust( depth, maxDepth );
+    }
+
+    static int adjust( int typical, int observed ) {
+
+        int limit = Math.max( typical, 1 ) * OUTLIER_FACTOR;
+        int step = ( Math.min( observed, limit ) - typical ) >> WEIGHT_SHIFT;
+
+        // a shift rounds small increases down to nothing, which would stall the value
+        if ( step == 0 && observed > typical ) {
+
+            step = 1;
+        }
+
+        return typical + step;
+    }
+
+    /**
+     * @return the size of the token buffer for a parser, in chars
+     */
+    public synchronized int getTokenCapacity() {
+
+        return roundUp( Math.max( tokenLength, MIN_TOKEN_CAPACITY ) );
+    }
+
+    /**
+     * @return the size of the nesting stack for a parser
+     */
+    public synchronized int getDepthCapacity() {
+
+        return roundUp( Math.max( depth, MIN_DEPTH_CAPACITY ) );
+    }
+
+    /**
+     * @return true if the capacity of a buffer is far above what a typical document needs
+     */
+    static boolean isOversized( int capacity, int typicalCapacity ) {
+
+        return capacity > typicalCapacity * OUTLIER_FACTOR;
+    }
+
+    public synchronized int getDocuments() {
+
+        return documents;
+    }
+
+    public synchronized void reset() {
+
+        tokenLength = MIN_TOKEN_CAPACITY;
+        depth = MIN_DEPTH_CAPACITY;
+        documents = 0;
+    }
+
+    private static int roundUp( int value ) {
+
+        int capacity = Integer.highestOneBit( value );
+        return ( capacity == value ) ? value : capacity << 1;
+    }
+}
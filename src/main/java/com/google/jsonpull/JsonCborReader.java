@@ -0,0 +1,777 @@
+/*
+ * Copyright (c) 2008-2010 Metova, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jsonpull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * Reads CBOR values, as written by JsonCborWriter, with the same events as JsonBase.next(),
+ * or passes them to a JsonHandler like JsonBase.parse( JsonHandler ).
+ *
+ * Numbers, true and false are VARIABLE tokens with a number type as in JsonBase; keys and
+ * strings are decoded once and not escaped. Maps and arrays may have definite or indefinite
+ * length, strings must have a definite length. Byte strings and tags other than
+ * bignums, decimal fractions and stringrefs of a top-level namespace are not supported.
+ */
+public final class JsonCborReader {
+
+    private final InputStream in;
+    private final byte[] input = new byte[8192];
+    private int position;
+    private int limit;
+
+    private byte[] bytes = new byte[64];
+    private char[] chars = new char[64];
+    private final Utf8Decoder decoder = new Utf8Decoder();
+
+    // per open container: whether it is a map, the items left (-1 if indefinite), and the items read
+    private boolean[] objects = new boolean[16];
+    private int[] remaining = new int[16];
+    private int[] items = new int[16];
+    private int depth;
+
+    // the characters of the numbered strings of the namespace
+    private char[] pool = new char[256];
+    private int poolLength;
+    private int[] referenceStarts = new int[16];
+    private int[] referenceLengths = new int[16];
+    private int references;
+
+    private int event;
+    private char[] text;
+    private int textStart;
+    private int textLength;
+    private String string;
+    private int numberType;
+    private long longValue;
+    private double doubleValue;
+    private Object bigValue;
+    private boolean booleanValue;
+
+    private JsonCharView view;
+
+    public JsonCborReader(InputStream in) {
+
+        this.in = in;
+    }
+
+    /**
+     * Advances to the next token, and returns its type.
+     * @return one of the token types of JsonBase, or -1 at the end of the input
+     */
+    public int next() {
+
+        string = null;
+
+        if ( depth == 0 ) {
+
+            if ( peekByte() < 0 ) {
+
+                return event = -1;
+            }
+
+            return event = readItem();
+        }
+
+        int frame = depth - 1;
+
+        if ( remaining[frame] == 0 || ( remaining[frame] < 0 && peekByte() == JsonCborWriter.BREAK ) ) {
+
+            if ( remaining[frame] < 0 ) {
+
+                position++;
+            }
+
+            depth--;
+            return event = objects[frame] ? JsonBase.END_OBJECT : JsonBase.END_ARRAY;
+        }
+
+        boolean key = objects[frame] && ( items[frame] & 1 ) == 0;
+        items[frame]++;
+
+        if ( remaining[frame] > 0 ) {
+
+            remaining[frame]--;
+        }
+
+        event = readItem();
+
+        if ( key ) {
+
+            toKey();
+        }
+
+        return event;
+    }
+
+    /**
+     * Moves past the children of the current START_OBJECT or START_ARRAY token,
+     * so that the last token read is the matching end token.
+     */
+    public void skipChildren() {
+
+        if ( event != JsonBase.START_OBJECT && event != JsonBase.START_ARRAY ) {
+
+            return;
+        }
+
+        int level = depth;
+
+        while (depth >= level) {
+
+            next();
+        }
+    }
+
+    /**
+     * Reads the next value completely, passing its tokens to a handler.
+     */
+    public void parse( JsonHandler handler ) {
+
+        if ( view == null ) {
+
+            view = new JsonCharView();
+        }
+
+        int level = depth;
+
+        do {
+
+            switch (next()) {
+
+                case JsonBase.START_OBJECT:
+                    handler.startObject();
+                    break;
+                case JsonBase.END_OBJECT:
+                    handler.endObject();
+                    break;
+                case JsonBase.START_ARRAY:
+                    handler.startArray();
+                    break;
+                case JsonBase.END_ARRAY:
+                    handler.endArray();
+                    break;
+                case JsonBase.KEY:
+                    view.set( text, textStart, textLength );
+                    handler.key( view );
+                    break;
+                case JsonBase.STRING:
+                    view.set( text, textStart, textLength );
+                    handler.stringValue( view );
+                    break;
+                case JsonBase.NULL:
+                    handler.nullValue();
+                    break;
+                case JsonBase.VARIABLE:
+                    variable( handler );
+                    break;
+                default:
+                    throw new IllegalStateException( "Unexpected end of input" );
+            }
+        }
+        while (depth > level);
+    }
+
+    private void variable( JsonHandler handler ) {
+
+        switch (numberType) {
+
+            case JsonBase.NUMBER_INT:
+            case JsonBase.NUMBER_LONG:
+                handler.longValue( longValue );
+                return;
+            case JsonBase.NUMBER_DOUBLE:
+                handler.doubleValue( doubleValue );
+                return;
+            case JsonBase.NOT_A_NUMBER:
+                handler.booleanValue( booleanValue );
+                return;
+        }
+
+        String value = getString();
+        view.set( value.toCharArray(), 0, value.length() );
+        handler.numberValue( view );
+    }
+
+    /**
+     * @return the number of open objects and arrays
+     */
+    public int getDepth() {
+
+        return depth;
+    }
+
+    /**
+     * @return the level as in JsonBase.getLevel(), the depth plus one while on a KEY token
+     */
+    public int getLevel() {
+
+        return ( event == JsonBase.KEY ) ? depth + 1 : depth;
+    }
+
+    /**
+     * Advances to the next token on the given level, as JsonBase.seekLevel() does.
+     */
+    public void seekLevel( int level ) {
+
+        while (getLevel() > level) {
+
+            next();
+        }
+    }
+
+    /**
+     * @return the value of the current KEY or STRING token, or the text of a VARIABLE token, null otherwise
+     */
+    public String getString() {
+
+        if ( string != null ) {
+
+            return string;
+        }
+
+        switch (event) {
+
+            case JsonBase.KEY:
+            case JsonBase.STRING:
+                string = new String( text, textStart, textLength );
+                break;
+            case JsonBase.VARIABLE:
+                string = variableText();
+                break;
+        }
+
+        return string;
+    }
+
+    private String variableText() {
+
+        switch (numberType) {
+
+            case JsonBase.NUMBER_INT:
+            case JsonBase.NUMBER_LONG:
+                return Long.toString( longValue );
+            case JsonBase.NUMBER_DOUBLE:
+                return Double.toString( doubleValue );
+            case JsonBase.NOT_A_NUMBER:
+                return booleanValue ? "true" : "false";
+        }
+
+        return bigValue.toString();
+    }
+
+    /**
+     * @return the number type of the current VARIABLE token, as in JsonBase.getNumberType()
+     */
+    public int getNumberType() {
+
+        return ( event == JsonBase.VARIABLE ) ? numberType : JsonBase.NOT_A_NUMBER;
+    }
+
+    public long getLongValue() {
+
+        switch (getNumberType()) {
+
+            case JsonBase.NUMBER_INT:
+            case JsonBase.NUMBER_LONG:
+                return longValue;
+            case JsonBase.NUMBER_DOUBLE:
+                return (long) doubleValue;
+            case JsonBase.NUMBER_BIG_INTEGER:
+            case JsonBase.NUMBER_BIG_DECIMAL:
+                return ( (Number) bigValue ).longValue();
+        }
+
+        return 0;
+    }
+
+    public double getDoubleValue() {
+
+        switch (getNumberType()) {
+
+            case JsonBase.NUMBER_INT:
+            case JsonBase.NUMBER_LONG:
+                return longValue;
+            case JsonBase.NUMBER_DOUBLE:
+                return doubleValue;
+            case JsonBase.NUMBER_BIG_INTEGER:
+            case JsonBase.NUMBER_BIG_DECIMAL:
+                return ( (Number) bigValue ).doubleValue();
+        }
+
+        return 0;
+    }
+
+    public boolean getBooleanValue() {
+
+        return event == JsonBase.VARIABLE && numberType == JsonBase.NOT_A_NUMBER && booleanValue;
+    }
+
+    /**
+     * A key that is not a string becomes the text of its value.
+     */
+    private void toKey() {
+
+        if ( event == JsonBase.STRING ) {
+
+            event = JsonBase.KEY;
+            return;
+        }
+
+        if ( event != JsonBase.VARIABLE ) {
+
+            throw new IllegalStateException( "Unsupported key" );
+        }
+
+        String key = variableText();
+        text = key.toCharArray();
+        textStart = 0;
+        textLength = text.length;
+        event = JsonBase.KEY;
+    }
+
+    private int readItem() {
+
+        int initial = readByte();
+        int major = initial >>> 5;
+        int info = initial & 0x1F;
+
+        if ( major == 7 ) {
+
+            return readSimple( info );
+        }
+
+        long argument = readArgument( info );
+
+        if ( info == 31 && major != 4 && major != 5 ) {
+
+            throw new IllegalStateException( "Unsupported indefinite length" );
+        }
+
+        switch (major) {
+
+            case 0: {
+
+                if ( argument < 0 ) {
+
+                    return setBig( unsigned( argument ) );
+                }
+
+                return setLong( argument );
+            }
+
+            case 1: {
+
+                if ( argument < 0 ) {
+
+                    return setBig( unsigned( argument ).not() );
+                }
+
+                return setLong( -1 - argument );
+            }
+
+            case 3: {
+
+                readText( length( argument ) );
+                return JsonBase.STRING;
+            }
+
+            case 4:
+            case 5: {
+
+                if ( info != 31 && ( argument < 0 || argument > Integer.MAX_VALUE / 2 ) ) {
+
+                    throw new IllegalStateException( "Container too large" );
+                }
+
+                push( major == 5, ( info == 31 ) ? -1 : (int) ( ( major == 5 ) ? argument * 2 : argument ) );
+                return ( major == 5 ) ? JsonBase.START_OBJECT : JsonBase.START_ARRAY;
+            }
+
+            case 6: {
+
+                return readTagged( argument );
+            }
+        }
+
+        throw new IllegalStateException( "Unsupported major type " + major );
+    }
+
+    private int readTagged( long tag ) {
+
+        if ( tag == JsonCborWriter.TAG_STRINGREF_NAMESPACE ) {
+
+            if ( depth > 0 ) {
+
+                throw new IllegalStateException( "Nested stringref namespaces are not supported" );
+            }
+
+            poolLength = 0;
+            references = 0;
+            return readItem();
+        }
+
+        if ( tag == JsonCborWriter.TAG_STRINGREF ) {
+
+            int initial = readByte();
+            long index = readArgument( initial & 0x1F );
+
+            if ( initial >>> 5 != 0 || index < 0 || index >= references ) {
+
+                throw new IllegalStateException( "Invalid stringref" );
+            }
+
+            text = pool;
+            textStart = referenceStarts[(int) index];
+            textLength = referenceLengths[(int) index];
+            return JsonBase.STRING;
+        }
+
+        if ( tag == JsonCborWriter.TAG_POSITIVE_BIGNUM || tag == JsonCborWriter.TAG_NEGATIVE_BIGNUM ) {
+
+            int initial = readByte();
+
+            if ( initial >>> 5 != 2 ) {
+
+                throw new IllegalStateException( "Invalid bignum" );
+            }
+
+            int length = length( readArgument( initial & 0x1F ) );
+            readBytes( length );
+            BigInteger value = new BigInteger( 1, copy( bytes, length ) );
+
+            if ( JsonCborWriter.isReferenced( length, references ) ) {
+
+                if ( chars.length < length ) {
+
+                    chars = new char[length];
+                }
+
+                // numbered, though only text is referenced
+                for (int i = 0; i < length; i++) {
+
+                    chars[i] = (char) ( bytes[i] & 0xFF );
+                }
+
+                addReference( length );
+            }
+
+            return setBig( ( tag == JsonCborWriter.TAG_POSITIVE_BIGNUM ) ? value : value.not() );
+        }
+
+        if ( tag == JsonCborWriter.TAG_DECIMAL_FRACTION ) {
+
+            if ( readByte() != 0x82 || readItem() != JsonBase.VARIABLE || numberType != JsonBase.NUMBER_INT ) {
+
+                throw new IllegalStateException( "Invalid decimal fraction" );
+            }
+
+            int exponent = (int) longValue;
+
+            if ( readItem() != JsonBase.VARIABLE ) {
+
+                throw new IllegalStateException( "Invalid decimal fraction" );
+            }
+
+            BigInteger mantissa = ( numberType == JsonBase.NUMBER_BIG_INTEGER ) ? (BigInteger) bigValue : BigInteger.valueOf( longValue );
+            bigValue = new BigDecimal( mantissa, -exponent );
+            numberType = JsonBase.NUMBER_BIG_DECIMAL;
+            return JsonBase.VARIABLE;
+        }
+
+        throw new IllegalStateException( "Unsupported tag " + tag );
+    }
+
+    private int readSimple( int info ) {
+
+        switch (info) {
+
+            case 20:
+            case 21: {
+
+                numberType = JsonBase.NOT_A_NUMBER;
+                booleanValue = info == 21;
+                return JsonBase.VARIABLE;
+            }
+
+            case 22:
+            case 23:
+                return JsonBase.NULL;
+            case 25:
+                return setDouble( halfToDouble( (int) readBits( 2 ) ) );
+            case 26:
+                return setDouble( Float.intBitsToFloat( (int) readBits( 4 ) ) );
+            case 27:
+                return setDouble( Double.longBitsToDouble( readBits( 8 ) ) );
+        }
+
+        throw new IllegalStateException( "Unsupported simple value " + info );
+    }
+
+    private static double halfToDouble( int bits ) {
+
+        int exponent = ( bits >> 10 ) & 0x1F;
+        int mantissa = bits & 0x3FF;
+        double value;
+
+        if ( exponent == 0 ) {
+
+            value = mantissa * Math.pow( 2, -24 );
+        }
+        else if ( exponent == 0x1F ) {
+
+            value = ( mantissa == 0 ) ? Double.POSITIVE_INFINITY : Double.NaN;
+        }
+        else {
+
+            value = ( mantissa + 0x400 ) * Math.pow( 2, exponent - 25 );
+        }
+
+        return ( ( bits & 0x8000 ) != 0 ) ? -value : value;
+    }
+
+    private int setLong( long value ) {
+
+        longValue = value;
+        numberType = ( value == (int) value ) ? JsonBase.NUMBER_INT : JsonBase.NUMBER_LONG;
+        return JsonBase.VARIABLE;
+    }
+
+    private int setDouble( double value ) {
+
+        doubleValue = value;
+        numberType = JsonBase.NUMBER_DOUBLE;
+        return JsonBase.VARIABLE;
+    }
+
+    private int setBig( BigInteger value ) {
+
+        bigValue = value;
+        numberType = JsonBase.NUMBER_BIG_INTEGER;
+        return JsonBase.VARIABLE;
+    }
+
+    private static BigInteger unsigned( long value ) {
+
+        return BigInteger.valueOf( value & Long.MAX_VALUE ).setBit( 63 );
+    }
+
+    /**
+     * @return the argument of an initial byte, unsigned, or -1 for an indefinite length
+     */
+    private long readArgument( int info ) {
+
+        if ( info < 24 ) {
+
+            return info;
+        }
+
+        switch (info) {
+
+            case 24:
+                return readBits( 1 );
+            case 25:
+                return readBits( 2 );
+            case 26:
+                return readBits( 4 );
+            case 27:
+                return readBits( 8 );
+            case 31:
+                return -1;
+        }
+
+        throw new IllegalStateException( "Invalid additional information " + info );
+    }
+
+    private static int length( long argument ) {
+
+        if ( argument < 0 || argument > Integer.MAX_VALUE ) {
+
+            throw new IllegalStateException( "Unsupported string length" );
+        }
+
+        return (int) argument;
+    }
+
+    /**
+     * Decodes a UTF-8 text string into the current token, numbering it if it is long enough.
+     */
+    private void readText( int length ) {
+
+        readBytes( length );
+
+        if ( chars.length < length ) {
+
+            chars = new char[Math.max( length, chars.length << 1 )];
+        }
+
+        int count = decoder.decode( bytes, 0, length, true, chars, 0, chars.length );
+
+        text = chars;
+        textStart = 0;
+        textLength = count;
+
+        if ( JsonCborWriter.isReferenced( length, references ) ) {
+
+            addReference( count );
+        }
+    }
+
+    /**
+     * Numbers the first count characters of chars.
+     */
+    private void addReference( int count ) {
+
+        if ( poolLength + count > pool.length ) {
+
+            char[] newPool = new char[Math.max( pool.length << 1, poolLength + count )];
+            System.arraycopy( pool, 0, newPool, 0, poolLength );
+            pool = newPool;
+        }
+
+        if ( references == referenceStarts.length ) {
+
+            int[] newStarts = new int[references << 1];
+            System.arraycopy( referenceStarts, 0, newStarts, 0, references );
+            referenceStarts = newStarts;
+
+            int[] newLengths = new int[references << 1];
+            System.arraycopy( referenceLengths, 0, newLengths, 0, references );
+            referenceLengths = newLengths;
+        }
+
+        System.arraycopy( chars, 0, pool, poolLength, count );
+        referenceStarts[references] = poolLength;
+        referenceLengths[references] = count;
+        references++;
+        poolLength += count;
+    }
+
+    private void push( boolean object, int count ) {
+
+        if ( depth == objects.length ) {
+
+            boolean[] newObjects = new boolean[depth << 1];
+            System.arraycopy( objects, 0, newObjects, 0, depth );
+            objects = newObjects;
+
+            int[] newRemaining = new int[depth << 1];
+            System.arraycopy( remaining, 0, newRemaining, 0, depth );
+            remaining = newRemaining;
+
+            int[] newItems = new int[depth << 1];
+            System.arraycopy( items, 0, newItems, 0, depth );
+            items = newItems;
+        }
+
+        objects[depth] = object;
+        remaining[depth] = count;
+        items[depth] = 0;
+        depth++;
+    }
+
+    private static byte[] copy( byte[] bytes, int length ) {
+
+        byte[] copy = new byte[length];
+        System.arraycopy( bytes, 0, copy, 0, length );
+        return copy;
+    }
+
+    private long readBits( int count ) {
+
+        long bits = 0;
+
+        for (int i = 0; i < count; i++) {
+
+            bits = ( bits << 8 ) | readByte();
+        }
+
+        return bits;
+    }
+
+    /**
+     * Reads length bytes into the start of bytes.
+     */
+    private void readBytes( int length ) {
+
+        if ( bytes.length < length ) {
+
+            bytes = new byte[Math.max( length, bytes.length << 1 )];
+        }
+
+        int count = 0;
+
+        while (count < length) {
+
+            if ( position == limit && !fill() ) {
+
+                throw new IllegalStateException( "Unexpected end of input" );
+            }
+
+            int size = Math.min( length - count, limit - position );
+            System.arraycopy( input, position, bytes, count, size );
+            position += size;
+            count += size;
+        }
+    }
+
+    private int readByte() {
+
+        if ( position == limit && !fill() ) {
+
+            throw new IllegalStateException( "Unexpected end of input" );
+        }
+
+        return input[position++] & 0xFF;
+    }
+
+    /**
+     * @return the next byte without consuming it, or -1 at the end of the input
+     */
+    private int peekByte() {
+
+        if ( position == limit && !fill() ) {
+
+            return -1;
+        }
+
+        return input[position] & 0xFF;
+    }
+
+    private boolean fill() {
+
+        try {
+
+            int count = 0;
+
+            while (count == 0) {
+
+                count = in.read( input, 0, input.length );
+            }
+
+            position = 0;
+            limit = ( count < 0 ) ? 0 : count;
+            return count > 0;
+        }
+        catch (IOException e) {
+
+            throw new RuntimeException( e.getMessage() );
+        }
+    }
+}
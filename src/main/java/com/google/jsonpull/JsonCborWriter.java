@@ -0,0 +1,517 @@
+/*
+ * Copyright (c) 2008-2010 Metova, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jsonpull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * Transcodes JSON values to CBOR (RFC 8949) while they are parsed, without building them.
+ *
+ * Objects and arrays are written with indefinite length, strings with their length in bytes, so a
+ * reader can skip them. Integers are written as CBOR integers, doubles as single precision floats
+ * where that is exact, larger numbers as bignums (tags 2 and 3) and decimal fractions (tag 4).
+ * Every top-level value is a stringref namespace (tag 256): a key that was written before is
+ * written again as a reference (tag 25) to its first occurrence. Unquoted text that is not a number,
+ * true, false or null is written as a string.
+ *
+ * JsonCborReader reads the values back with the events of JsonBase.
+ */
+public final class JsonCborWriter implements JsonHandler {
+
+    private static final int MAJOR_UNSIGNED = 0;
+    private static final int MAJOR_NEGATIVE = 1;
+    private static final int MAJOR_BYTES = 2;
+    private static final int MAJOR_TEXT = 3;
+    private static final int MAJOR_ARRAY = 4;
+    private static final int MAJOR_TAG = 6;
+
+    static final int TAG_POSITIVE_BIGNUM = 2;
+    static final int TAG_NEGATIVE_BIGNUM = 3;
+    static final int TAG_DECIMAL_FRACTION = 4;
+    static final int TAG_STRINGREF = 25;
+    static final int TAG_STRINGREF_NAMESPACE = 256;
+
+    static final int START_MAP = 0xBF;
+    static final int START_ARRAY = 0x9F;
+    static final int BREAK = 0xFF;
+    static final int FALSE = 0xF4;
+    static final int TRUE = 0xF5;
+    static final int NULL = 0xF6;
+    static final int FLOAT = 0xFA;
+    static final int DOUBLE = 0xFB;
+
+    private final OutputStream out;
+    private byte[] bytes = new byte[8192];
+    private int length;
+    private int depth;
+
+    // the strings numbered by the namespace so far, and the keys among them by hash
+    private int references;
+    private String[] keys = new String[16];
+    private int[] keyReferences = new int[16];
+    private int keyCount;
+    private int[] table = new int[32];
+
+    public JsonCborWriter(OutputStream out) {
+
+        this.out = out;
+    }
+
+    /**
+     * Reads the next value of a parser and writes it.
+     */
+    public void write( Json json ) throws IOException {
+
+        json.parse( this );
+        drain();
+    }
+
+    /**
+     * Writes the buffered bytes and flushes the stream.
+     */
+    public void flush() throws IOException {
+
+        drain();
+        out.flush();
+    }
+
+    /**
+     * Strings are numbered when they are at least as long as a reference to them would be, see the stringref tag.
+     */
+    static boolean isReferenced( int byteLength, int references ) {
+
+        return byteLength >= ( ( references < 24 ) ? 3 : ( references < 0x100 ) ? 4 : ( references < 0x10000 ) ? 5 : 7 );
+    }
+
+    public void startObject() {
+
+        startValue();
+        depth++;
+        put( START_MAP );
+    }
+
+    public void endObject() {
+
+        depth--;
+        put( BREAK );
+    }
+
+    public void startArray() {
+
+        startValue();
+        depth++;
+        put( START_ARRAY );
+    }
+
+    public void endArray() {
+
+        depth--;
+        put( BREAK );
+    }
+
+    public void key( CharSequence key ) {
+
+        int hash = 0;
+
+        for (int i = 0; i < key.length(); i++) {
+
+            hash = 31 * hash + key.charAt( i );
+        }
+
+        int mask = table.length - 1;
+        int slot = ( hash ^ ( hash >>> 16 ) ) & mask;
+
+        for (; table[slot] != 0; slot = ( slot + 1 ) & mask) {
+
+            String value = keys[table[slot] - 1];
+
+            if ( value.hashCode() == hash && equals( value, key ) ) {
+
+                writeHeader( MAJOR_TAG, TAG_STRINGREF );
+                writeHeader( MAJOR_UNSIGNED, keyReferences[table[slot] - 1] );
+                return;
+            }
+        }
+
+        int byteLength = writeText( key );
+
+        if ( !isReferenced( byteLength, references ) ) {
+
+            return;
+        }
+
+        if ( keyCount == keys.length ) {
+
+            String[] newKeys = new String[keyCount << 1];
+            System.arraycopy( keys, 0, newKeys, 0, keyCount );
+            keys = newKeys;
+
+            int[] newKeyReferences = new int[keyCount << 1];
+            System.arraycopy( keyReferences, 0, newKeyReferences, 0, keyCount );
+            keyReferences = newKeyReferences;
+        }
+
+        keys[keyCount] = key.toString();
+        keyReferences[keyCount] = references++;
+        table[slot] = ++keyCount;
+
+        if ( keyCount * 2 > table.length ) {
+
+            rehash();
+        }
+    }
+
+    public void stringValue( CharSequence value ) {
+
+        startValue();
+
+        if ( isReferenced( writeText( value ), references ) ) {
+
+            references++;
+        }
+    }
+
+    public void longValue( long value ) {
+
+        startValue();
+        writeLong( value );
+    }
+
+    private void writeLong( long value ) {
+
+        if ( value >= 0 ) {
+
+            writeHeader( MAJOR_UNSIGNED, value );
+        }
+        else {
+
+            writeHeader( MAJOR_NEGATIVE, -1 - value );
+        }
+    }
+
+    public void doubleValue( double value ) {
+
+        startValue();
+        float single = (float) value;
+
+        if ( single == value ) {
+
+            put( FLOAT );
+            putBits( Float.floatToIntBits( single ), 4 );
+        }
+        else {
+
+            put( DOUBLE );
+            putBits( Double.doubleToLongBits( value ), 8 );
+        }
+    }
+
+    public void numberValue( CharSequence value ) {
+
+        startValue();
+        String text = value.toString();
+        BigDecimal decimal;
+
+        try {
+
+            decimal = new BigDecimal( text );
+        }
+        catch (NumberFormatException e) {
+
+            if ( isReferenced( writeText( value ), references ) ) {
+
+                references++;
+            }
+
+            return;
+        }
+
+        if ( text.indexOf( '.' ) < 0 && text.indexOf( 'e' ) < 0 && text.indexOf( 'E' ) < 0 ) {
+
+            writeInteger( decimal.toBigInteger() );
+            return;
+        }
+
+        // [exponent, mantissa]
+        writeHeader( MAJOR_TAG, TAG_DECIMAL_FRACTION );
+        writeHeader( MAJOR_ARRAY, 2 );
+        writeLong( -decimal.scale() );
+        writeInteger( decimal.unscaledValue() );
+    }
+
+    public void booleanValue( boolean value ) {
+
+        startValue();
+        put( value ? TRUE : FALSE );
+    }
+
+    public void nullValue() {
+
+        startValue();
+        put( NULL );
+    }
+
+    /**
+     * Opens a new namespace before each top-level value.
+     */
+    private void startValue() {
+
+        if ( depth > 0 ) {
+
+            return;
+        }
+
+        for (int i = 0; i < table.length; i++) {
+
+            table[i] = 0;
+        }
+
+        for (int i = 0; i < keyCount; i++) {
+
+            keys[i] = null;
+        }
+
+        keyCount = 0;
+        references = 0;
+        writeHeader( MAJOR_TAG, TAG_STRINGREF_NAMESPACE );
+    }
+
+    private void writeInteger( BigInteger value ) {
+
+        if ( value.bitLength() < 64 ) {
+
+            writeLong( value.longValue() );
+            return;
+        }
+
+        boolean negative = value.signum() < 0;
+        byte[] magnitude = ( negative ? value.not() : value ).toByteArray();
+        int offset = ( magnitude[0] == 0 ) ? 1 : 0;
+
+        writeHeader( MAJOR_TAG, negative ? TAG_NEGATIVE_BIGNUM : TAG_POSITIVE_BIGNUM );
+        writeHeader( MAJOR_BYTES, magnitude.length - offset );
+        ensure( magnitude.length - offset );
+        System.arraycopy( magnitude, offset, bytes, length, magnitude.length - offset );
+        length += magnitude.length - offset;
+
+        if ( isReferenced( magnitude.length - offset, references ) ) {
+
+            references++;
+        }
+    }
+
+    /**
+     * Writes a text string in UTF-8. An unpaired surrogate is written as U+FFFD.
+     * @return the number of bytes of the string
+     */
+    private int writeText( CharSequence text ) {
+
+        int count = text.length();
+        int byteLength = 0;
+
+        for (int i = 0; i < count; i++) {
+
+            char c = text.charAt( i );
+
+            if ( c < 0x80 ) {
+
+                byteLength++;
+            }
+            else if ( c < 0x800 ) {
+
+                byteLength += 2;
+            }
+            else if ( isPair( text, i ) ) {
+
+                byteLength += 4;
+                i++;
+            }
+            else {
+
+                byteLength += 3;
+            }
+        }
+
+        writeHeader( MAJOR_TEXT, byteLength );
+        ensure( byteLength );
+        byte[] bytes = this.bytes;
+        int length = this.length;
+
+        for (int i = 0; i < count; i++) {
+
+            int c = text.charAt( i );
+
+            if ( c < 0x80 ) {
+
+                bytes[length++] = (byte) c;
+            }
+            else if ( c < 0x800 ) {
+
+                bytes[length++] = (byte) ( 0xC0 | c >> 6 );
+                bytes[length++] = (byte) ( 0x80 | c & 0x3F );
+            }
+            else if ( isPair( text, i ) ) {
+
+                c = 0x10000 + ( ( c - 0xD800 ) << 10 ) + ( text.charAt( ++i ) - 0xDC00 );
+                bytes[length++] = (byte) ( 0xF0 | c >> 18 );
+                bytes[length++] = (byte) ( 0x80 | c >> 12 & 0x3F );
+                bytes[length++] = (byte) ( 0x80 | c >> 6 & 0x3F );
+                bytes[length++] = (byte) ( 0x80 | c & 0x3F );
+            }
+            else {
+
+                if ( c >= 0xD800 && c < 0xE000 ) {
+
+                    c = 0xFFFD;
+                }
+
+                bytes[length++] = (byte) ( 0xE0 | c >> 12 );
+                bytes[length++] = (byte) ( 0x80 | c >> 6 & 0x3F );
+                bytes[length++] = (byte) ( 0x80 | c & 0x3F );
+            }
+        }
+
+        this.length = length;
+        return byteLength;
+    }
+
+    private static boolean isPair( CharSequence text, int i ) {
+
+        char c = text.charAt( i );
+        return c >= 0xD800 && c < 0xDC00 && i + 1 < text.length() && text.charAt( i + 1 ) >= 0xDC00 && text.charAt( i + 1 ) < 0xE000;
+    }
+
+    private void writeHeader( int major, long argument ) {
+
+        int type = major << 5;
+
+        if ( argument < 24 ) {
+
+            put( type | (int) argument );
+        }
+        else if ( argument < 0x100 ) {
+
+            put( type | 24 );
+            put( (int) argument );
+        }
+        else if ( argument < 0x10000 ) {
+
+            put( type | 25 );
+            putBits( argument, 2 );
+        }
+        else if ( argument < 0x100000000L ) {
+
+            put( type | 26 );
+            putBits( argument, 4 );
+        }
+        else {
+
+            put( type | 27 );
+            putBits( argument, 8 );
+        }
+    }
+
+    private void putBits( long bits, int count ) {
+
+        ensure( count );
+
+        for (int shift = ( count - 1 ) << 3; shift >= 0; shift -= 8) {
+
+            bytes[length++] = (byte) ( bits >>> shift );
+        }
+    }
+
+    private void put( int b ) {
+
+        ensure( 1 );
+        bytes[length++] = (byte) b;
+    }
+
+    /**
+     * Makes room for count more bytes, writing out the buffered ones or growing the buffer for a long string.
+     */
+    private void ensure( int count ) {
+
+        if ( length + count <= bytes.length ) {
+
+            return;
+        }
+
+        try {
+
+            drain();
+        }
+        catch (IOException e) {
+
+            throw new RuntimeException( e.getMessage() );
+        }
+
+        if ( count > bytes.length ) {
+
+            bytes = new byte[Math.max( count, bytes.length << 1 )];
+        }
+    }
+
+    private void drain() throws IOException {
+
+        out.write( bytes, 0, length );
+        length = 0;
+    }
+
+    private void rehash() {
+
+        int[] table = new int[this.table.length << 1];
+        int mask = table.length - 1;
+
+        for (int i = 0; i < keyCount; i++) {
+
+            int hash = keys[i].hashCode();
+            int slot = ( hash ^ ( hash >>> 16 ) ) & mask;
+
+            while (table[slot] != 0) {
+
+                slot = ( slot + 1 ) & mask;
+            }
+
+            table[slot] = i + 1;
+        }
+
+        this.table = table;
+    }
+
+    private static boolean equals( String value, CharSequence chars ) {
+
+        int length = value.length();
+
+        if ( length != chars.length() ) {
+
+            return false;
+        }
+
+        for (int i = 0; i < length; i++) {
+
+            if ( value.charAt( i ) != chars.charAt( i ) ) {
+
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
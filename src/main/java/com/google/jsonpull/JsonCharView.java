@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2008-2010 Metova, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jsonpull;
+
+/**
+ * A reusable CharSequence over a range of a char array, such as the current token of a parser.
+ * Escaped strings are decoded into an array of its own.
+ */
+final class JsonCharView implements CharSequence {
+
+    private char[] chars;
+    private int start;
+    private int length;
+
+    private char[] unescaped = new char[64];
+
+    /**
+     * Shows a range of an array.
+     */
+    public void set( char[] chars, int start, int length ) {
+
+        this.chars = chars;
+        this.start = start;
+        this.length = length;
+    }
+
+    /**
+     * Shows the unescaped value of the raw characters of a string.
+     */
+    public void setUnescaped( char[] chars, int start, int length ) {
+
+        if ( JsonEscapes.indexOfEscape( chars, start, length ) == -1 ) {
+
+            set( chars, start, length );
+            return;
+        }
+
+        if ( unescaped.length < length ) {
+
+            unescaped = new char[Math.max( length, unescaped.length << 1 )];
+        }
+
+        set( unescaped, 0, JsonEscapes.unescape( chars, start, length, unescaped ) );
+    }
+
+    public char charAt( int index ) {
+
+        if ( index < 0 || index >= length ) {
+
+            throw new IndexOutOfBoundsException( "index " + index + ", length " + length );
+        }
+
+        return chars[start + index];
+    }
+
+    public int length() {
+
+        return length;
+    }
+
+    public CharSequence subSequence( int from, int to ) {
+
+        if ( from < 0 || to > length || from > to ) {
+
+            throw new IndexOutOfBoundsException( "from " + from + ", to " + to + ", length " + length );
+        }
+
+        return new String( chars, start + from, to - from );
+    }
+
+    public String toString() {
+
+        return new String( chars, start, length );
+    }
+}
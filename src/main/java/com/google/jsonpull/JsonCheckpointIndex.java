@@ -0,0 +1,347 @@
+/*
+ * Copyright (c) 2008-2010 Metova, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jsonpull;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Checkpoints into the elements of a large array in a UTF-8 file, taken every interval elements,
+ * from which a parser is restored to read elements from the middle without scanning from the start.
+ *
+ * A checkpoint holds the position of an element in the array, the byte offset from which the
+ * parser reads on, and the state stack of the parser at that point, which includes its level.
+ * The array is either the top-level value, or the value of a member of a top-level object.
+ * Byte offsets assume valid UTF-8.
+ */
+public final class JsonCheckpointIndex {
+
+    private static final int MAGIC = 0x4A534350;
+    private static final int VERSION = 1;
+
+    private final long sourceLength;
+    private final int interval;
+    private int count;
+    private long[] elements;
+    private long[] offsets;
+    private int[][] states;
+
+    private JsonCheckpointIndex(long sourceLength, int interval, int capacity) {
+
+        this.sourceLength = sourceLength;
+        this.interval = interval;
+        elements = new long[capacity];
+        offsets = new long[capacity];
+        states = new int[capacity][];
+    }
+
+    /**
+     * Indexes the top-level array of a file.
+     * @param interval - the number of elements between checkpoints
+     */
+    public static JsonCheckpointIndex build( File source, int interval ) throws IOException {
+
+        return build( source, null, interval );
+    }
+
+    /**
+     * Indexes an array of a file.
+     * @param key - the member of the top-level object that holds the array, or null for a top-level array
+     * @param interval - the number of elements between checkpoints
+     */
+    public static JsonCheckpointIndex build( File source, String key, int interval ) throws IOException {
+
+        if ( interval < 1 ) {
+
+            throw new IllegalArgumentException( "interval must be positive" );
+        }
+
+        Utf8InputReader reader = new Utf8InputReader( new FileInputStream( source ), 0 );
+        JsonCheckpointIndex index = new JsonCheckpointIndex( source.length(), interval, 16 );
+
+        try {
+
+            Json json = new Json( reader );
+            int level = findArray( json, key );
+            long element = 0;
+
+            while (true) {
+
+                if ( element % interval == 0 ) {
+
+                    index.add( element, reader.getBytePosition() - json.getUnconsumedUtf8Length(), json.getStateSnapshot() );
+                }
+
+                int event = json.next();
+
+                if ( event == JsonBase.END_ARRAY && json.getLevel() < level ) {
+
+                    break;
+                }
+
+                json.seekLevel( level );
+                element++;
+            }
+        }
+        finally {
+
+            reader.close();
+        }
+
+        return index;
+    }
+
+    /**
+     * Positions a parser on the array, after its START_ARRAY token.
+     * @return the level of the elements
+     */
+    private static int findArray( Json json, String key ) {
+
+        if ( key == null ) {
+
+            if ( json.next() != JsonBase.START_ARRAY ) {
+
+                throw new IllegalArgumentException( "Not an array" );
+            }
+
+            return json.getLevel();
+        }
+
+        if ( !json.seekInObject( key ) || json.next() != JsonBase.START_ARRAY ) {
+
+            throw new IllegalArgumentException( "No array in member " + key );
+        }
+
+        return json.getLevel();
+    }
+
+    private void add( long element, long offset, int[] state ) {
+
+        if ( count == elements.length ) {
+
+            long[] newElements = new long[count << 1];
+            System.arraycopy( elements, 0, newElements, 0, count );
+            elements = newElements;
+
+            long[] newOffsets = new long[count << 1];
+            System.arraycopy( offsets, 0, newOffsets, 0, count );
+            offsets = newOffsets;
+
+            int[][] newStates = new int[count << 1][];
+            System.arraycopy( states, 0, newStates, 0, count );
+            states = newStates;
+        }
+
+        elements[count] = element;
+        offsets[count] = offset;
+        states[count] = state;
+        count++;
+    }
+
+    /**
+     * Creates a parser over the file positioned before an element of the array:
+     * its next token is the first of the element, or the END_ARRAY after the last one.
+     * Levels are as in a parser reading from the start, positions start at 0.
+     * @throws IOException if the file changed since the index was built, see matches()
+     */
+    public Json open( File source, long element ) throws IOException {
+
+        if ( !matches( source ) ) {
+
+            throw new IOException( "Index does not match " + source );
+        }
+
+        int checkpoint = find( element );
+        FileInputStream in = new FileInputStream( source );
+
+        try {
+
+            in.getChannel().position( offsets[checkpoint] );
+        }
+        catch (IOException e) {
+
+            in.close();
+            throw e;
+        }
+
+        int[] state = states[checkpoint];
+        Json json = new Json( new Utf8InputReader( new BufferedInputStream( in ), offsets[checkpoint] ) );
+        json.restoreState( state );
+
+        // the level of the elements is the size of the state stack
+        int level = state.length - 1;
+
+        for (long i = elements[checkpoint]; i < element; i++) {
+
+            if ( json.peek() == JsonBase.END_ARRAY ) {
+
+                break;
+            }
+
+            json.next();
+            json.seekLevel( level );
+        }
+
+        return json;
+    }
+
+    /**
+     * @return the last checkpoint at or before an element
+     */
+    public int find( long element ) {
+
+        int low = 0;
+        int high = count - 1;
+
+        while (low < high) {
+
+            int middle = ( low + high + 1 ) >>> 1;
+
+            if ( elements[middle] <= element ) {
+
+                low = middle;
+            }
+            else {
+
+                high = middle - 1;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * @return the number of checkpoints
+     */
+    public int size() {
+
+        return count;
+    }
+
+    public int getInterval() {
+
+        return interval;
+    }
+
+    /**
+     * @return the position in the array of the element that follows a checkpoint
+     */
+    public long getElement( int checkpoint ) {
+
+        return elements[checkpoint];
+    }
+
+    /**
+     * @return the offset in the file from which the parser reads on at a checkpoint
+     */
+    public long getOffset( int checkpoint ) {
+
+        return offsets[checkpoint];
+    }
+
+    /**
+     * @return the level of the parser at a checkpoint
+     */
+    public int getLevel( int checkpoint ) {
+
+        return states[checkpoint].length - 1;
+    }
+
+    /**
+     * @return true if the file has the length it had when the index was built
+     */
+    public boolean matches( File source ) {
+
+        return source.length() == sourceLength;
+    }
+
+    public void write( File file ) throws IOException {
+
+        DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( file ) ) );
+
+        try {
+
+            out.writeInt( MAGIC );
+            out.writeInt( VERSION );
+            out.writeLong( sourceLength );
+            out.writeInt( interval );
+            out.writeInt( count );
+
+            for (int i = 0; i < count; i++) {
+
+                out.writeLong( elements[i] );
+                out.writeLong( offsets[i] );
+                out.writeInt( states[i].length );
+
+                for (int j = 0; j < states[i].length; j++) {
+
+                    out.writeInt( states[i][j] );
+                }
+            }
+        }
+        finally {
+
+            out.close();
+        }
+    }
+
+    /**
+     * Reads an index written by write().
+     */
+    public static JsonCheckpointIndex read( File file ) throws IOException {
+
+        DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream( file ) ) );
+
+        try {
+
+            if ( in.readInt() != MAGIC || in.readInt() != VERSION ) {
+
+                throw new IOException( "Not a checkpoint index: " + file );
+            }
+
+            long sourceLength = in.readLong();
+            int interval = in.readInt();
+            int count = in.readInt();
+            JsonCheckpointIndex index = new JsonCheckpointIndex( sourceLength, interval, Math.max( count, 1 ) );
+
+            for (int i = 0; i < count; i++) {
+
+                long element = in.readLong();
+                long offset = in.readLong();
+                int[] state = new int[in.readInt()];
+
+                for (int j = 0; j < state.length; j++) {
+
+                    state[j] = in.readInt();
+                }
+
+                index.add( element, offset, state );
+            }
+
+            return index;
+        }
+        finally {
+
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,558 @@
+/*
+ * Copyright (c) 2008-2010 Metova, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jsonpull;
+
+/**
+ * Reads an array of similar objects into one column per key, such as
+ * [{"ts":1,"value":0.5,"host":"a"}, ...] into a long[], a double[] and dictionary codes.
+ *
+ * Values are taken from the characters of the tokens without creating a String or any other
+ * object per row. Strings are stored as codes into a dictionary of the distinct values, so only
+ * a new distinct value creates a String. A missing key, a null, or a value of the wrong kind
+ * sets the bit of the row in the null bitmap of the column.
+ */
+public final class JsonColumns {
+
+    public static final int LONG = 1;
+    public static final int DOUBLE = 2;
+    public static final int STRING = 3;
+
+    private String[] names = new String[0];
+    private int[] types = new int[0];
+
+    private long[][] longs;
+    private double[][] doubles;
+    private int[][] codes;
+    private long[][] nulls;
+    private boolean[] seen;
+
+    // per STRING column: the distinct values, and an open addressing table of code + 1
+    private String[][] dictionaries;
+    private int[] dictionarySizes;
+    private int[][] dictionaryTables;
+
+    private int rows;
+
+    /**
+     * Adds a column of integers. Other numbers are truncated.
+     * @return the position of the column
+     */
+    public int addLong( String key ) {
+
+        return addColumn( key, LONG );
+    }
+
+    /**
+     * Adds a column of numbers.
+     * @return the position of the column
+     */
+    public int addDouble( String key ) {
+
+        return addColumn( key, DOUBLE );
+    }
+
+    /**
+     * Adds a column of dictionary encoded strings. Numbers and booleans are stored as their text.
+     * @return the position of the column
+     */
+    public int addString( String key ) {
+
+        return addColumn( key, STRING );
+    }
+
+    /**
+     * Reads the next value, which must be an array of objects, appending one row per element.
+     * Keys without a column and nested values are skipped. An element that is not an object is a row of nulls.
+     * @return the number of rows read
+     */
+    public int read( Json json ) {
+
+        ensureColumns();
+
+        int event = json.next();
+
+        if ( event == JsonBase.NULL ) {
+
+            return 0;
+        }
+
+        if ( event != JsonBase.START_ARRAY ) {
+
+            throw new IllegalArgumentException( "expected " + (char) JsonBase.START_ARRAY + ", found " + (char) event );
+        }
+
+        int first = rows;
+
+        while (( event = json.next() ) != JsonBase.END_ARRAY) {
+
+            ensureRows( rows + 1 );
+
+            for (int i = 0; i < seen.length; i++) {
+
+                seen[i] = false;
+            }
+
+            if ( event == JsonBase.START_OBJECT ) {
+
+                readRow( json );
+            }
+            else if ( event == JsonBase.START_ARRAY ) {
+
+                skip( json );
+            }
+
+            for (int i = 0; i < seen.length; i++) {
+
+                if ( !seen[i] ) {
+
+                    nulls[i][rows >> 6] |= 1L << rows;
+                }
+            }
+
+            rows++;
+        }
+
+        return rows - first;
+    }
+
+    private void readRow( Json json ) {
+
+        int event;
+
+        while (( event = json.next() ) != JsonBase.END_OBJECT) {
+
+            if ( event != JsonBase.KEY ) {
+
+                throw new IllegalArgumentException( "expected " + (char) JsonBase.KEY + ", found " + (char) event );
+            }
+
+            int column = findColumn( json );
+            event = json.next();
+
+            if ( event == JsonBase.START_OBJECT || event == JsonBase.START_ARRAY ) {
+
+                skip( json );
+            }
+            else if ( column != -1 && event != JsonBase.NULL ) {
+
+                seen[column] = store( json, column, event );
+            }
+        }
+    }
+
+    /**
+     * @return true if the value of the current token was stored
+     */
+    private boolean store( Json json, int column, int event ) {
+
+        switch (types[column]) {
+
+            case LONG: {
+
+                if ( event != JsonBase.VARIABLE ) {
+
+                    return false;
+                }
+
+                int numberType = json.getNumberType();
+
+                if ( numberType == JsonBase.NUMBER_INT || numberType == JsonBase.NUMBER_LONG ) {
+
+                    longs[column][rows] = json.getNumberValue();
+                    return true;
+                }
+
+                if ( numberType == JsonBase.NOT_A_NUMBER ) {
+
+                    return false;
+                }
+
+                longs[column][rows] = (long) json.getTokenDouble();
+                return true;
+            }
+
+            case DOUBLE: {
+
+                if ( event != JsonBase.VARIABLE || json.getNumberType() == JsonBase.NOT_A_NUMBER ) {
+
+                    return false;
+                }
+
+                int numberType = json.getNumberType();
+                doubles[column][rows] = ( numberType == JsonBase.NUMBER_INT || numberType == JsonBase.NUMBER_LONG ) ? json.getNumberValue()
+                        : json.getTokenDouble();
+                return true;
+            }
+
+            default: {
+
+                codes[column][rows] = encode( json, column );
+                return true;
+            }
+        }
+    }
+
+    private int encode( Json json, int column ) {
+
+        char[] chars = json.getTokenChars();
+        int start = json.getTokenStart();
+        int length = json.getTokenLength();
+
+        for (int i = start; i < start + length; i++) {
+
+            if ( chars[i] == '\\' ) {
+
+                String value = JsonEscapes.unescape( chars, start, length );
+                return encode( column, value.toCharArray(), 0, value.length() );
+            }
+        }
+
+        return encode( column, chars, start, length );
+    }
+
+    private int encode( int column, char[] chars, int start, int length ) {
+
+        int hash = 0;
+
+        for (int i = start; i < start + length; i++) {
+
+            hash = 31 * hash + chars[i];
+        }
+
+        String[] dictionary = dictionaries[column];
+        int[] table = dictionaryTables[column];
+        int mask = table.length - 1;
+        int slot = ( hash ^ ( hash >>> 16 ) ) & mask;
+
+        for (; table[slot] != 0; slot = ( slot + 1 ) & mask) {
+
+            String value = dictionary[table[slot] - 1];
+
+            if ( value.hashCode() == hash && equals( value, chars, start, length ) ) {
+
+                return table[slot] - 1;
+            }
+        }
+
+        int code = dictionarySizes[column]++;
+
+        if ( code == dictionary.length ) {
+
+            String[] newDictionary = new String[code << 1];
+            System.arraycopy( dictionary, 0, newDictionary, 0, code );
+            dictionary = newDictionary;
+            dictionaries[column] = dictionary;
+        }
+
+        dictionary[code] = new String( chars, start, length );
+        table[slot] = code + 1;
+
+        if ( ( code + 1 ) * 2 > table.length ) {
+
+            rehash( column );
+        }
+
+        return code;
+    }
+
+    private void rehash( int column ) {
+
+        String[] dictionary = dictionaries[column];
+        int[] table = new int[dictionaryTables[column].length << 1];
+        int mask = table.length - 1;
+
+        for (int code = 0; code < dictionarySizes[column]; code++) {
+
+            int hash = dictionary[code].hashCode();
+            int slot = ( hash ^ ( hash >>> 16 ) ) & mask;
+
+            while (table[slot] != 0) {
+
+                slot = ( slot + 1 ) & mask;
+            }
+
+            table[slot] = code + 1;
+        }
+
+        dictionaryTables[column] = table;
+    }
+
+    private static boolean equals( String value, char[] chars, int start, int length ) {
+
+        if ( value.length() != length ) {
+
+            return false;
+        }
+
+        for (int i = 0; i < length; i++) {
+
+            if ( value.charAt( i ) != chars[start + i] ) {
+
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @return the column of the current KEY token, or -1
+     */
+    private int findColumn( Json json ) {
+
+        char[] chars = json.getTokenChars();
+        int start = json.getTokenStart();
+        int length = json.getTokenLength();
+
+        for (int i = 0; i < names.length; i++) {
+
+            if ( equals( names[i], chars, start, length ) ) {
+
+                return i;
+            }
+        }
+
+        for (int i = start; i < start + length; i++) {
+
+            if ( chars[i] == '\\' ) {
+
+                String key = JsonEscapes.unescape( chars, start, length );
+
+                for (int j = 0; j < names.length; j++) {
+
+                    if ( names[j].equals( key ) ) {
+
+                        return j;
+                    }
+                }
+
+                break;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Moves past the children of the container that was just opened.
+     */
+    private static void skip( Json json ) {
+
+        int depth = 1;
+
+        while (depth > 0) {
+
+            int event = json.next();
+
+            if ( event == JsonBase.START_OBJECT || event == JsonBase.START_ARRAY ) {
+
+                depth++;
+            }
+            else if ( event == JsonBase.END_OBJECT || event == JsonBase.END_ARRAY ) {
+
+                depth--;
+            }
+        }
+    }
+
+    /**
+     * @return the number of rows read
+     */
+    public int size() {
+
+        return rows;
+    }
+
+    public int getType( int column ) {
+
+        return types[column];
+    }
+
+    /**
+     * @return the values of a LONG column, valid up to size()
+     */
+    public long[] getLongs( int column ) {
+
+        return longs[column];
+    }
+
+    /**
+     * @return the values of a DOUBLE column, valid up to size()
+     */
+    public double[] getDoubles( int column ) {
+
+        return doubles[column];
+    }
+
+    /**
+     * @return the dictionary codes of a STRING column, valid up to size()
+     */
+    public int[] getCodes( int column ) {
+
+        return codes[column];
+    }
+
+    /**
+     * @return the distinct values of a STRING column, by code
+     */
+    public String[] getDictionary( int column ) {
+
+        String[] dictionary = new String[dictionarySizes[column]];
+        System.arraycopy( dictionaries[column], 0, dictionary, 0, dictionary.length );
+        return dictionary;
+    }
+
+    /**
+     * @return the value of a STRING column at a row, or null
+     */
+    public String getString( int column, int row ) {
+
+        return isNull( column, row ) ? null : dictionaries[column][codes[column][row]];
+    }
+
+    /**
+     * @return the null bitmap of a column, where bit (row &amp; 63) of word (row &gt;&gt; 6) is set for a null
+     */
+    public long[] getNulls( int column ) {
+
+        return nulls[column];
+    }
+
+    public boolean isNull( int column, int row ) {
+
+        return ( nulls[column][row >> 6] & ( 1L << row ) ) != 0;
+    }
+
+    /**
+     * Discards the rows, keeping the columns, their dictionaries and storage.
+     */
+    public void clear() {
+
+        for (int i = 0; nulls != null && i < nulls.length; i++) {
+
+            for (int j = 0; j < nulls[i].length; j++) {
+
+                nulls[i][j] = 0;
+            }
+        }
+
+        rows = 0;
+    }
+
+    private int addColumn( String key, int type ) {
+
+        if ( longs != null ) {
+
+            throw new IllegalStateException( "Columns must be added before reading" );
+        }
+
+        int column = names.length;
+
+        String[] newNames = new String[column + 1];
+        System.arraycopy( names, 0, newNames, 0, column );
+        newNames[column] = key;
+        names = newNames;
+
+        int[] newTypes = new int[column + 1];
+        System.arraycopy( types, 0, newTypes, 0, column );
+        newTypes[column] = type;
+        types = newTypes;
+
+        return column;
+    }
+
+    private void ensureColumns() {
+
+        if ( longs != null ) {
+
+            return;
+        }
+
+        int count = names.length;
+        longs = new long[count][];
+        doubles = new double[count][];
+        codes = new int[count][];
+        nulls = new long[count][];
+        seen = new boolean[count];
+        dictionaries = new String[count][];
+        dictionarySizes = new int[count];
+        dictionaryTables = new int[count][];
+
+        for (int i = 0; i < count; i++) {
+
+            nulls[i] = new long[1];
+
+            switch (types[i]) {
+
+                case LONG:
+                    longs[i] = new long[64];
+                    break;
+                case DOUBLE:
+                    doubles[i] = new double[64];
+                    break;
+                default:
+                    codes[i] = new int[64];
+                    dictionaries[i] = new String[16];
+                    dictionaryTables[i] = new int[32];
+            }
+        }
+    }
+
+    private void ensureRows( int count ) {
+
+        int capacity = nulls.length == 0 ? Integer.MAX_VALUE : nulls[0].length << 6;
+
+        if ( count <= capacity ) {
+
+            return;
+        }
+
+        capacity <<= 1;
+
+        for (int i = 0; i < types.length; i++) {
+
+            long[] newNulls = new long[capacity >> 6];
+            System.arraycopy( nulls[i], 0, newNulls, 0, nulls[i].length );
+            nulls[i] = newNulls;
+
+            switch (types[i]) {
+
+                case LONG: {
+
+                    long[] newLongs = new long[capacity];
+                    System.arraycopy( longs[i], 0, newLongs, 0, rows );
+                    longs[i] = newLongs;
+                    break;
+                }
+
+                case DOUBLE: {
+
+                    double[] newDoubles = new double[capacity];
+                    System.arraycopy( doubles[i], 0, newDoubles, 0, rows );
+                    doubles[i] = newDoubles;
+                    break;
+                }
+
+                default: {
+
+                    int[] newCodes = new int[capacity];
+                    System.arraycopy( codes[i], 0, newCodes, 0, rows );
+                    codes[i] = newCodes;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,701 @@
+/*
+ * Copyright (c) 2008-2010 Metova, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jsonpull;
+
+import java.io.UnsupportedEncodingException;
+import java.math.BigDecimal;
+
+/**
+ * A read-only document held in two arrays: the structure in a long[] and the UTF-8 bytes
+ * of all keys and strings in one shared byte[], without an object per value.
+ *
+ * Every value starts with a header slot: the type in the top 4 bits, then a 28 bit length
+ * (bytes of a string, members of an object, elements of an array) and a 32 bit offset into the
+ * byte[]. Numbers that fit are stored in the following slot, arrays are followed by the
+ * positions of their elements and objects by an open-addressing table of
+ * (key hash, value position) and key reference pairs, so lookups do not scan.
+ * Children are written before their parent, the root is the last value.
+ *
+ * Values are addressed with paths such as "a.b[3].c". Instances are immutable and can be
+ * shared between threads without locking.
+ */
+public final class JsonCompactDocument {
+
+    private static final int TYPE_NULL = 1;
+    private static final int TYPE_TRUE = 2;
+    private static final int TYPE_FALSE = 3;
+    private static final int TYPE_LONG = 4;
+    private static final int TYPE_DOUBLE = 5;
+    private static final int TYPE_NUMBER = 6;
+    private static final int TYPE_STRING = 7;
+    private static final int TYPE_ARRAY = 8;
+    private static final int TYPE_OBJECT = 9;
+    private static final int TYPE_LITERAL = 10;
+
+    private static final int TYPE_SHIFT = 60;
+    private static final int LENGTH_SHIFT = 32;
+    private static final long LENGTH_MASK = 0x0FFFFFFFL;
+    private static final long OFFSET_MASK = 0xFFFFFFFFL;
+
+    private final long[] nodes;
+    private final byte[] bytes;
+    private final int root;
+
+    private JsonCompactDocument(long[] nodes, byte[] bytes, int root) {
+
+        this.nodes = nodes;
+        this.bytes = bytes;
+        this.root = root;
+    }
+
+    /**
+     * Reads the next value of a parser into a compact document.
+     */
+    public static JsonCompactDocument load( Json parser ) {
+
+        Builder builder = new Builder( parser );
+        int root = builder.readValue( parser.next() );
+        return builder.toDocument( root );
+    }
+
+    public static JsonCompactDocument load( String json ) {
+
+        return load( new Json( json ) );
+    }
+
+    /**
+     * @return true if the path leads to a value, including null
+     */
+    public boolean contains( String path ) {
+
+        return resolve( path ) != -1;
+    }
+
+    /**
+     * @return true if the path leads to null or to nothing
+     */
+    public boolean isNull( String path ) {
+
+        int node = resolve( path );
+        return node == -1 || type( node ) == TYPE_NULL;
+    }
+
+    /**
+     * @return the value at the path as a long, 0 if it is missing or not a number
+     */
+    public long getLong( String path ) {
+
+        int node = resolve( path );
+
+        switch (( node == -1 ) ? 0 : type( node )) {
+
+            case TYPE_LONG:
+                return nodes[node + 1];
+            case TYPE_DOUBLE:
+                return (long) Double.longBitsToDouble( nodes[node + 1] );
+            case TYPE_NUMBER:
+                return new BigDecimal( text( node ) ).longValue();
+        }
+
+        return 0;
+    }
+
+    /**
+     * @return the value at the path as a double, 0 if it is missing or not a number
+     */
+    public double getDouble( String path ) {
+
+        int node = resolve( path );
+
+        switch (( node == -1 ) ? 0 : type( node )) {
+
+            case TYPE_LONG:
+                return nodes[node + 1];
+            case TYPE_DOUBLE:
+                return Double.longBitsToDouble( nodes[node + 1] );
+            case TYPE_NUMBER:
+                return Double.parseDouble( text( node ) );
+        }
+
+        return 0;
+    }
+
+    /**
+     * @return the value at the path as a boolean, false if it is missing or not true
+     */
+    public boolean getBoolean( String path ) {
+
+        int node = resolve( path );
+        return node != -1 && type( node ) == TYPE_TRUE;
+    }
+
+    /**
+     * @return the unescaped string at the path, the text of a scalar, or null
+     */
+    public String getString( String path ) {
+
+        int node = resolve( path );
+
+        switch (( node == -1 ) ? 0 : type( node )) {
+
+            case TYPE_STRING:
+            case TYPE_NUMBER:
+            case TYPE_LITERAL:
+                return text( node );
+            case TYPE_LONG:
+                return String.valueOf( nodes[node + 1] );
+            case TYPE_DOUBLE:
+                return String.valueOf( Double.longBitsToDouble( nodes[node + 1] ) );
+            case TYPE_TRUE:
+                return "true";
+            case TYPE_FALSE:
+                return "false";
+        }
+
+        return null;
+    }
+
+    /**
+     * @return number of members of the object or elements of the array at the path, 0 otherwise
+     */
+    public int size( String path ) {
+
+        int node = resolve( path );
+
+        if ( node == -1 || ( type( node ) != TYPE_ARRAY && type( node ) != TYPE_OBJECT ) ) {
+
+            return 0;
+        }
+
+        return length( node );
+    }
+
+    /**
+     * Follows a path of keys separated by '.' and array positions in brackets.
+     * @return the position of the value's header slot, or -1
+     */
+    private int resolve( String path ) {
+
+        int node = root;
+        int length = path.length();
+        int i = 0;
+
+        while (i < length && node != -1) {
+
+            char c = path.charAt( i );
+
+            if ( c == '.' ) {
+
+                i++;
+            }
+            else if ( c == '[' ) {
+
+                int end = path.indexOf( ']', i );
+
+                if ( end == -1 || type( node ) != TYPE_ARRAY ) {
+
+                    return -1;
+                }
+
+                int position = position( path, i + 1, end, length( node ) );
+                node = ( position == -1 ) ? -1 : (int) nodes[node + 1 + position];
+                i = end + 1;
+            }
+            else {
+
+                int end = i;
+
+                while (end < length && path.charAt( end ) != '.' && path.charAt( end ) != '[') {
+
+                    end++;
+                }
+
+                node = member( node, path, i, end );
+                i = end;
+            }
+        }
+
+        return node;
+    }
+
+    /**
+     * @return the array position written in decimal digits between start and end, or -1 if
+     * there are none, others, or it is not below the array length
+     */
+    private static int position( String path, int start, int end, int arrayLength ) {
+
+        if ( start == end ) {
+
+            return -1;
+        }
+
+        int position = 0;
+
+        for (int i = start; i < end; i++) {
+
+            char c = path.charAt( i );
+
+            if ( c < '0' || c > '9' ) {
+
+                return -1;
+            }
+
+            position = position * 10 + ( c - '0' );
+
+            if ( position >= arrayLength ) {
+
+                return -1;
+            }
+        }
+
+        return position;
+    }
+
+    private int member( int node, String path, int start, int end ) {
+
+        if ( type( node ) != TYPE_OBJECT ) {
+
+            return -1;
+        }
+
+        // same hash as String.hashCode(), computed on the path segment in place
+        int hash = 0;
+
+        for (int i = start; i < end; i++) {
+
+            hash = 31 * hash + path.charAt( i );
+        }
+
+        int tableSize = (int) ( nodes[node] & OFFSET_MASK );
+        int mask = tableSize - 1;
+
+        for (int slot = hash & mask;; slot = ( slot + 1 ) & mask) {
+
+            long entry = nodes[node + 1 + 2 * slot];
+
+            if ( entry == 0 ) {
+
+                return -1;
+            }
+
+            if ( (int) ( entry >>> 32 ) == hash && keyEquals( nodes[node + 2 + 2 * slot], path, start, end ) ) {
+
+                return (int) ( entry & OFFSET_MASK ) - 1;
+            }
+        }
+    }
+
+    private boolean keyEquals( long key, String path, int start, int end ) {
+
+        int length = (int) ( key >>> LENGTH_SHIFT );
+        int offset = (int) ( key & OFFSET_MASK );
+
+        // ascii keys compare byte by char, anything else is decoded
+        if ( length == end - start ) {
+
+            boolean ascii = true;
+
+            for (int i = 0; i < length && ascii; i++) {
+
+                if ( bytes[offset + i] < 0 ) {
+
+                    ascii = false;
+                }
+                else if ( bytes[offset + i] != path.charAt( start + i ) ) {
+
+                    return false;
+                }
+            }
+
+            if ( ascii ) {
+
+                return true;
+            }
+        }
+
+        return decode( offset, length ).equals( path.substring( start, end ) );
+    }
+
+    private int type( int node ) {
+
+        return (int) ( nodes[node] >>> TYPE_SHIFT );
+    }
+
+    private int length( int node ) {
+
+        return (int) ( ( nodes[node] >>> LENGTH_SHIFT ) & LENGTH_MASK );
+    }
+
+    private String text( int node ) {
+
+        return decode( (int) ( nodes[node] & OFFSET_MASK ), length( node ) );
+    }
+
+    private String decode( int offset, int length ) {
+
+        try {
+
+            return new String( bytes, offset, length, "UTF-8" );
+        }
+        catch (UnsupportedEncodingException e) {
+
+            throw new RuntimeException( e.getMessage() );
+        }
+    }
+
+    /**
+     * @throws IllegalStateException if the length does not fit its 28 bits
+     */
+    static long header( int type, int length, int offset ) {
+
+        if ( length > LENGTH_MASK ) {
+
+            throw new IllegalStateException( "Value too large for a compact document: " + length );
+        }
+
+        return ( (long) type << TYPE_SHIFT ) | ( ( length & LENGTH_MASK ) << LENGTH_SHIFT ) | ( offset & OFFSET_MASK );
+    }
+
+    /**
+     * Writes the values of a parser in post-order.
+     */
+    private static final class Builder {
+
+        private final Json parser;
+        private long[] nodes = new long[256];
+        private int size;
+        private byte[] bytes = new byte[1024];
+        private int byteCount;
+
+        // distinct keys, and an open addressing table of their positions plus one
+        private String[] keys = new String[16];
+        private long[] keyReferences = new long[16];
+        private int keyCount;
+        private int[] keyTable = new int[32];
+
+        // members and elements of the open containers: position, or key offset, length, hash and position
+        private int[] pending = new int[64];
+        private int pendingCount;
+
+        Builder(Json parser) {
+
+            this.parser = parser;
+        }
+
+        JsonCompactDocument toDocument( int root ) {
+
+            long[] compactNodes = new long[size];
+            System.arraycopy( nodes, 0, compactNodes, 0, size );
+            byte[] compactBytes = new byte[byteCount];
+            System.arraycopy( bytes, 0, compactBytes, 0, byteCount );
+            return new JsonCompactDocument( compactNodes, compactBytes, root );
+        }
+
+        int readValue( int event ) {
+
+            switch (event) {
+
+                case JsonBase.START_OBJECT:
+                    return readObject();
+
+                case JsonBase.START_ARRAY:
+                    return readArray();
+
+                case JsonBase.STRING:
+                    return addText( TYPE_STRING, JsonEscapes.unescape( parser.getString() ) );
+
+                case JsonBase.VARIABLE:
+                    return readVariable();
+
+                case JsonBase.NULL:
+                    return add( header( TYPE_NULL, 0, 0 ) );
+            }
+
+            throw new IllegalStateException( "Unexpected " + (char) event );
+        }
+
+        private int readVariable() {
+
+            switch (parser.getNumberType()) {
+
+                case JsonBase.NUMBER_INT:
+                case JsonBase.NUMBER_LONG: {
+
+                    int node = add( header( TYPE_LONG, 0, 0 ) );
+                    add( parser.getNumberValue() );
+                    return node;
+                }
+
+                case JsonBase.NUMBER_DOUBLE: {
+
+                    int node = add( header( TYPE_DOUBLE, 0, 0 ) );
+                    add( Double.doubleToLongBits( Double.parseDouble( parser.getString() ) ) );
+                    return node;
+                }
+
+                case JsonBase.NUMBER_BIG_INTEGER:
+                case JsonBase.NUMBER_BIG_DECIMAL: {
+
+                    return addText( TYPE_NUMBER, parser.getString() );
+                }
+            }
+
+            String text = parser.getString();
+
+            if ( "true".equals( text ) ) {
+
+                return add( header( TYPE_TRUE, 0, 0 ) );
+            }
+
+            if ( "false".equals( text ) ) {
+
+                return add( header( TYPE_FALSE, 0, 0 ) );
+            }
+
+            // not a number, readable as text only
+            return addText( TYPE_LITERAL, text );
+        }
+
+        private int readArray() {
+
+            int first = pendingCount;
+
+            for (int event = parser.next(); event != JsonBase.END_ARRAY; event = parser.next()) {
+
+                int element = readValue( event );
+                ensurePending( 1 );
+                pending[pendingCount++] = element;
+            }
+
+            int count = pendingCount - first;
+            int node = add( header( TYPE_ARRAY, count, 0 ) );
+
+            for (int i = first; i < pendingCount; i++) {
+
+                add( pending[i] );
+            }
+
+            pendingCount = first;
+            return node;
+        }
+
+        private int readObject() {
+
+            int first = pendingCount;
+
+            for (int event = parser.next(); event != JsonBase.END_OBJECT; event = parser.next()) {
+
+                String key = JsonEscapes.unescape( parser.getString() );
+                long keyReference = addKey( key );
+                int value = readValue( parser.next() );
+
+                ensurePending( 4 );
+                pending[pendingCount++] = (int) ( keyReference & OFFSET_MASK );
+                pending[pendingCount++] = (int) ( keyReference >>> LENGTH_SHIFT );
+                pending[pendingCount++] = key.hashCode();
+                pending[pendingCount++] = value;
+            }
+
+            int count = ( pendingCount - first ) / 4;
+            int tableSize = 2;
+
+            while (tableSize < count * 2) {
+
+                tableSize <<= 1;
+            }
+
+            int node = add( header( TYPE_OBJECT, count, tableSize ) );
+            int table = size;
+            ensureNodes( tableSize * 2 );
+            size += tableSize * 2;
+
+            for (int i = first; i < pendingCount; i += 4) {
+
+                int hash = pending[i + 2];
+                int mask = tableSize - 1;
+                int slot = hash & mask;
+
+                // the first of duplicate keys wins
+                boolean duplicate = false;
+
+                while (nodes[table + 2 * slot] != 0 && !duplicate) {
+
+                    duplicate = nodes[table + 2 * slot + 1] == ( ( (long) pending[i + 1] << LENGTH_SHIFT ) | pending[i] );
+                    slot = ( slot + 1 ) & mask;
+                }
+
+                if ( !duplicate ) {
+
+                    nodes[table + 2 * slot] = ( (long) hash << 32 ) | ( pending[i + 3] + 1 );
+                    nodes[table + 2 * slot + 1] = ( (long) pending[i + 1] << LENGTH_SHIFT ) | ( pending[i] & OFFSET_MASK );
+                }
+            }
+
+            pendingCount = first;
+            return node;
+        }
+
+        /**
+         * Stores each distinct key once.
+         */
+        private long addKey( String key ) {
+
+            int mask = keyTable.length - 1;
+            int hash = key.hashCode();
+            int slot = ( hash ^ ( hash >>> 16 ) ) & mask;
+
+            for (; keyTable[slot] != 0; slot = ( slot + 1 ) & mask) {
+
+                if ( keys[keyTable[slot] - 1].equals( key ) ) {
+
+                    return keyReferences[keyTable[slot] - 1];
+                }
+            }
+
+            if ( keyCount == keys.length ) {
+
+                String[] newKeys = new String[keyCount << 1];
+                System.arraycopy( keys, 0, newKeys, 0, keyCount );
+                keys = newKeys;
+
+                long[] newKeyReferences = new long[keyCount << 1];
+                System.arraycopy( keyReferences, 0, newKeyReferences, 0, keyCount );
+                keyReferences = newKeyReferences;
+            }
+
+            int offset = byteCount;
+            int length = encode( key );
+            keys[keyCount] = key;
+            keyReferences[keyCount] = ( (long) length << LENGTH_SHIFT ) | offset;
+            keyTable[slot] = ++keyCount;
+
+            if ( keyCount * 2 > keyTable.length ) {
+
+                rehashKeys();
+            }
+
+            return keyReferences[keyCount - 1];
+        }
+
+        private void rehashKeys() {
+
+            int[] keyTable = new int[this.keyTable.length << 1];
+            int mask = keyTable.length - 1;
+
+            for (int i = 0; i < keyCount; i++) {
+
+                int hash = keys[i].hashCode();
+                int slot = ( hash ^ ( hash >>> 16 ) ) & mask;
+
+                while (keyTable[slot] != 0) {
+
+                    slot = ( slot + 1 ) & mask;
+                }
+
+                keyTable[slot] = i + 1;
+            }
+
+            this.keyTable = keyTable;
+        }
+
+        private int addText( int type, String text ) {
+
+            int offset = byteCount;
+            int length = encode( text );
+            return add( header( type, length, offset ) );
+        }
+
+        private int encode( String text ) {
+
+            int start = byteCount;
+            int length = text.length();
+
+            for (int i = 0; i < length; i++) {
+
+                ensureBytes( 4 );
+                int c = text.charAt( i );
+
+                if ( c < 0x80 ) {
+
+                    bytes[byteCount++] = (byte) c;
+                    continue;
+                }
+
+                if ( c >= 0xD800 && c < 0xDC00 && i + 1 < length ) {
+
+                    c = 0x10000 + ( ( c - 0xD800 ) << 10 ) + ( text.charAt( ++i ) - 0xDC00 );
+                }
+
+                if ( c < 0x800 ) {
+
+                    bytes[byteCount++] = (byte) ( 0xC0 | ( c >> 6 ) );
+                }
+                else if ( c < 0x10000 ) {
+
+                    bytes[byteCount++] = (byte) ( 0xE0 | ( c >> 12 ) );
+                    bytes[byteCount++] = (byte) ( 0x80 | ( ( c >> 6 ) & 0x3F ) );
+                }
+                else {
+
+                    bytes[byteCount++] = (byte) ( 0xF0 | ( c >> 18 ) );
+                    bytes[byteCount++] = (byte) ( 0x80 | ( ( c >> 12 ) & 0x3F ) );
+                    bytes[byteCount++] = (byte) ( 0x80 | ( ( c >> 6 ) & 0x3F ) );
+                }
+
+                bytes[byteCount++] = (byte) ( 0x80 | ( c & 0x3F ) );
+            }
+
+            return byteCount - start;
+        }
+
+        private int add( long value ) {
+
+            ensureNodes( 1 );
+            nodes[size] = value;
+            return size++;
+        }
+
+        private void ensureNodes( int count ) {
+
+            if ( size + count > nodes.length ) {
+
+                long[] newNodes = new long[Math.max( nodes.length << 1, size + count )];
+                System.arraycopy( nodes, 0, newNodes, 0, size );
+                nodes = newNodes;
+            }
+        }
+
+        private void ensureBytes( int count ) {
+
+            if ( byteCount + count > bytes.length ) {
+
+                byte[] newBytes = new byte[bytes.length << 1];
+                System.arraycopy( bytes, 0, newBytes, 0, byteCount );
+                bytes = newBytes;
+            }
+        }
+
+        private void ensurePending( int count ) {
+
+            if ( pendingCount + count > pending.length ) {
+
+                int[] newPending = new int[pending.length << 1];
+                System.arraycopy( pending, 0, newPending, 0, pendingCount );
+                pending = newPending;
+            }
+        }
+    }
+}
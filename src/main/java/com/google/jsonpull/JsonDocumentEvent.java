@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2008-2010 Metova, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jsonpull;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * The Flight Recorder event of one parsed document. Only loaded by JsonFlightRecorder
+ * once it found jdk.jfr, so the rest of the library runs without it.
+ */
+@Name( "com.google.jsonpull.Document" )
+@Label( "JSON Document" )
+@Category( "JSON" )
+@Description( "A top-level value read by a pull parser" )
+final class JsonDocumentEvent extends Event {
+
+    @Label( "Parse Time" )
+    @Timespan( Timespan.NANOSECONDS )
+    long parseTime;
+
+    @Label( "Characters" )
+    long characters;
+
+    @Label( "Tokens" )
+    long tokens;
+
+    static void commit( long nanos, long characters, long tokenCount ) {
+
+        JsonDocumentEvent event = new JsonDocumentEvent();
+
+        if ( event.shouldCommit() ) {
+
+            event.parseTime = nanos;
+            event.characters = characters;
+            event.tokens = tokenCount;
+            event.commit();
+        }
+    }
+}
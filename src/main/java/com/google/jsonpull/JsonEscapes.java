@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2008-2010 Metova, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jsonpull;
+
+/**
+ * Decodes the escapes of the raw characters of JSON strings and keys, for every reader of tokens.
+ *
+ * Unknown escapes stand for the escaped character itself, as the escaped slash does. A unicode escape
+ * without four hex digits is malformed.
+ */
+final class JsonEscapes {
+
+    private JsonEscapes() {
+
+    }
+
+    /**
+     * @return the character that a backslash and c stand for, for any c but 'u'
+     */
+    static char escaped( char c ) {
+
+        switch (c) {
+
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            default:
+                return c;
+        }
+    }
+
+    /**
+     * @return the index of the first backslash in the range, or -1 if there is none
+     */
+    static int indexOfEscape( char[] chars, int start, int length ) {
+
+        for (int i = start; i < start + length; i++) {
+
+            if ( chars[i] == '\\' ) {
+
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Decodes a range into an array, which must hold at least length characters.
+     * @return the number of characters written
+     */
+    static int unescape( char[] chars, int start, int length, char[] out ) {
+
+        int end = start + length;
+        int count = 0;
+
+        for (int i = start; i < end;) {
+
+            char c = chars[i++];
+
+            if ( c == '\\' && i < end ) {
+
+                c = chars[i++];
+
+                if ( c == 'u' ) {
+
+                    if ( i + 4 > end ) {
+
+                        throw new IllegalStateException( "Invalid unicode escape" );
+                    }
+
+                    c = (char) ( hexDigit( chars[i] ) << 12 | hexDigit( chars[i + 1] ) << 8 | hexDigit( chars[i + 2] ) << 4
+                            | hexDigit( chars[i + 3] ) );
+                    i += 4;
+                }
+                else {
+
+                    c = escaped( c );
+                }
+            }
+
+            out[count++] = c;
+        }
+
+        return count;
+    }
+
+    /**
+     * @return the decoded range, built straight from the array when it has no escapes
+     */
+    static String unescape( char[] chars, int start, int length ) {
+
+        if ( indexOfEscape( chars, start, length ) == -1 ) {
+
+            return new String( chars, start, length );
+        }
+
+        char[] out = new char[length];
+        return new String( out, 0, unescape( chars, start, length, out ) );
+    }
+
+    /**
+     * @return the decoded string, or the same one when it has no escapes, null for null
+     */
+    static String unescape( String raw ) {
+
+        if ( raw == null || raw.indexOf( '\\' ) == -1 ) {
+
+            return raw;
+        }
+
+        char[] chars = raw.toCharArray();
+        return new String( chars, 0, unescape( chars, 0, chars.length, chars ) );
+    }
+
+    /**
+     * @return the value of a hex digit
+     */
+    static int hexDigit( int c ) {
+
+        int digit = Character.digit( (char) c, 16 );
+
+        if ( digit == -1 ) {
+
+            throw new IllegalStateException( "Invalid unicode escape" );
+        }
+
+        return digit;
+    }
+}
@@ -0,0 +1,568 @@
+/*
+ * Copyright (c) 2008-2010 Metova, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jsonpull;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+
+/**
+ * Copies a document from a Reader to a Writer, keeping or dropping members by path.
+ *
+ * A path is a list of keys and array positions such as "user.address", "items[*].secret" or "*.id",
+ * where * matches any key or position and [*] any position. Without include rules everything is kept
+ * except the excluded paths. With include rules only the included paths are kept, along with the containers
+ * leading to them, and excluded paths are dropped from within them.
+ *
+ * Values that are kept whole are copied character by character, and dropped values are skipped by
+ * counting brackets, without tokenizing either. Only the containers that still have to be filtered are
+ * reformatted, without their whitespace. Memory use grows with the nesting depth, not the document size.
+ */
+public final class JsonFilter {
+
+    private static final int SKIP = 0;
+    private static final int COPY = 1;
+    private static final int FILTER = 2;
+
+    private static final int BUFFER_SIZE = 4096;
+
+    // the rules in the order they were added
+    private String[][] segments = new String[0][];
+    private boolean[] excludes = new boolean[0];
+    private boolean includeMode;
+
+    private Reader reader;
+    private Writer writer;
+    private char[] buffer;
+    private int pos;
+    private int limit;
+
+    // start of the region being copied, or -1
+    private int copyStart = -1;
+
+    // filtered containers: type and included flag, members written, position of the next element
+    private StateStack containers;
+    private StateStack counts;
+    private StateStack indexes;
+
+    // per filtered level, the rules whose segments matched the path so far
+    private boolean[] alive;
+
+    // set by match() when an exclude rule ends at the member
+    private boolean excluded;
+
+    private final StringBuffer key = new StringBuffer();
+
+    /**
+     * Keeps the values at a path, and drops everything not on an included path.
+     */
+    public void include( String path ) {
+
+        addRule( path, false );
+    }
+
+    /**
+     * Drops the values at a path.
+     */
+    public void exclude( String path ) {
+
+        addRule( path, true );
+    }
+
+    /**
+     * Writes the filtered document. Neither stream is closed.
+     */
+    public void filter( Reader in, Writer out ) throws IOException {
+
+        reader = in;
+        writer = out;
+        buffer = new char[BUFFER_SIZE];
+        pos = 0;
+        limit = 0;
+        containers = new StateStack();
+        counts = new StateStack();
+        indexes = new StateStack();
+        alive = new boolean[segments.length * 4];
+
+        try {
+
+            for (int i = 0; i < segments.length; i++) {
+
+                alive[i] = true;
+            }
+
+            int first = skipWhitespace();
+
+            if ( first == '{' || first == '[' ) {
+
+                if ( includeMode || hasAlive( 0, true ) ) {
+
+                    open( !includeMode );
+                    run();
+                }
+                else {
+
+                    copyValue();
+                }
+            }
+            else if ( first != -1 ) {
+
+                copyValue();
+            }
+
+            writer.flush();
+        }
+        finally {
+
+            reader = null;
+            writer = null;
+            buffer = null;
+            containers = null;
+            counts = null;
+            indexes = null;
+            alive = null;
+        }
+    }
+
+    private void run() throws IOException {
+
+        while (containers.size() > 0) {
+
+            int level = containers.size();
+            int state = containers.values[level - 1];
+            boolean object = ( state & 0xFF ) == '{';
+            boolean included = ( state >> 8 ) != 0;
+
+            int next = skipWhitespace();
+
+            if ( next == ',' ) {
+
+                pos++;
+                next = skipWhitespace();
+            }
+
+            if ( next == ( object ? '}' : ']' ) ) {
+
+                pos++;
+                writer.write( next );
+                containers.pop();
+                counts.pop();
+                indexes.pop();
+                continue;
+            }
+
+            String name = null;
+            int index = -1;
+
+            if ( object ) {
+
+                if ( next != '"' ) {
+
+                    throw new IllegalStateException( "Unexpected '" + (char) next + "' in object" );
+                }
+
+                pos++;
+                readKey();
+
+                if ( skipWhitespace() != ':' ) {
+
+                    throw new IllegalStateException( "Expected ':' after \"" + key + "\"" );
+                }
+
+                pos++;
+                String raw = key.toString();
+                name = JsonEscapes.unescape( raw );
+            }
+            else {
+
+                index = indexes.values[level - 1]++;
+            }
+
+            int first = skipWhitespace();
+
+            if ( first == -1 ) {
+
+                throw new IllegalStateException( "missing closing characters" );
+            }
+
+            boolean childIncluded = match( level, name, index, included );
+            boolean container = first == '{' || first == '[';
+            int action;
+
+            if ( excluded ) {
+
+                action = SKIP;
+            }
+            else if ( !container ) {
+
+                action = childIncluded ? COPY : SKIP;
+            }
+            else if ( hasAlive( level, childIncluded ) ) {
+
+                action = FILTER;
+            }
+            else {
+
+                action = childIncluded ? COPY : SKIP;
+            }
+
+            if ( action == SKIP ) {
+
+                skipValue();
+                continue;
+            }
+
+            if ( counts.values[level - 1]++ > 0 ) {
+
+                writer.write( ',' );
+            }
+
+            if ( object ) {
+
+                writer.write( '"' );
+                writer.write( key.toString() );
+                writer.write( "\":" );
+            }
+
+            if ( action == COPY ) {
+
+                copyValue();
+            }
+            else {
+
+                open( childIncluded );
+            }
+        }
+    }
+
+    /**
+     * Works out which rules still match with the member appended to the path, into the next level.
+     * @return true if the member is included
+     */
+    private boolean match( int level, String name, int index, boolean included ) {
+
+        int count = segments.length;
+        int parent = ( level - 1 ) * count;
+        int child = level * count;
+
+        if ( alive.length < child + count ) {
+
+            boolean[] newAlive = new boolean[alive.length << 1];
+            System.arraycopy( alive, 0, newAlive, 0, alive.length );
+            alive = newAlive;
+        }
+
+        excluded = false;
+
+        for (int i = 0; i < count; i++) {
+
+            String[] rule = segments[i];
+            boolean matched = alive[parent + i] && rule.length >= level && matches( rule[level - 1], name, index );
+
+            if ( matched && rule.length == level ) {
+
+                if ( excludes[i] ) {
+
+                    excluded = true;
+                }
+                else {
+
+                    included = true;
+                }
+
+                matched = false;
+            }
+
+            alive[child + i] = matched;
+        }
+
+        return excluded ? false : included;
+    }
+
+    private static boolean matches( String segment, String name, int index ) {
+
+        if ( segment.equals( "*" ) ) {
+
+            return true;
+        }
+
+        if ( name != null ) {
+
+            return segment.equals( name );
+        }
+
+        return segment.equals( "[*]" ) || segment.equals( "[" + index + "]" );
+    }
+
+    /**
+     * @param excludeRules - true to look for exclude rules, false for include rules
+     * @return true if a rule of that kind may still match below the level
+     */
+    private boolean hasAlive( int level, boolean excludeRules ) {
+
+        int offset = level * segments.length;
+
+        for (int i = 0; i < segments.length; i++) {
+
+            if ( alive[offset + i] && excludes[i] == excludeRules ) {
+
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private void open( boolean included ) throws IOException {
+
+        int type = buffer[pos++];
+        writer.write( type );
+        containers.push( type | ( included ? 0x100 : 0 ) );
+        counts.push( 0 );
+        indexes.push( 0 );
+    }
+
+    private void readKey() throws IOException {
+
+        key.setLength( 0 );
+
+        while (true) {
+
+            if ( pos == limit && !fill() ) {
+
+                throw new IllegalStateException( "missing closing characters" );
+            }
+
+            int start = pos;
+
+            while (pos < limit && buffer[pos] != '"') {
+
+                if ( buffer[pos] == '\\' ) {
+
+                    pos++;
+
+                    if ( pos == limit ) {
+
+                        key.append( buffer, start, pos - start );
+                        start = pos;
+
+                        if ( !fill() ) {
+
+                            throw new IllegalStateException( "missing closing characters" );
+                        }
+                    }
+                }
+
+                pos++;
+            }
+
+            key.append( buffer, start, pos - start );
+
+            if ( pos < limit ) {
+
+                pos++;
+                return;
+            }
+        }
+    }
+
+    private void copyValue() throws IOException {
+
+        copyStart = pos;
+        scanValue();
+        writer.write( buffer, copyStart, pos - copyStart );
+        copyStart = -1;
+    }
+
+    private void skipValue() throws IOException {
+
+        scanValue();
+    }
+
+    /**
+     * Moves past a value, counting brackets outside of strings.
+     */
+    private void scanValue() throws IOException {
+
+        int depth = 0;
+        boolean string = false;
+        boolean escaped = false;
+
+        while (pos < limit || fill()) {
+
+            char c = buffer[pos];
+
+            if ( string ) {
+
+                if ( escaped ) {
+
+                    escaped = false;
+                }
+                else if ( c == '\\' ) {
+
+                    escaped = true;
+                }
+                else if ( c == '"' ) {
+
+                    string = false;
+
+                    if ( depth == 0 ) {
+
+                        pos++;
+                        return;
+                    }
+                }
+            }
+            else if ( c == '"' ) {
+
+                string = true;
+            }
+            else if ( c == '{' || c == '[' ) {
+
+                depth++;
+            }
+            else if ( c == '}' || c == ']' ) {
+
+                if ( depth == 0 ) {
+
+                    // end of a scalar in a container
+                    return;
+                }
+
+                if ( --depth == 0 ) {
+
+                    pos++;
+                    return;
+                }
+            }
+            else if ( depth == 0 && ( c == ',' || c == ' ' || c == '\t' || c == '\n' || c == '\r' ) ) {
+
+                return;
+            }
+
+            pos++;
+        }
+
+        if ( depth > 0 || string ) {
+
+            throw new IllegalStateException( "missing closing characters" );
+        }
+    }
+
+    /**
+     * @return the next character other than whitespace, without consuming it, or -1 at the end
+     */
+    private int skipWhitespace() throws IOException {
+
+        while (pos < limit || fill()) {
+
+            char c = buffer[pos];
+
+            if ( c != ' ' && c != '\t' && c != '\n' && c != '\r' ) {
+
+                return c;
+            }
+
+            pos++;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Refills the buffer, writing out the part of a copied region read so far.
+     */
+    private boolean fill() throws IOException {
+
+        if ( copyStart != -1 ) {
+
+            writer.write( buffer, copyStart, pos - copyStart );
+            copyStart = 0;
+        }
+
+        pos = 0;
+        limit = 0;
+
+        while (limit == 0) {
+
+            int count = reader.read( buffer, 0, buffer.length );
+
+            if ( count == -1 ) {
+
+                return false;
+            }
+
+            limit = count;
+        }
+
+        return true;
+    }
+
+    private void addRule( String path, boolean exclude ) {
+
+        String[] parts = new String[path.length() + 1];
+        int count = 0;
+        int start = 0;
+
+        for (int i = 0; i <= path.length(); i++) {
+
+            char c = ( i == path.length() ) ? '.' : path.charAt( i );
+
+            if ( c == '.' || c == '[' ) {
+
+                if ( i > start ) {
+
+                    parts[count++] = path.substring( start, i );
+                }
+
+                if ( c == '[' ) {
+
+                    int end = path.indexOf( ']', i );
+
+                    if ( end == -1 ) {
+
+                        throw new IllegalArgumentException( "Missing ']' in " + path );
+                    }
+
+                    parts[count++] = path.substring( i, end + 1 );
+                    i = end;
+                }
+
+                start = i + 1;
+            }
+        }
+
+        if ( count == 0 ) {
+
+            throw new IllegalArgumentException( "Empty path" );
+        }
+
+        String[] rule = new String[count];
+        System.arraycopy( parts, 0, rule, 0, count );
+
+        String[][] newSegments = new String[segments.length + 1][];
+        System.arraycopy( segments, 0, newSegments, 0, segments.length );
+        newSegments[segments.length] = rule;
+
+        boolean[] newExcludes = new boolean[excludes.length + 1];
+        System.arraycopy( excludes, 0, newExcludes, 0, excludes.length );
+        newExcludes[excludes.length] = exclude;
+
+        segments = newSegments;
+        excludes = newExcludes;
+        includeMode |= !exclude;
+    }
+}
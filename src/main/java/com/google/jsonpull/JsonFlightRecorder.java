@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2008-2010 Metova, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jsonpull;
+
+/**
+ * Metrics that also emit a com.google.jsonpull.Document Flight Recorder event per parsed document,
+ * as in json.setMetrics( new JsonFlightRecorder() ). The event costs nothing unless a recording
+ * enables it. On a JVM without jdk.jfr this only keeps the counters of JsonMetrics.
+ */
+public class JsonFlightRecorder extends JsonMetrics {
+
+    private static final boolean AVAILABLE = isAvailable();
+
+    /**
+     * @return whether this JVM has the Flight Recorder API
+     */
+    public static boolean isAvailable() {
+
+        try {
+
+            Class.forName( "jdk.jfr.Event" );
+            return true;
+        }
+        catch (ClassNotFoundException e) {
+
+            return false;
+        }
+        catch (LinkageError e) {
+
+            return false;
+        }
+    }
+
+    protected void documentParsed( long nanos, long characters, long tokenCount ) {
+
+        // JsonDocumentEvent is only resolved, and jdk.jfr only loaded, once this branch runs
+        if ( AVAILABLE ) {
+
+            JsonDocumentEvent.commit( nanos, characters, tokenCount );
+        }
+    }
+}
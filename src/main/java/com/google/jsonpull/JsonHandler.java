@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2008-2010 Metova, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jsonpull;
+
+/**
+ * Receives the tokens of a value from JsonBase.parse( JsonHandler ).
+ *
+ * The CharSequence arguments are views of the parser's buffer, valid only until the method returns;
+ * call toString() on one to keep it.
+ */
+public interface JsonHandler {
+
+    public void startObject();
+
+    public void endObject();
+
+    public void startArray();
+
+    public void endArray();
+
+    /**
+     * @param key - the unescaped key
+     */
+    public void key( CharSequence key );
+
+    /**
+     * @param value - the unescaped value
+     */
+    public void stringValue( CharSequence value );
+
+    /**
+     * Called for integers that fit in a long.
+     */
+    public void longValue( long value );
+
+    /**
+     * Called for numbers with a fraction or an exponent that a double holds without loss of digits.
+     */
+    public void doubleValue( double value );
+
+    /**
+     * Called for other numbers, and any other unquoted text but true, false and null.
+     * @param value - the text as written
+     */
+    public void numberValue( CharSequence value );
+
+    public void booleanValue( boolean value );
+
+    public void nullValue();
+}
@@ -0,0 +1,384 @@
+/*
+ * Copyright (c) 2008-2010 Metova, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jsonpull;
+
+/**
+ * Hashes the next value of a parser to 128 bits while reading it, without building it.
+ *
+ * Equal values hash equally however they are written: whitespace is ignored, members of an object
+ * may come in any order, strings are hashed after unescaping, and numbers by their decimal value,
+ * so 1, 1.0, 10e-1 and 0.1E1 are the same. The hash is meant for caches and deduplication,
+ * it is not resistant to deliberately crafted collisions.
+ *
+ * A JsonHash keeps one frame per open container, it is not thread-safe.
+ */
+public final class JsonHash {
+
+    private static final long SEED_1 = 0xCBF29CE484222325L;
+    private static final long SEED_2 = 0x84222325CBF29CE4L;
+    private static final long PRIME_1 = 0x100000001B3L;
+    private static final long PRIME_2 = 0x9E3779B97F4A7C15L;
+
+    private static final int TAG_OBJECT = 1;
+    private static final int TAG_ARRAY = 2;
+    private static final int TAG_STRING = 3;
+    private static final int TAG_NUMBER = 4;
+    private static final int TAG_LITERAL = 5;
+    private static final int TAG_NULL = 6;
+
+    // per open container: kind, accumulated hash, element count, and the hash of the pending key
+    private boolean[] objects = new boolean[16];
+    private long[] accumulators1 = new long[16];
+    private long[] accumulators2 = new long[16];
+    private int[] counts = new int[16];
+    private long[] keys1 = new long[16];
+    private long[] keys2 = new long[16];
+    private int depth;
+
+    // strings with escapes are decoded here before hashing
+    private char[] unescaped = new char[64];
+
+    // the hash of the last value
+    private long hash1;
+    private long hash2;
+
+    /**
+     * Reads the next value and hashes it. To hash a member of an object, read its key first.
+     * @return the low 64 bits of the hash, see getHigh()
+     */
+    public long hash( Json json ) {
+
+        depth = 0;
+
+        do {
+
+            int event = json.next();
+
+            switch (event) {
+
+                case JsonBase.START_OBJECT:
+                case JsonBase.START_ARRAY: {
+
+                    push( event == JsonBase.START_OBJECT );
+                    continue;
+                }
+
+                case JsonBase.END_OBJECT:
+                case JsonBase.END_ARRAY: {
+
+                    if ( depth == 0 ) {
+
+                        throw new IllegalStateException( "No value to hash, the container ends" );
+                    }
+
+                    depth--;
+                    int tag = objects[depth] ? TAG_OBJECT : TAG_ARRAY;
+                    hash1 = fmix( accumulators1[depth] ^ ( (long) counts[depth] << 8 ) ^ tag );
+                    hash2 = fmix( accumulators2[depth] + ( (long) counts[depth] << 8 ) + tag );
+                    break;
+                }
+
+                case JsonBase.KEY: {
+
+                    if ( depth == 0 ) {
+
+                        throw new IllegalStateException( "No value to hash, the next token is a key" );
+                    }
+
+                    hashString( json );
+                    keys1[depth - 1] = hash1;
+                    keys2[depth - 1] = hash2;
+                    continue;
+                }
+
+                case JsonBase.STRING: {
+
+                    hashString( json );
+                    break;
+                }
+
+                case JsonBase.VARIABLE: {
+
+                    hashVariable( json );
+                    break;
+                }
+
+                case JsonBase.NULL: {
+
+                    hash1 = fmix( SEED_1 ^ TAG_NULL );
+                    hash2 = fmix( SEED_2 + TAG_NULL );
+                    break;
+                }
+
+                default: {
+
+                    throw new IllegalStateException( "Unexpected token " + (char) event );
+                }
+            }
+
+            if ( depth > 0 ) {
+
+                add();
+            }
+        }
+        while (depth > 0);
+
+        return hash1;
+    }
+
+    /**
+     * @return the high 64 bits of the hash of the last value
+     */
+    public long getHigh() {
+
+        return hash2;
+    }
+
+    /**
+     * @return the low 64 bits of the hash of the last value
+     */
+    public long getLow() {
+
+        return hash1;
+    }
+
+    /**
+     * Adds the hash of a completed value to its container. Members of objects are
+     * summed so that their order does not matter, elements of arrays are chained.
+     */
+    private void add() {
+
+        int frame = depth - 1;
+
+        if ( objects[frame] ) {
+
+            accumulators1[frame] += fmix( keys1[frame] * PRIME_1 + hash1 );
+            accumulators2[frame] += fmix( keys2[frame] * PRIME_2 ^ hash2 );
+        }
+        else {
+
+            accumulators1[frame] = ( accumulators1[frame] + hash1 ) * PRIME_1;
+            accumulators2[frame] = Long.rotateLeft( accumulators2[frame] ^ hash2, 31 ) * PRIME_2;
+        }
+
+        counts[frame]++;
+    }
+
+    private void push( boolean object ) {
+
+        if ( depth == objects.length ) {
+
+            int size = depth << 1;
+
+            boolean[] newObjects = new boolean[size];
+            System.arraycopy( objects, 0, newObjects, 0, depth );
+            objects = newObjects;
+
+            accumulators1 = grow( accumulators1, size );
+            accumulators2 = grow( accumulators2, size );
+            keys1 = grow( keys1, size );
+            keys2 = grow( keys2, size );
+
+            int[] newCounts = new int[size];
+            System.arraycopy( counts, 0, newCounts, 0, depth );
+            counts = newCounts;
+        }
+
+        objects[depth] = object;
+        accumulators1[depth] = object ? 0 : SEED_1;
+        accumulators2[depth] = object ? 0 : SEED_2;
+        counts[depth] = 0;
+        depth++;
+    }
+
+    private static long[] grow( long[] values, int size ) {
+
+        long[] newValues = new long[size];
+        System.arraycopy( values, 0, newValues, 0, values.length );
+        return newValues;
+    }
+
+    /**
+     * Hashes the current KEY or STRING token by the characters it stands for.
+     */
+    private void hashString( Json json ) {
+
+        char[] chars = json.getTokenChars();
+        int start = json.getTokenStart();
+        int length = json.getTokenLength();
+
+        if ( JsonEscapes.indexOfEscape( chars, start, length ) != -1 ) {
+
+            if ( unescaped.length < length ) {
+
+                unescaped = new char[Math.max( length, unescaped.length << 1 )];
+            }
+
+            length = JsonEscapes.unescape( chars, start, length, unescaped );
+            chars = unescaped;
+            start = 0;
+        }
+
+        long h1 = SEED_1 ^ TAG_STRING;
+        long h2 = SEED_2 + TAG_STRING;
+
+        for (int i = start; i < start + length; i++) {
+
+            char c = chars[i];
+            h1 = ( h1 ^ c ) * PRIME_1;
+            h2 = Long.rotateLeft( h2 + c, 23 ) * PRIME_2;
+        }
+
+        hash1 = fmix( h1 );
+        hash2 = fmix( h2 ^ length );
+    }
+
+    /**
+     * Hashes a number by its significant digits, without leading or trailing zeros, and the
+     * decimal exponent of the first of them. Other variables, such as true, are hashed as written.
+     */
+    private void hashVariable( Json json ) {
+
+        char[] chars = json.getTokenChars();
+        int i = json.getTokenStart();
+        int end = i + json.getTokenLength();
+
+        if ( json.getNumberType() == JsonBase.NOT_A_NUMBER ) {
+
+            long h1 = SEED_1 ^ TAG_LITERAL;
+            long h2 = SEED_2 + TAG_LITERAL;
+
+            for (; i < end; i++) {
+
+                h1 = ( h1 ^ chars[i] ) * PRIME_1;
+                h2 = Long.rotateLeft( h2 + chars[i], 23 ) * PRIME_2;
+            }
+
+            hash1 = fmix( h1 );
+            hash2 = fmix( h2 );
+            return;
+        }
+
+        boolean negative = chars[i] == '-';
+
+        if ( negative ) {
+
+            i++;
+        }
+
+        long h1 = SEED_1 ^ TAG_NUMBER;
+        long h2 = SEED_2 + TAG_NUMBER;
+        long exponent = 0;
+        boolean significant = false;
+        boolean fraction = false;
+        int pendingZeros = 0;
+
+        for (; i < end; i++) {
+
+            char c = chars[i];
+
+            if ( c == '.' ) {
+
+                fraction = true;
+                continue;
+            }
+
+            if ( c < '0' || c > '9' ) {
+
+                break;
+            }
+
+            if ( !significant ) {
+
+                if ( c == '0' ) {
+
+                    if ( fraction ) {
+
+                        exponent--;
+                    }
+
+                    continue;
+                }
+
+                significant = true;
+            }
+
+            if ( !fraction ) {
+
+                exponent++;
+            }
+
+            if ( c == '0' ) {
+
+                pendingZeros++;
+                continue;
+            }
+
+            for (; pendingZeros > 0; pendingZeros--) {
+
+                h1 = ( h1 ^ '0' ) * PRIME_1;
+                h2 = Long.rotateLeft( h2 + '0', 23 ) * PRIME_2;
+            }
+
+            h1 = ( h1 ^ c ) * PRIME_1;
+            h2 = Long.rotateLeft( h2 + c, 23 ) * PRIME_2;
+        }
+
+        if ( i < end ) {
+
+            // exponent part
+            i++;
+            boolean negativeExponent = chars[i] == '-';
+
+            if ( chars[i] == '-' || chars[i] == '+' ) {
+
+                i++;
+            }
+
+            long value = 0;
+
+            for (; i < end && value < Integer.MAX_VALUE; i++) {
+
+                value = value * 10 + ( chars[i] - '0' );
+            }
+
+            exponent += negativeExponent ? -value : value;
+        }
+
+        if ( !significant ) {
+
+            // all zeros, including -0
+            exponent = 0;
+            negative = false;
+        }
+
+        hash1 = fmix( h1 ^ exponent * PRIME_2 ^ ( negative ? 1 : 0 ) );
+        hash2 = fmix( h2 + exponent * PRIME_1 + ( negative ? 1 : 0 ) );
+    }
+
+    /**
+     * The finalizer of MurmurHash3, so that every input bit affects every output bit.
+     */
+    private static long fmix( long h ) {
+
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
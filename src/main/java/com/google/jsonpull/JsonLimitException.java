@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2008-2010 Metova, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jsonpull;
+
+/**
+ * Thrown when a parser exceeds one of its limits, or its thread is interrupted.
+ * The parser cannot continue with the document afterwards.
+ */
+public class JsonLimitException extends IllegalStateException {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final int DEADLINE = 1;
+    public static final int CHARACTERS = 2;
+    public static final int TOKENS = 3;
+    public static final int DEPTH = 4;
+    public static final int INTERRUPTED = 5;
+
+    private final int reason;
+
+    public JsonLimitException(int reason, String message) {
+
+        super( message );
+        this.reason = reason;
+    }
+
+    /**
+     * @return DEADLINE, CHARACTERS, TOKENS, DEPTH or INTERRUPTED
+     */
+    public int getReason() {
+
+        return reason;
+    }
+}
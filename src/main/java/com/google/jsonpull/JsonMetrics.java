@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2008-2010 Metova, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jsonpull;
+
+/**
+ * Counters describing the work done by one or more parsers.
+ * Attach with JsonBase.setMetrics(). A parser without metrics only pays a null check per token.
+ *
+ * Instances are not synchronized, use one per thread and add() them together for reporting.
+ * Subclasses may override documentParsed() to forward per-document figures to a
+ * recorder, JsonFlightRecorder does so with a JDK Flight Recorder event.
+ */
+public class JsonMetrics {
+
+    private static final int TOKEN_TYPES = 128;
+
+    private long charactersRead;
+    private final long[] tokens;
+    private long stringsMaterialized;
+    private long bufferGrowths;
+    private int maxDepth;
+    private long documents;
+    private long documentTime;
+
+    public JsonMetrics() {
+
+        tokens = new long[TOKEN_TYPES];
+    }
+
+    /**
+     * Called by the parser when a top-level value has been completely read.
+     * @param nanos - time spent between the first and the last token of the document
+     * @param characters - number of characters read for the document
+     * @param tokenCount - number of tokens returned for the document
+     */
+    protected void documentParsed( long nanos, long characters, long tokenCount ) {
+
+        // hook for subclasses
+    }
+
+    void token( int type, int depth ) {
+
+        tokens[type & ( TOKEN_TYPES - 1 )]++;
+
+        if ( depth > maxDepth ) {
+
+            maxDepth = depth;
+        }
+    }
+
+    void stringMaterialized() {
+
+        stringsMaterialized++;
+    }
+
+    void document( long nanos, long characters, long tokenCount, int growths ) {
+
+        documents++;
+        documentTime += nanos;
+        charactersRead += characters;
+        bufferGrowths += growths;
+        documentParsed( nanos, characters, tokenCount );
+    }
+
+    /**
+     * Adds the counters of another instance to this one.
+     */
+    public void add( JsonMetrics other ) {
+
+        charactersRead += other.charactersRead;
+        stringsMaterialized += other.stringsMaterialized;
+        bufferGrowths += other.bufferGrowths;
+        documents += other.documents;
+        documentTime += other.documentTime;
+
+        if ( other.maxDepth > maxDepth ) {
+
+            maxDepth = other.maxDepth;
+        }
+
+        for (int i = 0; i < TOKEN_TYPES; i++) {
+
+            tokens[i] += other.tokens[i];
+        }
+    }
+
+    public void reset() {
+
+        charactersRead = 0;
+        stringsMaterialized = 0;
+        bufferGrowths = 0;
+        maxDepth = 0;
+        documents = 0;
+        documentTime = 0;
+
+        for (int i = 0; i < TOKEN_TYPES; i++) {
+
+            tokens[i] = 0;
+        }
+    }
+
+    /**
+     * @return number of characters read by completed documents
+     */
+    public long getCharactersRead() {
+
+        return charactersRead;
+    }
+
+    /**
+     * @param type - a token type, such as JsonBase.START_OBJECT or JsonBase.STRING
+     * @return number of tokens of the given type
+     */
+    public long getTokenCount( int type ) {
+
+        return tokens[type & ( TOKEN_TYPES - 1 )];
+    }
+
+    /**
+     * @return number of tokens of all types
+     */
+    public long getTokenCount() {
+
+        long count = 0;
+
+        for (int i = 0; i < TOKEN_TYPES; i++) {
+
+            count += tokens[i];
+        }
+
+        return count;
+    }
+
+    /**
+     * @return number of token values copied into a String
+     */
+    public long getStringsMaterialized() {
+
+        return stringsMaterialized;
+    }
+
+    /**
+     * @return number of times an internal parser buffer had to be reallocated
+     */
+    public long getBufferGrowths() {
+
+        return bufferGrowths;
+    }
+
+    /**
+     * @return the deepest level seen, as returned by JsonBase.getLevel()
+     */
+    public int getMaxDepth() {
+
+        return maxDepth;
+    }
+
+    /**
+     * @return number of completed top-level documents
+     */
+    public long getDocumentCount() {
+
+        return documents;
+    }
+
+    /**
+     * @return total time spent in completed documents, in nanoseconds
+     */
+    public long getDocumentTime() {
+
+        return documentTime;
+    }
+}
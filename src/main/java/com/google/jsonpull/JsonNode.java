@@ -0,0 +1,342 @@
+/*
+ * Copyright (c) 2008-2010 Metova, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jsonpull;
+
+import java.io.UnsupportedEncodingException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+
+/**
+ * A value of a document that is read on demand, for random access such as
+ * root.get( "a" ).get( 3 ).get( "b" ).
+ *
+ * A node only knows the position of its token in a JsonTokenIndex. The children of an object
+ * or array are located the first time one of them is asked for, by jumping over the tokens
+ * of their siblings, and strings are decoded the first time they are read.
+ * Subtrees that are never visited are never materialized.
+ */
+public final class JsonNode {
+
+    private final JsonTokenIndex index;
+    private final ByteBuffer source;
+    private final int token;
+
+    // materialized on first access
+    private int[] childTokens;
+    private JsonNode[] children;
+    private String[] keys;
+    private int[] keyTable;
+    private String value;
+
+    private JsonNode(JsonTokenIndex index, ByteBuffer source, int token) {
+
+        this.index = index;
+        this.source = source;
+        this.token = token;
+    }
+
+    /**
+     * @return the top-level value of an indexed document
+     * @param source - the document the index was built from
+     */
+    public static JsonNode root( JsonTokenIndex index, ByteBuffer source ) {
+
+        return new JsonNode( index, source, 0 );
+    }
+
+    /**
+     * Indexes a document and returns its top-level value.
+     */
+    public static JsonNode parse( String json ) {
+
+        try {
+
+            ByteBuffer source = ByteBuffer.wrap( json.getBytes( "UTF-8" ) );
+            return root( JsonTokenIndex.build( source ), source );
+        }
+        catch (UnsupportedEncodingException e) {
+
+            throw new RuntimeException( e.getMessage() );
+        }
+    }
+
+    /**
+     * @return START_OBJECT, START_ARRAY, STRING, VARIABLE or NULL
+     */
+    public int getType() {
+
+        return index.getType( token );
+    }
+
+    public boolean isNull() {
+
+        return getType() == JsonBase.NULL;
+    }
+
+    /**
+     * @return number of members of an object or elements of an array, 0 for other values
+     */
+    public int size() {
+
+        return ensureChildren().length;
+    }
+
+    /**
+     * @return the member of an object with the given key, or null if there is none
+     */
+    public JsonNode get( String key ) {
+
+        if ( getType() != JsonBase.START_OBJECT ) {
+
+            return null;
+        }
+
+        if ( keyTable == null ) {
+
+            indexKeys();
+        }
+
+        int mask = keyTable.length - 1;
+
+        for (int slot = slot( key, mask ); keyTable[slot] != 0; slot = ( slot + 1 ) & mask) {
+
+            if ( keys[keyTable[slot] - 1].equals( key ) ) {
+
+                return child( keyTable[slot] - 1 );
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Decodes the keys of an object into an open addressing table of member positions plus one.
+     */
+    private void indexKeys() {
+
+        int[] childTokens = ensureChildren();
+        String[] keys = new String[childTokens.length];
+        int[] keyTable = new int[Integer.highestOneBit( childTokens.length * 2 + 1 ) << 1];
+        int mask = keyTable.length - 1;
+
+        for (int i = 0; i < childTokens.length; i++) {
+
+            // the key token precedes its value
+            String raw = index.getString( source, childTokens[i] - 1 );
+            keys[i] = JsonEscapes.unescape( raw );
+
+            int slot = slot( keys[i], mask );
+
+            while (keyTable[slot] != 0 && !keys[keyTable[slot] - 1].equals( keys[i] )) {
+
+                slot = ( slot + 1 ) & mask;
+            }
+
+            // the first of duplicate keys wins
+            if ( keyTable[slot] == 0 ) {
+
+                keyTable[slot] = i + 1;
+            }
+        }
+
+        this.keys = keys;
+        this.keyTable = keyTable;
+    }
+
+    private static int slot( String key, int mask ) {
+
+        int hash = key.hashCode();
+        return ( hash ^ ( hash >>> 16 ) ) & mask;
+    }
+
+    /**
+     * @return the element of an array, or the member of an object, at a position; null if out of range
+     */
+    public JsonNode get( int position ) {
+
+        int[] childTokens = ensureChildren();
+        return ( position < 0 || position >= childTokens.length ) ? null : child( position );
+    }
+
+    /**
+     * @return the key of the member of an object at a position
+     */
+    public String getKey( int position ) {
+
+        return JsonEscapes.unescape( index.getString( source, ensureChildren()[position] - 1 ) );
+    }
+
+    /**
+     * @return the unescaped value of a string, the text of other scalars, or null for null
+     */
+    public String getString() {
+
+        if ( value == null ) {
+
+            int type = getType();
+
+            if ( type == JsonBase.STRING ) {
+
+                value = JsonEscapes.unescape( index.getString( source, token ) );
+            }
+            else if ( type == JsonBase.VARIABLE ) {
+
+                value = index.getString( source, token );
+            }
+        }
+
+        return value;
+    }
+
+    /**
+     * @return the value as a long, 0 if it is not a number
+     */
+    public long getLong() {
+
+        if ( getType() == JsonBase.VARIABLE ) {
+
+            int offset = source.position() + index.getOffset( token );
+            int end = offset + index.getLength( token );
+            boolean negative = source.get( offset ) == '-';
+            long result = 0;
+
+            if ( end - offset > 18 ) {
+
+                BigDecimal big = getBigDecimal();
+                return ( big == null ) ? 0 : big.longValue();
+            }
+
+            for (int i = negative ? offset + 1 : offset; i < end; i++) {
+
+                int digit = source.get( i ) - '0';
+
+                if ( digit < 0 || digit > 9 ) {
+
+                    // not a plain integer
+                    return (long) getDouble();
+                }
+
+                result = result * 10 + digit;
+            }
+
+            return negative ? -result : result;
+        }
+
+        return 0;
+    }
+
+    /**
+     * @return the value as a double, 0 if it is not a number
+     */
+    public double getDouble() {
+
+        try {
+
+            return Double.parseDouble( getString() );
+        }
+        catch (Exception e) {
+
+            return 0;
+        }
+    }
+
+    /**
+     * @return the value as a BigDecimal, null if it is not a number
+     */
+    public BigDecimal getBigDecimal() {
+
+        try {
+
+            return new BigDecimal( getString() );
+        }
+        catch (Exception e) {
+
+            return null;
+        }
+    }
+
+    public boolean getBoolean() {
+
+        return "true".equals( getString() );
+    }
+
+    private JsonNode child( int position ) {
+
+        if ( children == null ) {
+
+            children = new JsonNode[childTokens.length];
+        }
+
+        if ( children[position] == null ) {
+
+            children[position] = new JsonNode( index, source, childTokens[position] );
+        }
+
+        return children[position];
+    }
+
+    /**
+     * Locates the value tokens of the members or elements, skipping over nested containers.
+     */
+    private int[] ensureChildren() {
+
+        if ( childTokens != null ) {
+
+            return childTokens;
+        }
+
+        int type = getType();
+
+        if ( type != JsonBase.START_OBJECT && type != JsonBase.START_ARRAY ) {
+
+            childTokens = new int[0];
+            return childTokens;
+        }
+
+        int end = index.getEnd( token );
+        int[] values = new int[8];
+        int count = 0;
+
+        for (int i = token + 1; i < end; i++) {
+
+            if ( type == JsonBase.START_OBJECT ) {
+
+                // skip the key
+                i++;
+            }
+
+            if ( count == values.length ) {
+
+                int[] newValues = new int[count << 1];
+                System.arraycopy( values, 0, newValues, 0, count );
+                values = newValues;
+            }
+
+            values[count++] = i;
+
+            int childType = index.getType( i );
+
+            if ( childType == JsonBase.START_OBJECT || childType == JsonBase.START_ARRAY ) {
+
+                i = index.getEnd( i );
+            }
+        }
+
+        childTokens = new int[count];
+        System.arraycopy( values, 0, childTokens, 0, count );
+        return childTokens;
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright (c) 2008-2010 Metova, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jsonpull;
+
+/**
+ * The positions of the member values of one object, for reading them in any order.
+ * Created by Json.indexObject(), which reads past the object once and records where each value starts;
+ * seek() then moves the parser back to the value of a key. The keys are kept in one char array
+ * and found through an open addressing table.
+ */
+public final class JsonObjectIndex {
+
+    private final JsonBase parser;
+
+    private char[] keyChars = new char[128];
+    private int keyLength;
+    private int[] keyStarts = new int[8];
+    private int[] keyLengths = new int[8];
+    private int[] hashes = new int[8];
+    private int[] offsets = new int[8];
+    private int[][] states = new int[8][];
+    private int count;
+
+    // member position + 1 by hash
+    private int[] table;
+
+    private int endOffset;
+    private int[] endState;
+
+    JsonObjectIndex(JsonBase parser) {
+
+        this.parser = parser;
+    }
+
+    /**
+     * Records a member, the parser being just after its key.
+     */
+    void add( char[] chars, int start, int length ) {
+
+        for (int i = start; i < start + length; i++) {
+
+            if ( chars[i] == '\\' ) {
+
+                String key = JsonEscapes.unescape( chars, start, length );
+                add( key.toCharArray(), 0, key.length() );
+                return;
+            }
+        }
+
+        if ( count == offsets.length ) {
+
+            int size = count << 1;
+            keyStarts = grow( keyStarts, size );
+            keyLengths = grow( keyLengths, size );
+            hashes = grow( hashes, size );
+            offsets = grow( offsets, size );
+
+            int[][] newStates = new int[size][];
+            System.arraycopy( states, 0, newStates, 0, count );
+            states = newStates;
+        }
+
+        if ( keyLength + length > keyChars.length ) {
+
+            char[] newKeyChars = new char[Math.max( keyChars.length << 1, keyLength + length )];
+            System.arraycopy( keyChars, 0, newKeyChars, 0, keyLength );
+            keyChars = newKeyChars;
+        }
+
+        int hash = 0;
+
+        for (int i = start; i < start + length; i++) {
+
+            hash = 31 * hash + chars[i];
+        }
+
+        System.arraycopy( chars, start, keyChars, keyLength, length );
+        keyStarts[count] = keyLength;
+        keyLengths[count] = length;
+        keyLength += length;
+        hashes[count] = hash;
+        offsets[count] = parser.getConsumedOffset();
+        states[count] = parser.getStateSnapshot();
+        count++;
+    }
+
+    /**
+     * Records the end of the object and builds the table, the parser being just after the object.
+     */
+    void end() {
+
+        endOffset = parser.getConsumedOffset();
+        endState = parser.getStateSnapshot();
+
+        int size = 4;
+
+        while (size < count * 2) {
+
+            size <<= 1;
+        }
+
+        table = new int[size];
+
+        // in reverse, so that the first of duplicate keys wins
+        for (int i = count - 1; i >= 0; i--) {
+
+            int slot = find( hashes[i], keyChars, keyStarts[i], keyLengths[i] );
+            table[slot] = i + 1;
+        }
+    }
+
+    /**
+     * @return the slot holding a key, or the empty slot where it belongs
+     */
+    private int find( int hash, char[] chars, int start, int length ) {
+
+        int mask = table.length - 1;
+        int slot = ( hash ^ ( hash >>> 16 ) ) & mask;
+
+        while (table[slot] != 0) {
+
+            int member = table[slot] - 1;
+
+            if ( hashes[member] == hash && keyLengths[member] == length && regionEquals( keyStarts[member], chars, start, length ) ) {
+
+                break;
+            }
+
+            slot = ( slot + 1 ) & mask;
+        }
+
+        return slot;
+    }
+
+    private boolean regionEquals( int keyStart, char[] chars, int start, int length ) {
+
+        for (int i = 0; i < length; i++) {
+
+            if ( keyChars[keyStart + i] != chars[start + i] ) {
+
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Moves the parser to the value of a key, so that its next token is the first of the value.
+     * @return false if the object has no such key, the parser is not moved then
+     */
+    public boolean seek( String key ) {
+
+        int member = indexOf( key );
+
+        if ( member == -1 ) {
+
+            return false;
+        }
+
+        parser.seek( offsets[member], states[member] );
+        return true;
+    }
+
+    /**
+     * Moves the parser to just after the object.
+     */
+    public void seekEnd() {
+
+        parser.seek( endOffset, endState );
+    }
+
+    public boolean containsKey( String key ) {
+
+        return indexOf( key ) != -1;
+    }
+
+    /**
+     * @return the position of a key among the members, or -1
+     */
+    public int indexOf( String key ) {
+
+        int mask = table.length - 1;
+        int hash = key.hashCode();
+        int length = key.length();
+
+        for (int slot = ( hash ^ ( hash >>> 16 ) ) & mask; table[slot] != 0; slot = ( slot + 1 ) & mask) {
+
+            int member = table[slot] - 1;
+
+            if ( hashes[member] == hash && keyLengths[member] == length && keyEquals( keyStarts[member], key ) ) {
+
+                return member;
+            }
+        }
+
+        return -1;
+    }
+
+    private boolean keyEquals( int keyStart, String key ) {
+
+        for (int i = 0; i < key.length(); i++) {
+
+            if ( keyChars[keyStart + i] != key.charAt( i ) ) {
+
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @return the number of members
+     */
+    public int size() {
+
+        return count;
+    }
+
+    /**
+     * @return the key of the member at a position
+     */
+    public String getKey( int member ) {
+
+        return new String( keyChars, keyStarts[member], keyLengths[member] );
+    }
+
+    private static int[] grow( int[] values, int size ) {
+
+        int[] newValues = new int[size];
+        System.arraycopy( values, 0, newValues, 0, values.length );
+        return newValues;
+    }
+}
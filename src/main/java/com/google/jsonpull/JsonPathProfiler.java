@@ -0,0 +1,502 @@
+/*
+ * Copyright (c) 2008-2010 Metova, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jsonpull;
+
+/**
+ * Attributes the time, characters and tokens a parser spends to the paths of the values it reads,
+ * such as "items[*].name", with every array position collapsed to [*]. Attach with JsonBase.setPathProfiler().
+ *
+ * Only one document in every sampleInterval is profiled, the others cost a counter. Time is measured
+ * inside next() only, so the work of the caller between tokens is not counted, and characters are
+ * those consumed by the token, including the whitespace before it. Once maxPaths paths are known,
+ * further keys are counted under "*" of their object, so documents keyed by ids stay bounded
+ * to a few times maxPaths.
+ *
+ * Instances are not synchronized, use one per thread.
+ */
+public final class JsonPathProfiler {
+
+    public static final int BY_TIME = 0;
+    public static final int BY_CHARACTERS = 1;
+    public static final int BY_TOKENS = 2;
+
+    private static final String ELEMENT = "[*]";
+    private static final char[] ANY_KEY = { '*' };
+
+    private final int sampleInterval;
+    private final int maxPaths;
+    private long documents;
+    private long sampledDocuments;
+
+    // the paths, parents before their children, with their own costs; 0 is the document
+    private int size = 1;
+    private int[] parents = new int[64];
+    private String[] segments = new String[64];
+    private long[] nanos = new long[64];
+    private long[] characters = new long[64];
+    private long[] tokens = new long[64];
+
+    // children by parent and key, and the [*] child of each array path plus one
+    private int[] table = new int[128];
+    private int[] elements = new int[64];
+
+    // the open containers of the document being profiled, and the member that was just keyed
+    private int[] containers = new int[16];
+    private boolean[] objects = new boolean[16];
+    private int depth;
+    private int member;
+
+    /**
+     * @param sampleInterval - profile one document in this many, 1 for every document
+     */
+    public JsonPathProfiler(int sampleInterval) {
+
+        this( sampleInterval, 4096 );
+    }
+
+    /**
+     * @param sampleInterval - profile one document in this many, 1 for every document
+     * @param maxPaths - the number of distinct paths to keep
+     */
+    public JsonPathProfiler(int sampleInterval, int maxPaths) {
+
+        if ( sampleInterval < 1 || maxPaths < 1 ) {
+
+            throw new IllegalArgumentException( "sampleInterval and maxPaths must be positive" );
+        }
+
+        this.sampleInterval = sampleInterval;
+        this.maxPaths = maxPaths;
+        segments[0] = "";
+    }
+
+    /**
+     * Called by the parser before the first token of a document.
+     * @return true if the document is profiled
+     */
+    boolean documentStarted() {
+
+        if ( documents++ % sampleInterval != 0 ) {
+
+            return false;
+        }
+
+        sampledDocuments++;
+        depth = 0;
+        member = 0;
+        return true;
+    }
+
+    /**
+     * Called by the parser after each token of a profiled document.
+     * @param chars - the characters of the token when it is a KEY
+     */
+    void token( int type, char[] chars, int start, int length, int consumed, long time ) {
+
+        int path;
+
+        switch (type) {
+
+            case JsonBase.START_OBJECT:
+            case JsonBase.START_ARRAY: {
+
+                path = valuePath();
+                push( path, type == JsonBase.START_OBJECT );
+                break;
+            }
+
+            case JsonBase.END_OBJECT:
+            case JsonBase.END_ARRAY: {
+
+                if ( depth == 0 ) {
+
+                    // attached in the middle of a document
+                    return;
+                }
+
+                path = containers[--depth];
+                break;
+            }
+
+            case JsonBase.KEY: {
+
+                path = ( depth > 0 ) ? child( containers[depth - 1], chars, start, length ) : 0;
+                member = path;
+                break;
+            }
+
+            case JsonBase.STRING:
+            case JsonBase.VARIABLE:
+            case JsonBase.NULL: {
+
+                path = valuePath();
+                break;
+            }
+
+            default:
+                return;
+        }
+
+        nanos[path] += time;
+        characters[path] += consumed;
+        tokens[path]++;
+    }
+
+    private int valuePath() {
+
+        if ( depth == 0 ) {
+
+            return 0;
+        }
+
+        int container = containers[depth - 1];
+        return objects[depth - 1] ? member : element( container );
+    }
+
+    private void push( int path, boolean object ) {
+
+        if ( depth == containers.length ) {
+
+            int[] newContainers = new int[depth << 1];
+            System.arraycopy( containers, 0, newContainers, 0, depth );
+            containers = newContainers;
+
+            boolean[] newObjects = new boolean[depth << 1];
+            System.arraycopy( objects, 0, newObjects, 0, depth );
+            objects = newObjects;
+        }
+
+        containers[depth] = path;
+        objects[depth] = object;
+        depth++;
+    }
+
+    private int element( int parent ) {
+
+        if ( elements[parent] == 0 ) {
+
+            elements[parent] = add( parent, ELEMENT ) + 1;
+        }
+
+        return elements[parent] - 1;
+    }
+
+    /**
+     * @return the path of a member of an object, added if it is new
+     */
+    private int child( int parent, char[] chars, int start, int length ) {
+
+        int hash = parent;
+
+        for (int i = start; i < start + length; i++) {
+
+            hash = 31 * hash + chars[i];
+        }
+
+        int mask = table.length - 1;
+        int slot = ( hash ^ ( hash >>> 16 ) ) & mask;
+
+        for (; table[slot] != 0; slot = ( slot + 1 ) & mask) {
+
+            int path = table[slot] - 1;
+
+            if ( parents[path] == parent && equals( segments[path], chars, start, length ) ) {
+
+                return path;
+            }
+        }
+
+        if ( size >= maxPaths && ( length != 1 || chars[start] != '*' ) ) {
+
+            return child( parent, ANY_KEY, 0, 1 );
+        }
+
+        int path = add( parent, new String( chars, start, length ) );
+        table[slot] = path + 1;
+
+        if ( size * 2 > table.length ) {
+
+            rehash();
+        }
+
+        return path;
+    }
+
+    private int add( int parent, String segment ) {
+
+        if ( size == parents.length ) {
+
+            int capacity = size << 1;
+
+            int[] newParents = new int[capacity];
+            System.arraycopy( parents, 0, newParents, 0, size );
+            parents = newParents;
+
+            String[] newSegments = new String[capacity];
+            System.arraycopy( segments, 0, newSegments, 0, size );
+            segments = newSegments;
+
+            nanos = grow( nanos, capacity );
+            characters = grow( characters, capacity );
+            tokens = grow( tokens, capacity );
+
+            int[] newElements = new int[capacity];
+            System.arraycopy( elements, 0, newElements, 0, size );
+            elements = newElements;
+        }
+
+        parents[size] = parent;
+        segments[size] = segment;
+        return size++;
+    }
+
+    private static long[] grow( long[] values, int capacity ) {
+
+        long[] newValues = new long[capacity];
+        System.arraycopy( values, 0, newValues, 0, values.length );
+        return newValues;
+    }
+
+    private void rehash() {
+
+        int[] table = new int[this.table.length << 1];
+        int mask = table.length - 1;
+
+        for (int path = 1; path < size; path++) {
+
+            if ( segments[path] == ELEMENT ) {
+
+                continue;
+            }
+
+            int hash = parents[path];
+            String segment = segments[path];
+
+            for (int i = 0; i < segment.length(); i++) {
+
+                hash = 31 * hash + segment.charAt( i );
+            }
+
+            int slot = ( hash ^ ( hash >>> 16 ) ) & mask;
+
+            while (table[slot] != 0) {
+
+                slot = ( slot + 1 ) & mask;
+            }
+
+            table[slot] = path + 1;
+        }
+
+        this.table = table;
+    }
+
+    private static boolean equals( String value, char[] chars, int start, int length ) {
+
+        if ( value.length() != length ) {
+
+            return false;
+        }
+
+        for (int i = 0; i < length; i++) {
+
+            if ( value.charAt( i ) != chars[start + i] ) {
+
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Forgets all paths and counts.
+     */
+    public void reset() {
+
+        for (int path = 0; path < size; path++) {
+
+            segments[path] = null;
+            nanos[path] = 0;
+            characters[path] = 0;
+            tokens[path] = 0;
+            elements[path] = 0;
+        }
+
+        for (int i = 0; i < table.length; i++) {
+
+            table[i] = 0;
+        }
+
+        size = 1;
+        segments[0] = "";
+        documents = 0;
+        sampledDocuments = 0;
+        depth = 0;
+    }
+
+    /**
+     * @return the number of paths, including the document itself as path 0
+     */
+    public int size() {
+
+        return size;
+    }
+
+    /**
+     * @return the path, such as "items[*].name", or "" for the document itself
+     */
+    public String getPath( int path ) {
+
+        if ( path == 0 ) {
+
+            return "";
+        }
+
+        String parent = getPath( parents[path] );
+
+        if ( segments[path] == ELEMENT || parent.length() == 0 ) {
+
+            return parent + segments[path];
+        }
+
+        return parent + '.' + segments[path];
+    }
+
+    /**
+     * @return the nanoseconds spent on the tokens of the path itself, not of the values below it
+     */
+    public long getNanos( int path ) {
+
+        return nanos[path];
+    }
+
+    /**
+     * @return the characters consumed by the tokens of the path itself
+     */
+    public long getCharacters( int path ) {
+
+        return characters[path];
+    }
+
+    /**
+     * @return the number of tokens of the path itself
+     */
+    public long getTokens( int path ) {
+
+        return tokens[path];
+    }
+
+    /**
+     * @return the number of documents seen, and of those profiled
+     */
+    public long getDocumentCount() {
+
+        return documents;
+    }
+
+    public long getSampledDocumentCount() {
+
+        return sampledDocuments;
+    }
+
+    /**
+     * @param order - BY_TIME, BY_CHARACTERS or BY_TOKENS
+     * @return the costs of each path including the values below it
+     */
+    public long[] getTotals( int order ) {
+
+        long[] own = ( order == BY_TIME ) ? nanos : ( order == BY_CHARACTERS ) ? characters : tokens;
+        long[] totals = new long[size];
+        System.arraycopy( own, 0, totals, 0, size );
+
+        // children come after their parents
+        for (int path = size - 1; path > 0; path--) {
+
+            totals[parents[path]] += totals[path];
+        }
+
+        return totals;
+    }
+
+    /**
+     * @param order - BY_TIME, BY_CHARACTERS or BY_TOKENS
+     * @return up to count paths below the document with the highest totals, highest first
+     */
+    public int[] getTopPaths( int count, int order ) {
+
+        long[] totals = getTotals( order );
+        int[] top = new int[Math.min( count, size - 1 )];
+        int length = 0;
+
+        for (int path = 1; path < size; path++) {
+
+            int i = length;
+
+            if ( i == top.length ) {
+
+                if ( i == 0 || totals[top[i - 1]] >= totals[path] ) {
+
+                    continue;
+                }
+
+                i--;
+            }
+            else {
+
+                length++;
+            }
+
+            for (; i > 0 && totals[top[i - 1]] < totals[path]; i--) {
+
+                top[i] = top[i - 1];
+            }
+
+            top[i] = path;
+        }
+
+        return top;
+    }
+
+    /**
+     * @return a line per path of getTopPaths(), with the time, characters and tokens of the
+     *         path including the values below it, and their share of the profiled documents
+     */
+    public String report( int count, int order ) {
+
+        long[] times = getTotals( BY_TIME );
+        long[] chars = getTotals( BY_CHARACTERS );
+        long[] counts = getTotals( BY_TOKENS );
+        long[] ranked = ( order == BY_TIME ) ? times : ( order == BY_CHARACTERS ) ? chars : counts;
+        int[] top = getTopPaths( count, order );
+
+        StringBuffer report = new StringBuffer();
+        report.append( sampledDocuments ).append( " of " ).append( documents ).append( " documents, " );
+        report.append( times[0] / 1000 ).append( " us, " ).append( chars[0] ).append( " characters, " );
+        report.append( counts[0] ).append( " tokens\n" );
+
+        for (int i = 0; i < top.length; i++) {
+
+            int path = top[i];
+            report.append( ( ranked[0] == 0 ) ? 0 : ranked[path] * 100 / ranked[0] ).append( "% " );
+            report.append( getPath( path ) ).append( ' ' );
+            report.append( times[path] / 1000 ).append( " us, " );
+            report.append( chars[path] ).append( " characters, " );
+            report.append( counts[path] ).append( " tokens\n" );
+        }
+
+        return report.toString();
+    }
+}
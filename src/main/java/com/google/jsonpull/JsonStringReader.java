@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2008-2010 Metova, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jsonpull;
+
+import java.io.Reader;
+
+/**
+ * Reads the unescaped characters of a string value directly from the parser input.
+ * Only valid until the parser is advanced, any unread characters are skipped then.
+ */
+final class JsonStringReader extends Reader {
+
+    private final JsonBase parser;
+
+    public JsonStringReader(JsonBase parser) {
+
+        this.parser = parser;
+    }
+
+    public int read( char[] chars, int offset, int length ) {
+
+        if ( length == 0 ) {
+
+            return 0;
+        }
+
+        return parser.readStreamedString( chars, offset, length );
+    }
+
+    public void close() {
+
+        // unread characters are skipped by the parser
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2008-2010 Metova, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jsonpull;
+
+/**
+ * Receives the events of a JsonAsyncParser, in the same shape as a
+ * java.util.concurrent.Flow.Subscriber so that it can be adapted to one.
+ */
+public interface JsonSubscriber {
+
+    /**
+     * Called once, before any other method. No events are delivered until
+     * JsonSubscription.request() was called.
+     */
+    public void onSubscribe( JsonSubscription subscription );
+
+    /**
+     * @param event - the token type, such as JsonBase.START_OBJECT or JsonBase.STRING
+     * @param value - the value of KEY, STRING and VARIABLE tokens as returned by
+     *            Json.getUnknownValue(), null for other tokens
+     * @param level - the level after the token, as returned by JsonBase.getLevel()
+     */
+    public void onEvent( int event, String value, int level );
+
+    public void onError( Throwable throwable );
+
+    public void onComplete();
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright (c) 2008-2010 Metova, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jsonpull;
+
+/**
+ * Demand signalled by a JsonSubscriber to a JsonAsyncParser.
+ */
+public interface JsonSubscription {
+
+    /**
+     * Allows n more events to be delivered.
+     */
+    public void request( long n );
+
+    /**
+     * Stops the delivery of events, buffered input is discarded.
+     */
+    public void cancel();
+}
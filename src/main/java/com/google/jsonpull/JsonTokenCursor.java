@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2008-2010 Metova, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jsonpull;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Walks the tokens of a JsonTokenIndex with the same events as JsonBase.next(),
+ * reading values from the source document only when asked for.
+ */
+public final class JsonTokenCursor {
+
+    private final JsonTokenIndex index;
+    private final ByteBuffer source;
+    private int token = -1;
+
+    JsonTokenCursor(JsonTokenIndex index, ByteBuffer source) {
+
+        this.index = index;
+        this.source = source;
+    }
+
+    public boolean hasNext() {
+
+        return token + 1 < index.size();
+    }
+
+    /**
+     * Advances to the next token, and returns its type.
+     */
+    public int next() {
+
+        if ( !hasNext() ) {
+
+            throw new IllegalStateException( "Called next() after the end" );
+        }
+
+        return index.getType( ++token );
+    }
+
+    /**
+     * Moves past the children of the current START_OBJECT or START_ARRAY token,
+     * so that the next call to next() returns the matching end token.
+     */
+    public void skipChildren() {
+
+        int type = index.getType( token );
+
+        if ( type == JsonBase.START_OBJECT || type == JsonBase.START_ARRAY ) {
+
+            token = index.getEnd( token ) - 1;
+        }
+    }
+
+    /**
+     * Advances to the next token on the given level, skipping containers without visiting their tokens.
+     */
+    public void seekLevel( int level ) {
+
+        while (getLevel() > level) {
+
+            int type = next();
+
+            if ( ( type == JsonBase.START_OBJECT || type == JsonBase.START_ARRAY ) && getLevel() > level ) {
+
+                token = index.getEnd( token );
+            }
+        }
+    }
+
+    public int getLevel() {
+
+        return ( token == -1 ) ? 1 : index.getLevel( token );
+    }
+
+    /**
+     * @return the position of the current token in the index
+     */
+    public int getToken() {
+
+        return token;
+    }
+
+    /**
+     * Moves to a position in the index, as returned by getToken().
+     */
+    public void setToken( int token ) {
+
+        this.token = token;
+    }
+
+    /**
+     * @return the raw value of the current KEY, STRING or VARIABLE token, null otherwise
+     */
+    public String getString() {
+
+        int type = index.getType( token );
+
+        if ( type != JsonBase.KEY && type != JsonBase.STRING && type != JsonBase.VARIABLE ) {
+
+            return null;
+        }
+
+        return index.getString( source, token );
+    }
+
+    /**
+     * @return the unescaped value of the current STRING or KEY token
+     */
+    public String getStringValue() {
+
+        return JsonEscapes.unescape( getString() );
+    }
+}
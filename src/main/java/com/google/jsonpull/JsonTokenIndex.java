@@ -0,0 +1,348 @@
+/*
+ * Copyright (c) 2008-2010 Metova, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jsonpull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+/**
+ * The tokens of a UTF-8 document: their type, level, byte offset and length, and for
+ * START_OBJECT and START_ARRAY the position of the matching end token.
+ *
+ * An index can be written to a sidecar file and memory-mapped again by a later process,
+ * which then navigates the document with a JsonTokenCursor without tokenizing it.
+ * The sidecar records the size and CRC-32 of the source, open() ignores a stale one.
+ *
+ * Layout, big-endian: magic, version, source length, source crc, token count, then one column
+ * each of type and level (type in the low 7 bits, bit 7 set if the token is all ASCII,
+ * level above), offset, length and end position.
+ *
+ * An ASCII token is read as ISO-8859-1, which copies its bytes into a one byte per character
+ * String instead of decoding them as UTF-8.
+ */
+public final class JsonTokenIndex {
+
+    private static final int MAGIC = 0x4A534958;
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4;
+    private static final int COLUMNS = 4;
+    private static final int TYPE_MASK = 0x7F;
+    private static final int ASCII = 0x80;
+
+    private final ByteBuffer data;
+    private final int count;
+    private final long sourceLength;
+    private final long sourceCrc;
+
+    private JsonTokenIndex(ByteBuffer data) {
+
+        this.data = data;
+        sourceLength = data.getLong( 8 );
+        sourceCrc = data.getLong( 16 );
+        count = data.getInt( 24 );
+    }
+
+    /**
+     * Tokenizes a UTF-8 document.
+     * @param source - the document, from its position to its limit
+     */
+    public static JsonTokenIndex build( ByteBuffer source ) {
+
+        Utf8BufferReader reader = new Utf8BufferReader( source );
+        Json parser = new Json( reader );
+        StateStack containers = new StateStack();
+        int base = source.position();
+
+        int[] types = new int[64];
+        int[] offsets = new int[64];
+        int[] lengths = new int[64];
+        int[] ends = new int[64];
+        int count = 0;
+
+        do {
+
+            int type = parser.next();
+
+            if ( count == types.length ) {
+
+                types = grow( types );
+                offsets = grow( offsets );
+                lengths = grow( lengths );
+                ends = grow( ends );
+            }
+
+            int offset = reader.toByteOffset( parser.getTokenOffset() );
+            offsets[count] = offset - base;
+            types[count] = type | ( parser.getLevel() << 8 );
+
+            switch (type) {
+
+                case JsonBase.START_OBJECT:
+                case JsonBase.START_ARRAY: {
+
+                    containers.push( count );
+                    lengths[count] = 1;
+                    break;
+                }
+
+                case JsonBase.END_OBJECT:
+                case JsonBase.END_ARRAY: {
+
+                    ends[containers.pop()] = count;
+                    lengths[count] = 1;
+                    break;
+                }
+
+                default: {
+
+                    int length = reader.toByteOffset( parser.getTokenOffset() + parser.getTokenLength() ) - offset;
+                    lengths[count] = length;
+
+                    // more bytes than characters means a multi-byte sequence, no need to look
+                    if ( length == parser.getTokenLength() && isAscii( source, offset, length ) ) {
+
+                        types[count] |= ASCII;
+                    }
+                }
+            }
+
+            count++;
+        }
+        while (parser.getLevel() > 0);
+
+        ByteBuffer data = ByteBuffer.allocate( HEADER_SIZE + count * COLUMNS * 4 );
+        data.putInt( MAGIC ).putInt( VERSION ).putLong( source.remaining() ).putLong( crc( source ) ).putInt( count );
+        data.asIntBuffer().put( types, 0, count );
+        data.position( data.position() + count * 4 );
+        data.asIntBuffer().put( offsets, 0, count );
+        data.position( data.position() + count * 4 );
+        data.asIntBuffer().put( lengths, 0, count );
+        data.position( data.position() + count * 4 );
+        data.asIntBuffer().put( ends, 0, count );
+        data.clear();
+
+        return new JsonTokenIndex( data );
+    }
+
+    private static boolean isAscii( ByteBuffer source, int offset, int length ) {
+
+        for (int i = offset + length - 1; i >= offset; i--) {
+
+            if ( source.get( i ) < 0 ) {
+
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Tokenizes a UTF-8 file.
+     */
+    public static JsonTokenIndex build( File source ) throws IOException {
+
+        return build( map( source ) );
+    }
+
+    /**
+     * Maps a sidecar file written by write(), if it still matches the source.
+     * @return the index, or null if the sidecar is missing, unreadable or stale
+     */
+    public static JsonTokenIndex open( File source, File sidecar ) throws IOException {
+
+        if ( !sidecar.isFile() || sidecar.length() < HEADER_SIZE ) {
+
+            return null;
+        }
+
+        ByteBuffer data = map( sidecar );
+
+        if ( data.getInt( 0 ) != MAGIC || data.getInt( 4 ) != VERSION ) {
+
+            return null;
+        }
+
+        JsonTokenIndex index = new JsonTokenIndex( data );
+
+        if ( data.capacity() != HEADER_SIZE + (long) index.count * COLUMNS * 4 || !index.matches( map( source ) ) ) {
+
+            return null;
+        }
+
+        return index;
+    }
+
+    /**
+     * @return true if the index was built from a source with the same size and checksum
+     */
+    public boolean matches( ByteBuffer source ) {
+
+        return source.remaining() == sourceLength && crc( source ) == sourceCrc;
+    }
+
+    public void write( OutputStream out ) throws IOException {
+
+        ByteBuffer copy = data.duplicate();
+        copy.clear();
+        byte[] chunk = new byte[8192];
+
+        while (copy.hasRemaining()) {
+
+            int length = Math.min( chunk.length, copy.remaining() );
+            copy.get( chunk, 0, length );
+            out.write( chunk, 0, length );
+        }
+    }
+
+    public void write( File sidecar ) throws IOException {
+
+        FileOutputStream out = new FileOutputStream( sidecar );
+
+        try {
+
+            write( out );
+        }
+        finally {
+
+            out.close();
+        }
+    }
+
+    /**
+     * @return a cursor positioned before the first token
+     * @param source - the document the index was built from
+     */
+    public JsonTokenCursor cursor( ByteBuffer source ) {
+
+        return new JsonTokenCursor( this, source );
+    }
+
+    /**
+     * @return number of tokens in the document
+     */
+    public int size() {
+
+        return count;
+    }
+
+    /**
+     * @return the token type at a position, such as JsonBase.START_OBJECT
+     */
+    public int getType( int token ) {
+
+        return data.getInt( HEADER_SIZE + token * 4 ) & TYPE_MASK;
+    }
+
+    /**
+     * @return the level after the token at a position, as JsonBase.getLevel() returned it
+     */
+    public int getLevel( int token ) {
+
+        return data.getInt( HEADER_SIZE + token * 4 ) >>> 8;
+    }
+
+    /**
+     * @return true if the bytes of a KEY, STRING or VARIABLE token are all ASCII
+     */
+    boolean isAscii( int token ) {
+
+        return ( data.getInt( HEADER_SIZE + token * 4 ) & ASCII ) != 0;
+    }
+
+    /**
+     * @return the byte offset of a token in the source. For KEY and STRING tokens
+     *         this is the first byte after the opening quote.
+     */
+    public int getOffset( int token ) {
+
+        return data.getInt( HEADER_SIZE + ( count + token ) * 4 );
+    }
+
+    /**
+     * @return the length in bytes of a token in the source, excluding quotes
+     */
+    public int getLength( int token ) {
+
+        return data.getInt( HEADER_SIZE + ( 2 * count + token ) * 4 );
+    }
+
+    /**
+     * @return for START_OBJECT and START_ARRAY tokens the position of the matching end token, 0 otherwise
+     */
+    public int getEnd( int token ) {
+
+        return data.getInt( HEADER_SIZE + ( 3 * count + token ) * 4 );
+    }
+
+    /**
+     * Decodes the raw value of a KEY, STRING or VARIABLE token.
+     * @param source - the document the index was built from
+     */
+    public String getString( ByteBuffer source, int token ) {
+
+        int offset = source.position() + getOffset( token );
+        int length = getLength( token );
+        Charset charset = isAscii( token ) ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_8;
+
+        if ( source.hasArray() ) {
+
+            return new String( source.array(), source.arrayOffset() + offset, length, charset );
+        }
+
+        byte[] bytes = new byte[length];
+        ByteBuffer value = source.duplicate();
+        value.position( offset );
+        value.get( bytes, 0, length );
+        return new String( bytes, 0, length, charset );
+    }
+
+    private static long crc( ByteBuffer source ) {
+
+        CRC32 crc = new CRC32();
+        crc.update( source.duplicate() );
+        return crc.getValue();
+    }
+
+    private static ByteBuffer map( File file ) throws IOException {
+
+        RandomAccessFile in = new RandomAccessFile( file, "r" );
+
+        try {
+
+            return in.getChannel().map( FileChannel.MapMode.READ_ONLY, 0, in.length() );
+        }
+        finally {
+
+            in.close();
+        }
+    }
+
+    private static int[] grow( int[] values ) {
+
+        int[] newValues = new int[values.length << 1];
+        System.arraycopy( values, 0, newValues, 0, values.length );
+        return newValues;
+    }
+}
@@ -0,0 +1,303 @@
+/*
+ * Copyright (c) 2008-2010 Metova, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jsonpull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Reads and decodes its source on a separate thread, one block ahead of the parser.
+ *
+ * A producer thread fills two blocks in turn while the thread calling read() drains the
+ * other one, so I/O and decoding overlap with tokenizing, as in new Json( new PipelinedReader( in, "UTF-8" ) ).
+ * Each block is handed over by a volatile length, a waiting thread parks until the other one
+ * unparks it, no locks are taken. The source is closed by the producer when it is done.
+ *
+ * The producer stops by itself at the end of the source. A reader that is abandoned before
+ * that, such as after the last token of a document followed by more input, must be closed,
+ * or its producer stays parked and keeps the source open. Interrupting the thread waiting in
+ * read() throws an InterruptedIOException, interrupting the producer fails the reader.
+ *
+ * Only one thread may read from a PipelinedReader.
+ */
+public final class PipelinedReader extends Reader {
+
+    private static final int BLOCK_SIZE = 65536;
+
+    // block states other than a length
+    private static final int EMPTY = 0;
+    private static final int END = -1;
+    private static final int FAILED = -2;
+
+    private final Reader source;
+    private final char[][] blocks;
+    private volatile int state0 = EMPTY;
+    private volatile int state1 = EMPTY;
+
+    private final Thread producer;
+    private volatile Thread consumer;
+    private volatile boolean closed;
+    private volatile boolean stopped;
+    private volatile IOException failure;
+
+    // consumer position
+    private int block;
+    private int position;
+    private int limit;
+
+    public PipelinedReader(Reader source) {
+
+        this( source, BLOCK_SIZE );
+    }
+
+    public PipelinedReader(InputStream in, String encoding) throws UnsupportedEncodingException {
+
+        this( new InputStreamReader( in, encoding ), BLOCK_SIZE );
+    }
+
+    public PipelinedReader(Reader source, int blockSize) {
+
+        this.source = source;
+        blocks = new char[][] { new char[blockSize], new char[blockSize] };
+
+        producer = new Thread( "jsonpull-reader" ) {
+
+            public void run() {
+
+                produce();
+            }
+        };
+
+        producer.setDaemon( true );
+        producer.start();
+    }
+
+    public int read( char[] chars, int offset, int length ) throws IOException {
+
+        if ( closed ) {
+
+            throw new IOException( "Reader closed" );
+        }
+
+        if ( length == 0 ) {
+
+            return 0;
+        }
+
+        if ( position == limit ) {
+
+            if ( limit > 0 ) {
+
+                // hand the drained block back
+                setState( block, EMPTY );
+                LockSupport.unpark( producer );
+                block ^= 1;
+                position = 0;
+                limit = 0;
+            }
+
+            int state = await( block );
+
+            if ( state == END ) {
+
+                return -1;
+            }
+
+            if ( state == FAILED ) {
+
+                throw failure;
+            }
+
+            limit = state;
+        }
+
+        int count = Math.min( length, limit - position );
+        System.arraycopy( blocks[block], position, chars, offset, count );
+        position += count;
+        return count;
+    }
+
+    public boolean ready() {
+
+        return position < limit || getState( block ) != EMPTY;
+    }
+
+    /**
+     * Stops the producer, which closes the source once its current read returns.
+     */
+    public void close() {
+
+        closed = true;
+        LockSupport.unpark( producer );
+    }
+
+    private int await( int index ) throws IOException {
+
+        int state = getState( index );
+
+        if ( state == EMPTY ) {
+
+            consumer = Thread.currentThread();
+
+            while (( state = getState( index ) ) == EMPTY) {
+
+                if ( closed ) {
+
+                    throw new IOException( "Reader closed" );
+                }
+
+                if ( Thread.interrupted() ) {
+
+                    // keep the flag for the caller, the exception alone does not stop a loop around read()
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException( "Interrupted while waiting for input" );
+                }
+
+                // stopped without publishing, see produce()
+                if ( stopped && getState( index ) == EMPTY ) {
+
+                    throw ( failure != null ) ? failure : new IOException( "Reader stopped" );
+                }
+
+                LockSupport.park( this );
+            }
+        }
+
+        return state;
+    }
+
+    private void produce() {
+
+        int index = 0;
+
+        try {
+
+            while (!closed) {
+
+                while (getState( index ) != EMPTY) {
+
+                    if ( closed ) {
+
+                        return;
+                    }
+
+                    if ( Thread.interrupted() ) {
+
+                        // both blocks are taken, the consumer finds the failure once it drained them
+                        failure = new InterruptedIOException( "Reader interrupted" );
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+
+                    LockSupport.park( this );
+                }
+
+                int count = 0;
+                char[] chars = blocks[index];
+
+                // fill the block, so that the consumer switches blocks as seldom as possible
+                while (count < chars.length) {
+
+                    int read = source.read( chars, count, chars.length - count );
+
+                    if ( read == -1 ) {
+
+                        break;
+                    }
+
+                    count += read;
+
+                    if ( !source.ready() ) {
+
+                        break;
+                    }
+                }
+
+                if ( count == 0 ) {
+
+                    publish( index, END );
+                    return;
+                }
+
+                publish( index, count );
+                index ^= 1;
+            }
+        }
+        catch (IOException e) {
+
+            failure = e;
+            publish( index, FAILED );
+        }
+        catch (RuntimeException e) {
+
+            failure = new IOException( e.toString() );
+            publish( index, FAILED );
+        }
+        finally {
+
+            try {
+
+                source.close();
+            }
+            catch (IOException e) {
+
+                // ignore
+            }
+
+            // written before consumer is read, as await() writes consumer before reading stopped
+            stopped = true;
+            Thread waiting = consumer;
+
+            if ( waiting != null ) {
+
+                LockSupport.unpark( waiting );
+            }
+        }
+    }
+
+    private void publish( int index, int state ) {
+
+        setState( index, state );
+        Thread waiting = consumer;
+
+        if ( waiting != null ) {
+
+            LockSupport.unpark( waiting );
+        }
+    }
+
+    private int getState( int index ) {
+
+        return ( index == 0 ) ? state0 : state1;
+    }
+
+    private void setState( int index, int state ) {
+
+        if ( index == 0 ) {
+
+            state0 = state;
+        }
+        else {
+
+            state1 = state;
+        }
+    }
+}
@@ -25,6 +25,8 @@ final class StateStack {
     int[] values = null;
     int allocSize;
     int mSize;
+    int growths;
+    int highWater;
 
     public StateStack() {
 
@@ -47,9 +49,46 @@ final class StateStack {
             System.arraycopy( values, 0, newValues, 0, mSize );
             values = newValues;
             allocSize = newSize;
+            growths++;
         }
 
         values[mSize++] = value;
+
+        if ( mSize > highWater ) {
+
+            highWater = mSize;
+        }
+    }
+
+    /**
+     * Reallocates the stack with the given capacity, if it is far larger and
+     * the current contents fit.
+     */
+    public void shrink( int capacity ) {
+
+        if ( JsonBufferProfile.isOversized( allocSize, capacity ) && mSize <= capacity ) {
+
+            resize( capacity );
+        }
+    }
+
+    /**
+     * Reallocates the stack with the given capacity, if the current contents fit.
+     */
+    public void presize( int capacity ) {
+
+        if ( mSize <= capacity ) {
+
+            resize( capacity );
+        }
+    }
+
+    private void resize( int capacity ) {
+
+        int[] newValues = new int[capacity];
+        System.arraycopy( values, 0, newValues, 0, mSize );
+        values = newValues;
+        allocSize = capacity;
     }
 
     public int size() {
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2008-2010 Metova, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jsonpull;
+
+import java.io.Reader;
+import java.nio.ByteBuffer;
+
+/**
+ * Decodes UTF-8 bytes held in a buffer, and maps character positions back to byte positions.
+ * Invalid sequences decode as described by Utf8Decoder.
+ */
+final class Utf8BufferReader extends Reader {
+
+    private static final int BLOCK_SIZE = 8192;
+
+    private final ByteBuffer bytes;
+    private final int limit;
+
+    // the bytes from the buffer not decoded yet, the buffer position after them
+    private final byte[] block = new byte[BLOCK_SIZE];
+    private int blockPosition, blockLimit;
+    private int position;
+    private final Utf8Decoder decoder = new Utf8Decoder();
+
+    // forward-only cursor for toByteOffset()
+    private final byte[] sequence = new byte[4];
+    private int charCursor;
+    private int byteCursor;
+
+    public Utf8BufferReader(ByteBuffer bytes) {
+
+        this.bytes = bytes;
+        position = bytes.position();
+        limit = bytes.limit();
+        byteCursor = position;
+    }
+
+    public int read( char[] chars, int offset, int length ) {
+
+        int count = 0;
+
+        while (count < length) {
+
+            // a utf-8 sequence is at most 4 bytes, keep them together
+            if ( blockLimit - blockPosition < 4 && position < limit ) {
+
+                refill();
+            }
+
+            boolean end = position == limit;
+
+            if ( blockPosition == blockLimit && end && !decoder.hasPendingLowSurrogate() ) {
+
+                break;
+            }
+
+            count += decoder.decode( block, blockPosition, blockLimit, end, chars, offset + count, length - count );
+            blockPosition = decoder.getPosition();
+        }
+
+        return ( count == 0 && length > 0 ) ? -1 : count;
+    }
+
+    public void close() {
+
+        position = limit;
+        blockPosition = blockLimit;
+    }
+
+    /**
+     * Converts a character position to the position of its first byte.
+     * Positions must be asked for in increasing order.
+     */
+    public int toByteOffset( int charOffset ) {
+
+        while (charCursor < charOffset && byteCursor < limit) {
+
+            if ( bytes.get( byteCursor ) >= 0 ) {
+
+                byteCursor++;
+                charCursor++;
+                continue;
+            }
+
+            int available = Math.min( sequence.length, limit - byteCursor );
+
+            for (int i = 0; i < available; i++) {
+
+                sequence[i] = bytes.get( byteCursor + i );
+            }
+
+            int size = Utf8Decoder.sequenceLength( sequence, 0, available );
+            byteCursor += size;
+            charCursor += ( Utf8Decoder.codePoint( sequence, 0, size ) >= 0x10000 ) ? 2 : 1;
+        }
+
+        return byteCursor;
+    }
+
+    /**
+     * Moves the bytes not decoded yet to the front of the block and copies more after them.
+     */
+    private void refill() {
+
+        int remaining = blockLimit - blockPosition;
+        System.arraycopy( block, blockPosition, block, 0, remaining );
+        blockPosition = 0;
+        blockLimit = remaining;
+
+        int count = Math.min( block.length - blockLimit, limit - position );
+        ByteBuffer source = bytes.duplicate();
+        source.position( position );
+        source.get( block, blockLimit, count );
+        position += count;
+        blockLimit += count;
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2008-2010 Metova, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jsonpull;
+
+/**
+ * Decodes UTF-8 bytes into characters, for the readers that take bytes in blocks.
+ *
+ * An invalid sequence decodes to one U+FFFD for its longest valid prefix, or for a single byte
+ * that cannot start a sequence. Overlong forms and code points above U+10FFFF are invalid.
+ * A supplementary character that does not fit the array passed to decode() is split, and its
+ * second half is written first by the next call.
+ */
+final class Utf8Decoder {
+
+    private static final int[] MINIMUM = { 0, 0, 0x80, 0x800, 0x10000 };
+
+    private char pendingLowSurrogate;
+    private int position;
+
+    /**
+     * Decodes the bytes from position up to limit, as far as length characters allow.
+     * A sequence cut off by the limit is left for the next call, unless end is set.
+     * @return the number of characters written, getPosition() is the first byte not decoded
+     */
+    int decode( byte[] bytes, int position, int limit, boolean end, char[] chars, int offset, int length ) {
+
+        int count = 0;
+
+        if ( pendingLowSurrogate != 0 && length > 0 ) {
+
+            chars[offset + count++] = pendingLowSurrogate;
+            pendingLowSurrogate = 0;
+        }
+
+        while (position < limit && count < length) {
+
+            int b = bytes[position];
+
+            if ( b >= 0 ) {
+
+                chars[offset + count++] = (char) b;
+                position++;
+                continue;
+            }
+
+            if ( position + expectedLength( b ) > limit && !end ) {
+
+                break;
+            }
+
+            int size = sequenceLength( bytes, position, limit );
+            int codePoint = codePoint( bytes, position, size );
+            position += size;
+
+            if ( codePoint >= 0x10000 ) {
+
+                codePoint -= 0x10000;
+                chars[offset + count++] = (char) ( 0xD800 + ( codePoint >> 10 ) );
+
+                if ( count < length ) {
+
+                    chars[offset + count++] = (char) ( 0xDC00 + ( codePoint & 0x3FF ) );
+                }
+                else {
+
+                    pendingLowSurrogate = (char) ( 0xDC00 + ( codePoint & 0x3FF ) );
+                }
+            }
+            else {
+
+                chars[offset + count++] = (char) codePoint;
+            }
+        }
+
+        this.position = position;
+        return count;
+    }
+
+    /**
+     * @return the first byte not decoded by the last call to decode()
+     */
+    int getPosition() {
+
+        return position;
+    }
+
+    /**
+     * @return true if the second half of a surrogate pair is waiting for the next call to decode()
+     */
+    boolean hasPendingLowSurrogate() {
+
+        return pendingLowSurrogate != 0;
+    }
+
+    /**
+     * @return the number of bytes a sequence starting with the byte should have
+     */
+    static int expectedLength( int b ) {
+
+        return ( b >= 0 ) ? 1 : ( ( b & 0xE0 ) == 0xC0 ) ? 2 : ( ( b & 0xF0 ) == 0xE0 ) ? 3 : ( ( b & 0xF8 ) == 0xF0 ) ? 4 : 1;
+    }
+
+    /**
+     * @return the number of bytes at the index that decode to one character or one U+FFFD
+     */
+    static int sequenceLength( byte[] bytes, int index, int limit ) {
+
+        int size = expectedLength( bytes[index] );
+
+        for (int i = 1; i < size; i++) {
+
+            if ( index + i == limit || ( bytes[index + i] & 0xC0 ) != 0x80 ) {
+
+                return i;
+            }
+        }
+
+        return size;
+    }
+
+    /**
+     * @param size - as returned by sequenceLength()
+     * @return the code point of the sequence, or U+FFFD if it is invalid
+     */
+    static int codePoint( byte[] bytes, int index, int size ) {
+
+        int b = bytes[index];
+
+        if ( b >= 0 ) {
+
+            return b;
+        }
+
+        if ( size == 1 || size != expectedLength( b ) ) {
+
+            return 0xFFFD;
+        }
+
+        int codePoint = b & ( 0x7F >> size );
+
+        for (int i = 1; i < size; i++) {
+
+            codePoint = ( codePoint << 6 ) | ( bytes[index + i] & 0x3F );
+        }
+
+        return ( codePoint < MINIMUM[size] || codePoint > 0x10FFFF ) ? 0xFFFD : codePoint;
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2008-2010 Metova, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jsonpull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+
+/**
+ * Decodes a UTF-8 stream, counting the bytes behind the characters returned so far.
+ * Invalid sequences decode as described by Utf8Decoder.
+ */
+final class Utf8InputReader extends Reader {
+
+    private static final int BLOCK_SIZE = 8192;
+
+    private final InputStream in;
+    private final byte[] bytes = new byte[BLOCK_SIZE];
+    private int position;
+    private int limit;
+    private boolean finished;
+    private final Utf8Decoder decoder = new Utf8Decoder();
+
+    // bytes consumed before the current block
+    private long blockStart;
+
+    public Utf8InputReader(InputStream in, long bytePosition) {
+
+        this.in = in;
+        blockStart = bytePosition;
+    }
+
+    public int read( char[] chars, int offset, int length ) throws IOException {
+
+        int count = 0;
+
+        while (count < length) {
+
+            // a utf-8 sequence is at most 4 bytes, keep them together
+            if ( limit - position < 4 && !finished ) {
+
+                refill();
+            }
+
+            if ( position == limit && finished && !decoder.hasPendingLowSurrogate() ) {
+
+                break;
+            }
+
+            count += decoder.decode( bytes, position, limit, finished, chars, offset + count, length - count );
+            position = decoder.getPosition();
+        }
+
+        return ( count == 0 && length > 0 ) ? -1 : count;
+    }
+
+    /**
+     * @return the number of bytes of the stream behind the characters returned, counting
+     *         a surrogate pair as two halves of two bytes each
+     */
+    public long getBytePosition() {
+
+        return blockStart + position - ( decoder.hasPendingLowSurrogate() ? 2 : 0 );
+    }
+
+    /**
+     * @return the number of bytes that encode the character in UTF-8
+     */
+    static int utf8Length( char c ) {
+
+        return ( c < 0x80 ) ? 1 : ( c < 0x800 || ( c >= 0xD800 && c < 0xE000 ) ) ? 2 : 3;
+    }
+
+    public void close() throws IOException {
+
+        in.close();
+    }
+
+    /**
+     * Moves the unread bytes to the front of the block and reads more after them.
+     */
+    private void refill() throws IOException {
+
+        int remaining = limit - position;
+        System.arraycopy( bytes, position, bytes, 0, remaining );
+        blockStart += position;
+        position = 0;
+        limit = remaining;
+
+        while (limit < bytes.length) {
+
+            int count = in.read( bytes, limit, bytes.length - limit );
+
+            if ( count == -1 ) {
+
+                finished = true;
+                break;
+            }
+
+            limit += count;
+
+            if ( limit - position >= 4 ) {
+
+                break;
+            }
+        }
+    }
+}
@@ -22,6 +22,8 @@ import java.io.StringWriter;
 
 /**
  * StringReader is used as a character input stream on a String.
+ * Unlike java.io.StringReader it does not synchronize on a lock, an instance
+ * must not be shared between threads.
  * 
  * @see StringWriter
  */
@@ -38,7 +40,7 @@ public class StringReader extends Reader {
     /**
      * Construct a StringReader on the String <code>str</code>. The size of
      * the reader is set to the <code>length()</code> of the String and the
-     * Object to synchronize access through is set to <code>str</code>.
+     * reader is positioned at the start of the String.
      * 
      * @param str
      *            the String to filter reads on.
@@ -91,12 +93,10 @@ public class StringReader extends Reader {
             throw new IllegalArgumentException();
         }
 
-        synchronized (lock) {
-            if ( isClosed() ) {
-                throw new IOException( K0083 ); //$NON-NLS-1$
-            }
-            markpos = pos;
+        if ( isClosed() ) {
+            throw new IOException( K0083 ); //$NON-NLS-1$
         }
+        markpos = pos;
     }
 
     /**
@@ -126,15 +126,13 @@ public class StringReader extends Reader {
     //@ Override
     public int read() throws IOException {
 
-        synchronized (lock) {
-            if ( isClosed() ) {
-                throw new IOException( K0083 ); //$NON-NLS-1$
-            }
-            if ( pos != count ) {
-                return str.charAt( pos++ );
-            }
-            return -1;
+        if ( isClosed() ) {
+            throw new IOException( K0083 ); //$NON-NLS-1$
+        }
+        if ( pos != count ) {
+            return str.charAt( pos++ );
         }
+        return -1;
     }
 
     /*
@@ -145,26 +143,24 @@ public class StringReader extends Reader {
     //@ Override
     public int read( char buf[], int offset, int len ) throws IOException {
 
-        synchronized (lock) {
-            if ( isClosed() ) {
-                throw new IOException( K0083 ); //$NON-NLS-1$
-            }
-            // avoid int overflow
-            if ( offset < 0 || offset > buf.length || len < 0 || len > buf.length - offset ) {
-                throw new ArrayIndexOutOfBoundsException();
-            }
-            if ( len == 0 ) {
-                return 0;
-            }
-            if ( pos == this.count ) {
-                return -1;
-            }
-            int end = pos + len > this.count ? this.count : pos + len;
-            str.getChars( pos, end, buf, offset );
-            int read = end - pos;
-            pos = end;
-            return read;
+        if ( isClosed() ) {
+            throw new IOException( K0083 ); //$NON-NLS-1$
+        }
+        // avoid int overflow
+        if ( offset < 0 || offset > buf.length || len < 0 || len > buf.length - offset ) {
+            throw new ArrayIndexOutOfBoundsException();
+        }
+        if ( len == 0 ) {
+            return 0;
+        }
+        if ( pos == this.count ) {
+            return -1;
         }
+        int end = pos + len > this.count ? this.count : pos + len;
+        str.getChars( pos, end, buf, offset );
+        int read = end - pos;
+        pos = end;
+        return read;
     }
 
     /**
@@ -185,12 +181,10 @@ public class StringReader extends Reader {
     //@ Override
     public boolean ready() throws IOException {
 
-        synchronized (lock) {
-            if ( isClosed() ) {
-                throw new IOException( K0083 ); //$NON-NLS-1$
-            }
-            return true;
+        if ( isClosed() ) {
+            throw new IOException( K0083 ); //$NON-NLS-1$
         }
+        return true;
     }
 
     /**
@@ -205,12 +199,10 @@ public class StringReader extends Reader {
     //@ Override
     public void reset() throws IOException {
 
-        synchronized (lock) {
-            if ( isClosed() ) {
-                throw new IOException( K0083 ); //$NON-NLS-1$
-            }
-            pos = markpos != -1 ? markpos : 0;
+        if ( isClosed() ) {
+            throw new IOException( K0083 ); //$NON-NLS-1$
         }
+        pos = markpos != -1 ? markpos : 0;
     }
 
     /*
@@ -221,23 +213,21 @@ public class StringReader extends Reader {
     //@ Override
     public long skip( long ns ) throws IOException {
 
-        synchronized (lock) {
-            if ( isClosed() ) {
-                throw new IOException( K0083 ); //$NON-NLS-1$
-            }
-            if ( ns <= 0 ) {
-                return 0;
-            }
-            long skipped = 0;
-            if ( ns < this.count - pos ) {
-                pos = pos + (int) ns;
-                skipped = ns;
-            }
-            else {
-                skipped = this.count - pos;
-                pos = this.count;
-            }
-            return skipped;
+        if ( isClosed() ) {
+            throw new IOException( K0083 ); //$NON-NLS-1$
+        }
+        if ( ns <= 0 ) {
+            return 0;
+        }
+        long skipped = 0;
+        if ( ns < this.count - pos ) {
+            pos = pos + (int) ns;
+            skipped = ns;
+        }
+        else {
+            skipped = this.count - pos;
+            pos = this.count;
         }
+        return skipped;
     }
 }
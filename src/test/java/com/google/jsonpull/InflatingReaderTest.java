@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2008-2010 Metova, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jsonpull;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Test;
+
+public class InflatingReaderTest {
+
+    private static final String DOCUMENT = "{\"name\": \"caf\u00e9 \ud834\udd1e\", \"values\": [1, 2, 3]}";
+
+    private static byte[] gzip( String text ) throws IOException {
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        OutputStream out = new GZIPOutputStream( bytes );
+        out.write( text.getBytes( "UTF-8" ) );
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static byte[] deflate( String text, boolean nowrap ) throws IOException {
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        OutputStream out = new DeflaterOutputStream( bytes, new Deflater( Deflater.DEFAULT_COMPRESSION, nowrap ) );
+        out.write( text.getBytes( "UTF-8" ) );
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static String inflate( byte[] bytes ) throws IOException {
+
+        Reader reader = new InflatingReader( new ByteArrayInputStream( bytes ) );
+        StringBuffer result = new StringBuffer();
+        char[] chars = new char[5];
+
+        for (int read = reader.read( chars, 0, chars.length ); read != -1; read = reader.read( chars, 0, chars.length )) {
+
+            result.append( chars, 0, read );
+        }
+
+        reader.close();
+        return result.toString();
+    }
+
+    @Test
+    public void detectsTheFormat() throws IOException {
+
+        assertEquals( DOCUMENT, inflate( gzip( DOCUMENT ) ) );
+        assertEquals( DOCUMENT, inflate( deflate( DOCUMENT, false ) ) );
+        assertEquals( DOCUMENT, inflate( deflate( DOCUMENT, true ) ) );
+    }
+
+    @Test
+    public void readsConcatenatedGzipMembers() throws IOException {
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bytes.write( gzip( "[1, " ) );
+        bytes.write( gzip( "2]" ) );
+
+        assertEquals( "[1, 2]", inflate( bytes.toByteArray() ) );
+    }
+
+    @Test
+    public void decodesAcrossBlocks() throws IOException {
+
+        StringBuffer text = new StringBuffer();
+
+        for (int i = 0; i < 20000; i++) {
+
+            text.append( ( i % 3 == 0 ) ? "\u20ac" : ( i % 3 == 1 ) ? "\ud834\udd1e" : "a" );
+        }
+
+        assertEquals( text.toString(), inflate( gzip( text.toString() ) ) );
+    }
+
+    @Test
+    public void feedsTheParser() throws IOException {
+
+        Json json = new Json( new InflatingReader( new ByteArrayInputStream( gzip( DOCUMENT ) ) ) );
+        json.next();
+
+        assertEquals( "name", json.getKey() );
+        assertEquals( "caf\u00e9 \ud834\udd1e", json.getStringValue() );
+    }
+
+    @Test
+    public void rejectsACorruptTrailer() throws IOException {
+
+        byte[] bytes = gzip( DOCUMENT );
+        bytes[bytes.length - 5] ^= 1;
+
+        try {
+
+            inflate( bytes );
+            fail();
+        }
+        catch (IOException e) {
+
+            assertEquals( "Corrupt gzip trailer", e.getMessage() );
+        }
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2008-2010 Metova, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jsonpull;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class JsonAsyncParserTest {
+
+    private static class Recorder implements JsonSubscriber {
+
+        final StringBuffer events = new StringBuffer();
+        JsonSubscription subscription;
+        Throwable error;
+        boolean complete;
+
+        public void onSubscribe( JsonSubscription subscription ) {
+
+            this.subscription = subscription;
+            subscription.request( Long.MAX_VALUE );
+        }
+
+        public void onEvent( int event, String value, int level ) {
+
+            events.append( (char) event );
+
+            if ( value != null ) {
+
+                events.append( '(' ).append( value ).append( ')' );
+            }
+        }
+
+        public void onError( Throwable throwable ) {
+
+            error = throwable;
+        }
+
+        public void onComplete() {
+
+            complete = true;
+        }
+    }
+
+    private static byte[] utf8( String text ) throws UnsupportedEncodingException {
+
+        return text.getBytes( "UTF-8" );
+    }
+
+    private static Recorder feed( String text ) throws UnsupportedEncodingException {
+
+        Recorder recorder = new Recorder();
+        JsonAsyncParser parser = new JsonAsyncParser();
+        parser.subscribe( recorder );
+        byte[] bytes = utf8( text );
+        parser.feed( bytes, 0, bytes.length );
+        return recorder;
+    }
+
+    @Test
+    public void deliversCompleteTokensWithoutEndOfInput() throws UnsupportedEncodingException {
+
+        Recorder recorder = feed( "{\"a\":1}" );
+
+        assertEquals( "{k(a)v(1)}", recorder.events.toString() );
+        assertTrue( recorder.complete );
+        assertNull( recorder.error );
+    }
+
+    @Test
+    public void deliversAnEmptyArray() throws UnsupportedEncodingException {
+
+        Recorder recorder = feed( "[ ]" );
+
+        assertEquals( "[]", recorder.events.toString() );
+        assertTrue( recorder.complete );
+    }
+
+    @Test
+    public void holdsBackOnlyUnfinishedTokens() throws UnsupportedEncodingException {
+
+        assertEquals( "[a(x)", feed( "[\"x\"" ).events.toString() );
+        assertEquals( "[", feed( "[12" ).events.toString() );
+        assertEquals( "[", feed( "[12 " ).events.toString() );
+        assertEquals( "{", feed( "{\"key\"" ).events.toString() );
+        assertEquals( "{k(key)", feed( "{\"key\" :" ).events.toString() );
+        assertEquals( "[v(1)[", feed( "[1,[" ).events.toString() );
+    }
+
+    @Test
+    public void resumesWhenTheNextChunkArrives() throws UnsupportedEncodingException {
+
+        Recorder recorder = new Recorder();
+        JsonAsyncParser parser = new JsonAsyncParser();
+        parser.subscribe( recorder );
+        byte[] bytes = utf8( "{\"list\": [true, null, -1.5e3], \"s\": \"\\\"q\\\"\"}" );
+
+        for (int i = 0; i < bytes.length; i++) {
+
+            parser.feed( bytes, i, 1 );
+        }
+
+        assertEquals( "{k(list)[v(true)nv(-1.5e3)]k(s)a(\\\"q\\\")}", recorder.events.toString() );
+        assertTrue( recorder.complete );
+    }
+
+    @Test
+    public void reportsATruncatedDocumentAtTheEndOfInput() throws UnsupportedEncodingException {
+
+        Recorder recorder = new Recorder();
+        JsonAsyncParser parser = new JsonAsyncParser();
+        parser.subscribe( recorder );
+        parser.feed( ByteBuffer.wrap( utf8( "[1" ) ) );
+
+        assertEquals( "[", recorder.events.toString() );
+        assertTrue( parser.needsInput() );
+
+        parser.endOfInput();
+        assertTrue( recorder.error instanceof IllegalStateException );
+        assertFalse( recorder.complete );
+    }
+
+    @Test
+    public void decodesSequencesSplitAcrossChunks() throws UnsupportedEncodingException {
+
+        Recorder recorder = new Recorder();
+        JsonAsyncParser parser = new JsonAsyncParser();
+        parser.subscribe( recorder );
+        byte[] bytes = utf8( "[\"\u00e9\u20ac\ud834\udd1e\"]" );
+
+        for (int i = 0; i < bytes.length; i++) {
+
+            parser.feed( bytes, i, 1 );
+        }
+
+        assertEquals( "[a(\u00e9\u20ac\ud834\udd1e)]", recorder.events.toString() );
+    }
+
+    @Test
+    public void replacesTruncatedSequences() {
+
+        Recorder recorder = new Recorder();
+        JsonAsyncParser parser = new JsonAsyncParser();
+        parser.subscribe( recorder );
+        parser.feed( new byte[] { '[', '"', 'a', (byte) 0xE2, (byte) 0x82 }, 0, 5 );
+        parser.feed( new byte[] { '"', ']' }, 0, 2 );
+
+        assertEquals( "[a(a\ufffd)]", recorder.events.toString() );
+        assertTrue( recorder.complete );
+    }
+
+    @Test
+    public void honoursDemand() throws UnsupportedEncodingException {
+
+        Recorder recorder = new Recorder() {
+
+            public void onSubscribe( JsonSubscription subscription ) {
+
+                this.subscription = subscription;
+            }
+        };
+
+        JsonAsyncParser parser = new JsonAsyncParser();
+        parser.subscribe( recorder );
+        byte[] bytes = utf8( "[1,2]" );
+        parser.feed( bytes, 0, bytes.length );
+
+        assertEquals( "", recorder.events.toString() );
+        assertFalse( parser.needsInput() );
+
+        recorder.subscription.request( 2 );
+        assertEquals( "[v(1)", recorder.events.toString() );
+
+        recorder.subscription.request( 5 );
+        assertEquals( "[v(1)v(2)]", recorder.events.toString() );
+        assertTrue( recorder.complete );
+    }
+}
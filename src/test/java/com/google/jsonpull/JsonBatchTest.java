@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2008-2010 Metova, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jsonpull;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class JsonBatchTest {
+
+    private static String text( Json json, int[] starts, int[] lengths, int i ) {
+
+        return new String( json.getBatchChars(), starts[i], lengths[i] );
+    }
+
+    @Test
+    public void fillsTheArraysWithTokens() {
+
+        Json json = new Json( "{\"a\": [1, \"x\\ny\", null], \"b\": true}" );
+        int[] types = new int[16];
+        int[] starts = new int[16];
+        int[] lengths = new int[16];
+
+        assertEquals( 10, json.nextBatch( types, starts, lengths, 16 ) );
+
+        assertEquals( JsonBase.START_OBJECT, types[0] );
+        assertEquals( 0, lengths[0] );
+        assertEquals( JsonBase.KEY, types[1] );
+        assertEquals( "a", text( json, starts, lengths, 1 ) );
+        assertEquals( JsonBase.VARIABLE, types[3] );
+        assertEquals( "1", text( json, starts, lengths, 3 ) );
+        assertEquals( JsonBase.STRING, types[4] );
+        assertEquals( "x\\ny", text( json, starts, lengths, 4 ) );
+        assertEquals( JsonBase.NULL, types[5] );
+        assertEquals( "true", text( json, starts, lengths, 8 ) );
+        assertEquals( JsonBase.END_OBJECT, types[9] );
+
+        assertEquals( 0, json.nextBatch( types, starts, lengths, 16 ) );
+    }
+
+    @Test
+    public void continuesWhereTheLastBatchStopped() {
+
+        Json json = new Json( "[10, 20, 30, 40, 50]" );
+        int[] types = new int[2];
+        int[] starts = new int[2];
+        int[] lengths = new int[2];
+        StringBuffer values = new StringBuffer();
+
+        for (int count = json.nextBatch( types, starts, lengths, 2 ); count > 0; count = json.nextBatch( types, starts, lengths, 2 )) {
+
+            for (int i = 0; i < count; i++) {
+
+                if ( types[i] == JsonBase.VARIABLE ) {
+
+                    values.append( text( json, starts, lengths, i ) ).append( ' ' );
+                }
+            }
+        }
+
+        assertEquals( "10 20 30 40 50 ", values.toString() );
+    }
+
+    @Test
+    public void growsForLongTokens() {
+
+        StringBuffer value = new StringBuffer();
+
+        for (int i = 0; i < 9000; i++) {
+
+            value.append( (char) ( 'a' + i % 26 ) );
+        }
+
+        Json json = new Json( "[\"" + value + "\", \"" + value + "\"]" );
+        int[] types = new int[4];
+        int[] starts = new int[4];
+        int[] lengths = new int[4];
+
+        assertEquals( 4, json.nextBatch( types, starts, lengths, 4 ) );
+        assertEquals( value.toString(), text( json, starts, lengths, 1 ) );
+        assertEquals( value.toString(), text( json, starts, lengths, 2 ) );
+    }
+
+    @Test
+    public void stopsAtEachDocument() {
+
+        Json json = new Json( "[1] {\"a\": 2}" );
+        json.setMultiDocument( true );
+        int[] types = new int[16];
+        int[] starts = new int[16];
+        int[] lengths = new int[16];
+
+        assertEquals( 3, json.nextBatch( types, starts, lengths, 16 ) );
+        assertEquals( JsonBase.END_ARRAY, types[2] );
+
+        assertEquals( 4, json.nextBatch( types, starts, lengths, 16 ) );
+        assertEquals( JsonBase.START_OBJECT, types[0] );
+        assertEquals( "a", text( json, starts, lengths, 1 ) );
+        assertEquals( JsonBase.END_OBJECT, types[3] );
+
+        assertEquals( 0, json.nextBatch( types, starts, lengths, 16 ) );
+        assertEquals( 0, json.nextBatch( types, starts, lengths, 16 ) );
+    }
+
+    @Test
+    public void readsNothingFromEmptyInput() {
+
+        Json json = new Json( " " );
+        json.setMultiDocument( true );
+        int[] types = new int[4];
+
+        assertEquals( 0, json.nextBatch( types, new int[4], new int[4], 4 ) );
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2008-2010 Metova, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jsonpull;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class JsonBufferProfileTest {
+
+    @Test
+    public void startsAtTheDefaultSizes() {
+
+        JsonBufferProfile profile = new JsonBufferProfile();
+        assertEquals( 64, profile.getTokenCapacity() );
+        assertEquals( 8, profile.getDepthCapacity() );
+
+        // a first document with tiny tokens does not collapse the sizes
+        profile.documentParsed( 1, 1 );
+        assertEquals( 64, profile.getTokenCapacity() );
+        assertEquals( 8, profile.getDepthCapacity() );
+        assertEquals( 1, profile.getDocuments() );
+    }
+
+    @Test
+    public void movesAtLeastOneTowardsLargerValues() {
+
+        assertEquals( 8, JsonBufferProfile.adjust( 7, 8 ) );
+        assertEquals( 1, JsonBufferProfile.adjust( 0, 3 ) );
+        assertEquals( 10, JsonBufferProfile.adjust( 10, 10 ) );
+        assertEquals( 9, JsonBufferProfile.adjust( 10, 9 ) );
+    }
+
+    @Test
+    public void reachesTheTypicalValueOfRepeatedDocuments() {
+
+        JsonBufferProfile profile = new JsonBufferProfile();
+
+        for (int i = 0; i < 200; i++) {
+
+            profile.documentParsed( 1000, 20 );
+        }
+
+        assertEquals( 1024, profile.getTokenCapacity() );
+        assertEquals( 32, profile.getDepthCapacity() );
+    }
+
+    @Test
+    public void limitsTheWeightOfAnOutlier() {
+
+        JsonBufferProfile profile = new JsonBufferProfile();
+        profile.documentParsed( 1000000, 1000 );
+
+        assertEquals( 128, profile.getTokenCapacity() );
+        assertEquals( 16, profile.getDepthCapacity() );
+
+        profile.reset();
+        assertEquals( 64, profile.getTokenCapacity() );
+        assertEquals( 0, profile.getDocuments() );
+    }
+
+    @Test
+    public void flagsOversizedBuffers() {
+
+        assertTrue( JsonBufferProfile.isOversized( 1024, 64 ) );
+        assertFalse( JsonBufferProfile.isOversized( 256, 64 ) );
+    }
+
+    @Test
+    public void releasesBuffersGrownByAnOutlier() {
+
+        JsonBufferProfile profile = new JsonBufferProfile();
+        StringBuffer big = new StringBuffer( "[\"" );
+
+        for (int i = 0; i < 10000; i++) {
+
+            big.append( 'x' );
+        }
+
+        big.append( "\"] [1]" );
+
+        Json json = new Json( big.toString() );
+        json.setMultiDocument( true );
+        json.setBufferProfile( profile );
+
+        while (json.hasNextDocument()) {
+
+            while (json.next() != JsonBase.END_ARRAY) {
+
+                // drain
+            }
+        }
+
+        assertEquals( 2, profile.getDocuments() );
+        assertTrue( profile.getTokenCapacity() < 1024 );
+    }
+}
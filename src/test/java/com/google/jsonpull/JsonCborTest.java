@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) 2008-2010 Metova, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jsonpull;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+import org.junit.Test;
+
+public class JsonCborTest {
+
+    private static byte[] encode( String json ) throws IOException {
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JsonCborWriter writer = new JsonCborWriter( out );
+        writer.write( new Json( json ) );
+        writer.flush();
+        return out.toByteArray();
+    }
+
+    private static JsonCborReader reader( byte[] bytes ) {
+
+        return new JsonCborReader( new ByteArrayInputStream( bytes ) );
+    }
+
+    private static byte[] bytes( int[] values ) {
+
+        byte[] bytes = new byte[values.length];
+
+        for (int i = 0; i < values.length; i++) {
+
+            bytes[i] = (byte) values[i];
+        }
+
+        return bytes;
+    }
+
+    @Test
+    public void writesCompactCbor() throws IOException {
+
+        // stringref namespace, indefinite array, 1, -1, "a", true, null, 1.5 as a float
+        assertArrayEquals( bytes( new int[] { 0xD9, 0x01, 0x00, 0x9F, 0x01, 0x20, 0x61, 0x61, 0xF5, 0xF6, 0xFA, 0x3F, 0xC0, 0x00, 0x00,
+                0xFF } ), encode( "[1, -1, \"a\", true, null, 1.5]" ) );
+    }
+
+    @Test
+    public void refersToRepeatedKeys() throws IOException {
+
+        // the second "name" is stringref 0
+        assertArrayEquals( bytes( new int[] { 0xD9, 0x01, 0x00, 0x9F, 0xBF, 0x64, 'n', 'a', 'm', 'e', 0x01, 0xFF, 0xBF, 0xD8, 0x19, 0x00, 0x02,
+                0xFF, 0xFF } ), encode( "[{\"name\": 1}, {\"name\": 2}]" ) );
+
+        JsonCborReader reader = reader( encode( "[{\"name\": 1}, {\"name\": 2}]" ) );
+        assertEquals( JsonBase.START_ARRAY, reader.next() );
+        assertEquals( JsonBase.START_OBJECT, reader.next() );
+        assertEquals( JsonBase.KEY, reader.next() );
+        assertEquals( "name", reader.getString() );
+        reader.next();
+        reader.next();
+        assertEquals( JsonBase.START_OBJECT, reader.next() );
+        assertEquals( JsonBase.KEY, reader.next() );
+        assertEquals( "name", reader.getString() );
+        assertEquals( JsonBase.VARIABLE, reader.next() );
+        assertEquals( 2, reader.getLongValue() );
+    }
+
+    @Test
+    public void readsBackTheEventsOfTheParser() throws IOException {
+
+        String json = "{\"s\": \"caf\u00e9 \ud834\udd1e\\n\", \"n\": [0, -7, 4294967296, 2.5, 0.1, true, false, null], \"o\": {}}";
+        JsonCborReader reader = reader( encode( json ) );
+        Json parser = new Json( json );
+
+        for (int event = parser.next(); parser.getLevel() > 0 || event != JsonBase.END_OBJECT; event = parser.next()) {
+
+            assertEquals( event, reader.next() );
+        }
+
+        assertEquals( JsonBase.END_OBJECT, reader.next() );
+        assertEquals( -1, reader.next() );
+    }
+
+    @Test
+    public void keepsNumbersExact() throws IOException {
+
+        JsonCborReader reader = reader( encode( "[123456789012345678901234567890, -0.1000000000000000000001, 0.1, 9007199254740993]" ) );
+        reader.next();
+
+        assertEquals( JsonBase.VARIABLE, reader.next() );
+        assertEquals( JsonBase.NUMBER_BIG_INTEGER, reader.getNumberType() );
+        assertEquals( new BigInteger( "123456789012345678901234567890" ).toString(), reader.getString() );
+
+        reader.next();
+        assertEquals( JsonBase.NUMBER_BIG_DECIMAL, reader.getNumberType() );
+        assertEquals( 0, new BigDecimal( "-0.1000000000000000000001" ).compareTo( new BigDecimal( reader.getString() ) ) );
+
+        reader.next();
+        assertEquals( 0.1, reader.getDoubleValue(), 0 );
+
+        reader.next();
+        assertEquals( 9007199254740993L, reader.getLongValue() );
+    }
+
+    @Test
+    public void passesTokensToAHandler() throws IOException {
+
+        String json = "{\"a\\tb\": [1, 2.5, 12345678901234567890, true, false, null, \"x\"], \"c\": {}}";
+        JsonHandlerTest.Recorder fromJson = new JsonHandlerTest.Recorder();
+        new Json( json ).parse( fromJson );
+        JsonHandlerTest.Recorder fromCbor = new JsonHandlerTest.Recorder();
+        reader( encode( json ) ).parse( fromCbor );
+
+        assertEquals( fromJson.events.toString(), fromCbor.events.toString() );
+    }
+
+    @Test
+    public void readsDefiniteLengthsAndSkipsChildren() {
+
+        // {"a": [1, 2], "b": 3} with definite lengths, as other encoders write it
+        JsonCborReader reader = reader( bytes( new int[] { 0xA2, 0x61, 'a', 0x82, 0x01, 0x02, 0x61, 'b', 0x03 } ) );
+
+        assertEquals( JsonBase.START_OBJECT, reader.next() );
+        assertEquals( JsonBase.KEY, reader.next() );
+        assertEquals( JsonBase.START_ARRAY, reader.next() );
+        assertEquals( 2, reader.getDepth() );
+        reader.skipChildren();
+        assertEquals( 1, reader.getDepth() );
+        assertEquals( JsonBase.KEY, reader.next() );
+        assertEquals( "b", reader.getString() );
+        assertEquals( JsonBase.VARIABLE, reader.next() );
+        assertEquals( 3, reader.getLongValue() );
+        assertEquals( JsonBase.END_OBJECT, reader.next() );
+        assertEquals( -1, reader.next() );
+    }
+
+    @Test
+    public void reportsTheSameLevelsAsTheParser() throws IOException {
+
+        String json = "{\"a\": {\"b\": 1}, \"c\": [1, [2]], \"d\": \"x\"}";
+        Json parser = new Json( json );
+        JsonCborReader reader = reader( encode( json ) );
+
+        for (int token = parser.next(); parser.getLevel() > 0; token = parser.next()) {
+
+            assertEquals( token, reader.next() );
+            assertEquals( parser.getLevel(), reader.getLevel() );
+        }
+
+        assertEquals( JsonBase.END_OBJECT, reader.next() );
+        assertEquals( 0, reader.getLevel() );
+    }
+
+    @Test
+    public void seeksLevelsLikeTheParser() throws IOException {
+
+        String json = "{\"a\": {\"b\": [1, 2], \"c\": 3}, \"d\": 4}";
+        Json parser = new Json( json );
+        JsonCborReader reader = reader( encode( json ) );
+
+        // down into "b", then out to the key "d"
+        for (int i = 0; i < 5; i++) {
+
+            assertEquals( parser.next(), reader.next() );
+        }
+
+        assertEquals( 3, parser.getLevel() );
+        assertEquals( 3, reader.getLevel() );
+
+        // both stop on the end of the object under "a"
+        parser.seekLevel( 1 );
+        reader.seekLevel( 1 );
+        assertEquals( 1, parser.getLevel() );
+        assertEquals( 1, reader.getLevel() );
+
+        assertEquals( JsonBase.KEY, parser.next() );
+        assertEquals( JsonBase.KEY, reader.next() );
+        assertEquals( "d", reader.getString() );
+        assertEquals( parser.getLevel(), reader.getLevel() );
+    }
+
+    @Test
+    public void writesSeveralValues() throws IOException {
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JsonCborWriter writer = new JsonCborWriter( out );
+        Json json = new Json( "[{\"key\": true}, {\"key\": false}]" );
+        json.next();
+        writer.write( json );
+        writer.write( json );
+        writer.flush();
+
+        JsonCborReader reader = reader( out.toByteArray() );
+        reader.next();
+        reader.next();
+        assertEquals( "key", reader.getString() );
+        reader.next();
+        assertTrue( reader.getBooleanValue() );
+        reader.next();
+
+        // each value is a namespace of its own, so the key is written out again
+        reader.next();
+        reader.next();
+        assertEquals( "key", reader.getString() );
+        assertEquals( JsonBase.VARIABLE, reader.next() );
+        assertEquals( false, reader.getBooleanValue() );
+    }
+}
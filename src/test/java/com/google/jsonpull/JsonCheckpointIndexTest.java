@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2008-2010 Metova, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jsonpull;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class JsonCheckpointIndexTest {
+
+    private static final int ELEMENTS = 500;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File write( String text ) throws IOException {
+
+        File file = folder.newFile();
+        OutputStream out = new FileOutputStream( file );
+        out.write( text.getBytes( "UTF-8" ) );
+        out.close();
+        return file;
+    }
+
+    /**
+     * @return an array of objects with multi-byte names, spread over many read blocks
+     */
+    private static String elements() {
+
+        StringBuffer array = new StringBuffer( "[" );
+
+        for (int i = 0; i < ELEMENTS; i++) {
+
+            array.append( ( i == 0 ) ? "" : ",\n" );
+            array.append( "{\"id\": " ).append( i ).append( ", \"name\": \"caf\u00e9 \ud834\udd1e " ).append( i );
+            array.append( "\", \"tags\": [\"a\", [\"b\"]]}" );
+        }
+
+        return array.append( "]" ).toString();
+    }
+
+    private static int readId( Json json ) {
+
+        assertEquals( JsonBase.START_OBJECT, json.next() );
+        assertEquals( "id", json.getKey() );
+        int id = json.getIntegerValue();
+        assertEquals( "name", json.getKey() );
+        assertEquals( "caf\u00e9 \ud834\udd1e " + id, json.getStringValue() );
+        return id;
+    }
+
+    @Test
+    public void opensAnyElementOfATopLevelArray() throws IOException {
+
+        File source = write( elements() );
+        JsonCheckpointIndex index = JsonCheckpointIndex.build( source, 16 );
+
+        assertEquals( 32, index.size() );
+        assertEquals( 0, index.getElement( 0 ) );
+        assertEquals( 16, index.getElement( 1 ) );
+        assertEquals( 1, index.getLevel( 0 ) );
+
+        int[] elements = { 0, 1, 15, 16, 17, 250, 499 };
+
+        for (int i = 0; i < elements.length; i++) {
+
+            Json json = index.open( source, elements[i] );
+            assertEquals( elements[i], readId( json ) );
+        }
+    }
+
+    @Test
+    public void continuesToTheEndOfTheArray() throws IOException {
+
+        File source = write( elements() );
+        JsonCheckpointIndex index = JsonCheckpointIndex.build( source, 100 );
+        Json json = index.open( source, 498 );
+
+        assertEquals( 498, readId( json ) );
+        json.seekLevel( 1 );
+        assertEquals( 499, readId( json ) );
+        json.seekLevel( 1 );
+        assertEquals( JsonBase.END_ARRAY, json.next() );
+
+        json = index.open( source, ELEMENTS );
+        assertEquals( JsonBase.END_ARRAY, json.next() );
+    }
+
+    @Test
+    public void indexesTheArrayOfAMember() throws IOException {
+
+        File source = write( "{\"skipped\": [1, 2], \"rows\": " + elements() + ", \"after\": true}" );
+        JsonCheckpointIndex index = JsonCheckpointIndex.build( source, "rows", 10 );
+
+        // the last checkpoint is before the END_ARRAY
+        assertEquals( 51, index.size() );
+        assertEquals( 2, index.getLevel( 0 ) );
+        assertEquals( 123, readId( index.open( source, 123 ) ) );
+
+        try {
+
+            JsonCheckpointIndex.build( source, "missing", 10 );
+            fail();
+        }
+        catch (IllegalArgumentException e) {
+
+            // expected
+        }
+    }
+
+    @Test
+    public void findsTheCheckpointBeforeAnElement() throws IOException {
+
+        JsonCheckpointIndex index = JsonCheckpointIndex.build( write( elements() ), 50 );
+
+        assertEquals( 0, index.find( 0 ) );
+        assertEquals( 0, index.find( 49 ) );
+        assertEquals( 1, index.find( 50 ) );
+        assertEquals( 9, index.find( 499 ) );
+        assertEquals( 10, index.find( 10000 ) );
+    }
+
+    @Test
+    public void refusesToOpenAChangedFile() throws IOException {
+
+        File source = write( elements() );
+        JsonCheckpointIndex index = JsonCheckpointIndex.build( source, 64 );
+
+        OutputStream out = new FileOutputStream( source, true );
+        out.write( ' ' );
+        out.close();
+
+        try {
+
+            index.open( source, 300 );
+            fail();
+        }
+        catch (IOException e) {
+
+            // expected
+        }
+    }
+
+    @Test
+    public void writesAndReadsTheIndex() throws IOException {
+
+        File source = write( elements() );
+        JsonCheckpointIndex index = JsonCheckpointIndex.build( source, 64 );
+        File file = folder.newFile();
+        index.write( file );
+
+        JsonCheckpointIndex copy = JsonCheckpointIndex.read( file );
+        assertEquals( index.size(), copy.size() );
+        assertEquals( 64, copy.getInterval() );
+
+        for (int i = 0; i < index.size(); i++) {
+
+            assertEquals( index.getElement( i ), copy.getElement( i ) );
+            assertEquals( index.getOffset( i ), copy.getOffset( i ) );
+            assertEquals( index.getLevel( i ), copy.getLevel( i ) );
+        }
+
+        assertTrue( copy.matches( source ) );
+        assertFalse( copy.matches( write( "[]" ) ) );
+        assertEquals( 300, readId( copy.open( source, 300 ) ) );
+
+        try {
+
+            JsonCheckpointIndex.read( source );
+            fail();
+        }
+        catch (IOException e) {
+
+            // expected
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2008-2010 Metova, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jsonpull;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class JsonColumnsTest {
+
+    @Test
+    public void readsRowsIntoColumns() {
+
+        JsonColumns columns = new JsonColumns();
+        int ts = columns.addLong( "ts" );
+        int value = columns.addDouble( "value" );
+        int host = columns.addString( "host" );
+
+        Json json = new Json( "[{\"ts\": 1, \"value\": 0.5, \"host\": \"a\", \"extra\": {\"x\": [1]}}, "
+                + "{\"host\": \"b\", \"ts\": 2, \"value\": -1e2}, {\"ts\": 3, \"value\": 2, \"host\": \"a\"}]" );
+
+        assertEquals( 3, columns.read( json ) );
+        assertEquals( 3, columns.size() );
+        assertEquals( JsonColumns.LONG, columns.getType( ts ) );
+        assertEquals( 2, columns.getLongs( ts )[1] );
+        assertEquals( -100, columns.getDoubles( value )[1], 0 );
+        assertEquals( 2, columns.getDoubles( value )[2], 0 );
+        assertArrayEquals( new String[] { "a", "b" }, columns.getDictionary( host ) );
+        assertEquals( 0, columns.getCodes( host )[2] );
+        assertEquals( "b", columns.getString( host, 1 ) );
+    }
+
+    @Test
+    public void marksMissingAndMismatchedValuesAsNull() {
+
+        JsonColumns columns = new JsonColumns();
+        int id = columns.addLong( "id" );
+        int name = columns.addString( "name" );
+
+        columns.read( new Json( "[{\"id\": null, \"name\": 5}, {\"id\": \"7\"}, 3, {\"id\": 1.5, \"name\": \"n\"}]" ) );
+
+        assertEquals( 4, columns.size() );
+
+        for (int row = 0; row < 3; row++) {
+
+            assertTrue( columns.isNull( id, row ) );
+        }
+
+        // a STRING column keeps the text of other scalars
+        assertEquals( "5", columns.getString( name, 0 ) );
+        assertTrue( columns.isNull( name, 1 ) );
+        assertTrue( columns.isNull( name, 2 ) );
+
+        // decimals are truncated into a LONG column
+        assertFalse( columns.isNull( id, 3 ) );
+        assertEquals( 1, columns.getLongs( id )[3] );
+        assertEquals( "n", columns.getString( name, 3 ) );
+        assertNull( columns.getString( name, 1 ) );
+    }
+
+    @Test
+    public void appendsAndClearsRows() {
+
+        JsonColumns columns = new JsonColumns();
+        int n = columns.addLong( "n" );
+        StringBuffer json = new StringBuffer( "[" );
+
+        for (int i = 0; i < 100; i++) {
+
+            json.append( ( i == 0 ) ? "" : "," ).append( ( i % 10 == 0 ) ? "{}" : "{\"n\": " + i + "}" );
+        }
+
+        json.append( ']' );
+
+        columns.read( new Json( json.toString() ) );
+        columns.read( new Json( json.toString() ) );
+        assertEquals( 200, columns.size() );
+        assertEquals( 99, columns.getLongs( n )[199] );
+        assertTrue( columns.isNull( n, 170 ) );
+
+        columns.clear();
+        assertEquals( 0, columns.size() );
+        Json nothing = new Json( "[null]" );
+        nothing.next();
+        assertEquals( 0, columns.read( nothing ) );
+        assertEquals( 1, columns.read( new Json( "[{\"n\": 4}]" ) ) );
+        assertFalse( columns.isNull( n, 0 ) );
+    }
+}
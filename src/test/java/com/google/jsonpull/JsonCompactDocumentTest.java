@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2008-2010 Metova, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jsonpull;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+public class JsonCompactDocumentTest {
+
+    private static final JsonCompactDocument DOCUMENT = JsonCompactDocument.load( "{\"a\": {\"b\": [10, 2.5, \"x\\ny\", null, true]}, "
+            + "\"big\": 123456789012345678901234567890, \"bad\": 01, \"caf\\u00e9\": \"\\u00fc\", \"a\": 0}" );
+
+    @Test
+    public void resolvesPaths() {
+
+        assertEquals( 10, DOCUMENT.getLong( "a.b[0]" ) );
+        assertEquals( 2.5, DOCUMENT.getDouble( "a.b[1]" ), 0 );
+        assertEquals( "x\ny", DOCUMENT.getString( "a.b[2]" ) );
+        assertTrue( DOCUMENT.isNull( "a.b[3]" ) );
+        assertTrue( DOCUMENT.contains( "a.b[3]" ) );
+        assertTrue( DOCUMENT.getBoolean( "a.b[4]" ) );
+        assertEquals( 5, DOCUMENT.size( "a.b" ) );
+        assertEquals( 5, DOCUMENT.size( "" ) );
+    }
+
+    @Test
+    public void reportsMissingValues() {
+
+        assertFalse( DOCUMENT.contains( "a.c" ) );
+        assertFalse( DOCUMENT.contains( "a.b[5]" ) );
+        assertFalse( DOCUMENT.contains( "a[0]" ) );
+        assertTrue( DOCUMENT.isNull( "nothing" ) );
+        assertEquals( 0, DOCUMENT.getLong( "nothing" ) );
+        assertNull( DOCUMENT.getString( "nothing" ) );
+        assertEquals( 0, DOCUMENT.size( "a.b[0]" ) );
+    }
+
+    @Test
+    public void rejectsMalformedPositions() {
+
+        String[] paths = { "a.b[x]", "a.b[]", "a.b[-1]", "a.b[+1]", "a.b[1 ]", "a.b[99999999999]" };
+
+        for (int i = 0; i < paths.length; i++) {
+
+            assertFalse( paths[i], DOCUMENT.contains( paths[i] ) );
+        }
+
+        assertEquals( 10, DOCUMENT.getLong( "a.b[00]" ) );
+    }
+
+    @Test
+    public void keepsTheFirstOfDuplicateKeys() {
+
+        assertEquals( 5, DOCUMENT.size( "a.b" ) );
+    }
+
+    @Test
+    public void readsNonAsciiKeys() {
+
+        assertEquals( "\u00fc", DOCUMENT.getString( "caf\u00e9" ) );
+    }
+
+    @Test
+    public void keepsBigNumbersAsText() {
+
+        assertEquals( "123456789012345678901234567890", DOCUMENT.getString( "big" ) );
+        assertEquals( 1.2345678901234568E29, DOCUMENT.getDouble( "big" ), 1E14 );
+    }
+
+    @Test
+    public void readsMalformedNumbersAsZero() {
+
+        assertEquals( "01", DOCUMENT.getString( "bad" ) );
+        assertEquals( 0, DOCUMENT.getLong( "bad" ) );
+        assertEquals( 0, DOCUMENT.getDouble( "bad" ), 0 );
+    }
+
+    @Test
+    public void sharesRepeatedKeys() {
+
+        StringBuffer json = new StringBuffer( "[" );
+
+        for (int i = 0; i < 200; i++) {
+
+            json.append( ( i == 0 ) ? "" : "," ).append( "{\"id\": " ).append( i ).append( ", \"k" ).append( i % 40 ).append( "\": true}" );
+        }
+
+        JsonCompactDocument document = JsonCompactDocument.load( json.append( ']' ).toString() );
+
+        assertEquals( 199, document.getLong( "[199].id" ) );
+        assertTrue( document.getBoolean( "[123].k3" ) );
+        assertFalse( document.getBoolean( "[123].k4" ) );
+    }
+
+    @Test
+    public void rejectsLengthsBeyondTheHeader() {
+
+        JsonCompactDocument.header( 7, ( 1 << 28 ) - 1, 0 );
+
+        try {
+
+            JsonCompactDocument.header( 7, 1 << 28, 0 );
+            fail();
+        }
+        catch (IllegalStateException e) {
+
+            // expected
+        }
+    }
+}
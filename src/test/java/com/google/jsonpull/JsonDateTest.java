@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2008-2010 Metova, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jsonpull;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+public class JsonDateTest {
+
+    private static void assertNotADate( String value ) {
+
+        try {
+
+            Json json = new Json( "[" + value + "]" );
+            json.next();
+            json.getTimestampValue();
+            fail( value );
+        }
+        catch (IllegalArgumentException e) {
+
+            // expected
+        }
+    }
+
+    private static long millis( String value ) {
+
+        Json json = new Json( "[" + value + "]" );
+        json.next();
+        return json.getTimestampValue();
+    }
+
+    @Test
+    public void parsesIsoTimestamps() {
+
+        assertEquals( 1274054400000L, millis( "\"2010-05-17\"" ) );
+        assertEquals( 1274099405000L, millis( "\"2010-05-17T12:30:05Z\"" ) );
+        assertEquals( 1274092205123L, millis( "\"2010-05-17 12:30:05.123456+02:00\"" ) );
+        assertEquals( 1274099400000L, millis( "\"2010-05-17T12:30\"" ) );
+        assertEquals( 951782400000L, millis( "\"2000-02-29\"" ) );
+    }
+
+    @Test
+    public void parsesMicrosoftDatesAndNumbers() {
+
+        assertEquals( 1274099405123L, millis( "\"\\/Date(1274099405123+0200)\\/\"" ) );
+        assertEquals( -1000L, millis( "\"/Date(-1000)/\"" ) );
+        assertEquals( 1274099405123L, millis( "1274099405123" ) );
+    }
+
+    @Test
+    public void keepsFractionsOfAMillisecond() {
+
+        Json json = new Json( "[\"1970-01-01T00:00:00.000001234Z\", null]" );
+        json.next();
+
+        assertEquals( 1234L, json.getTimestampNanos() );
+        assertEquals( Json.NO_DATE, json.getTimestampNanos() );
+    }
+
+    @Test
+    public void acceptsTheEndOfTheDay() {
+
+        assertEquals( millis( "\"2010-05-18T00:00:00Z\"" ), millis( "\"2010-05-17T24:00:00Z\"" ) );
+        assertEquals( millis( "\"2010-05-18\"" ), millis( "\"2010-05-17T24:00\"" ) );
+        assertNotADate( "\"2010-05-17T24:00:01Z\"" );
+        assertNotADate( "\"2010-05-17T24:01Z\"" );
+        assertNotADate( "\"2010-05-17T24:00:00.5Z\"" );
+        assertNotADate( "\"2010-05-17T25:00:00Z\"" );
+    }
+
+    @Test
+    public void rejectsDaysBeyondTheMonth() {
+
+        assertNotADate( "\"2020-02-30\"" );
+        assertNotADate( "\"2019-02-29\"" );
+        assertNotADate( "\"1900-02-29\"" );
+        assertNotADate( "\"2010-04-31\"" );
+        assertNotADate( "\"2010-13-01\"" );
+        assertEquals( millis( "\"2020-03-01\"" ) - 86400000L, millis( "\"2020-02-29\"" ) );
+    }
+
+    @Test
+    public void rejectsOtherTokens() {
+
+        // the token of the previous value must not be read again
+        Json json = new Json( "[5, {\"x\": 1}]" );
+        json.next();
+        assertEquals( 5, json.getDateValue() );
+        assertEquals( 0, json.getDateValue() );
+
+        json = new Json( "[1]" );
+        json.next();
+        json.getIntegerValue();
+        assertEquals( 0, json.getDateValue() );
+
+        json = new Json( "[1, []]" );
+        json.next();
+        json.getIntegerValue();
+
+        try {
+
+            json.getTimestampValue();
+            fail();
+        }
+        catch (IllegalArgumentException e) {
+
+            // expected
+        }
+
+        assertNotADate( "true" );
+        assertNotADate( "\"yesterday\"" );
+    }
+
+    @Test
+    public void readsNullAsNoDate() {
+
+        Json json = new Json( "[null, null]" );
+        json.next();
+
+        assertEquals( 0, json.getDateValue() );
+        assertEquals( Json.NO_DATE, json.getTimestampValue() );
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2008-2010 Metova, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jsonpull;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+public class JsonEscapesTest {
+
+    @Test
+    public void decodesEscapes() {
+
+        assertEquals( "a\"b\\c/d\b\f\n\r\t\u00e9\ud834\udd1e", JsonEscapes.unescape( "a\\\"b\\\\c\\/d\\b\\f\\n\\r\\t\\u00e9\\uD834\\udd1e" ) );
+        assertEquals( "x", JsonEscapes.unescape( "\\x" ) );
+        assertEquals( "a\\", JsonEscapes.unescape( "a\\" ) );
+    }
+
+    @Test
+    public void keepsStringsWithoutEscapes() {
+
+        String raw = "plain";
+        assertSame( raw, JsonEscapes.unescape( raw ) );
+        assertEquals( null, JsonEscapes.unescape( null ) );
+
+        char[] chars = "[plain]".toCharArray();
+        assertEquals( "plain", JsonEscapes.unescape( chars, 1, 5 ) );
+        assertEquals( -1, JsonEscapes.indexOfEscape( chars, 0, chars.length ) );
+    }
+
+    @Test
+    public void decodesARangeIntoAnArray() {
+
+        char[] chars = "--a\\nb\\u0041--".toCharArray();
+        char[] out = new char[10];
+
+        assertEquals( 3, JsonEscapes.indexOfEscape( chars, 2, 10 ) );
+        assertEquals( 4, JsonEscapes.unescape( chars, 2, 10, out ) );
+        assertEquals( "a\nbA", new String( out, 0, 4 ) );
+    }
+
+    @Test
+    public void rejectsMalformedUnicodeEscapes() {
+
+        String[] malformed = { "\\u12", "\\u12g4", "a\\u" };
+
+        for (int i = 0; i < malformed.length; i++) {
+
+            try {
+
+                JsonEscapes.unescape( malformed[i] );
+                fail( malformed[i] );
+            }
+            catch (IllegalStateException e) {
+
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void decodesTheSameForEveryReader() {
+
+        String json = "{\"k\\u00e9y\": \"v\\\\al\\u0075e\\n\"}";
+
+        Json parser = new Json( json );
+        parser.next();
+        parser.getKey();
+        assertEquals( "v\\alue\n", parser.getStringValue() );
+
+        JsonCompactDocument document = JsonCompactDocument.load( new Json( json ) );
+        assertEquals( "v\\alue\n", document.getString( "k\u00e9y" ) );
+
+        JsonNode node = JsonNode.parse( json );
+        assertEquals( "v\\alue\n", node.get( "k\u00e9y" ).getString() );
+    }
+
+    @Test
+    public void decodesJsonOnlyEscapesInStringValues() {
+
+        Json parser = new Json( "[\"a\\/b\", \"\\uD834\\uDD1E\"]" );
+        parser.next();
+        assertEquals( "a/b", parser.getStringValue() );
+        assertEquals( "\ud834\udd1e", parser.getStringValue() );
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2008-2010 Metova, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jsonpull;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+public class JsonFilterTest {
+
+    private static final String DOCUMENT = "{\"user\": {\"name\": \"a\", \"secret\": \"s\", \"address\": {\"city\": \"c\"}}, "
+            + "\"items\": [{\"id\": 1, \"secret\": [1, {\"x\": \"]\"}]}, {\"id\": 2}], \"n\": null}";
+
+    private static String filter( JsonFilter filter, String json ) throws IOException {
+
+        StringWriter out = new StringWriter();
+        filter.filter( new StringReader( json ), out );
+        return out.toString();
+    }
+
+    @Test
+    public void dropsExcludedPaths() throws IOException {
+
+        JsonFilter filter = new JsonFilter();
+        filter.exclude( "user.secret" );
+        filter.exclude( "items[*].secret" );
+
+        assertEquals( "{\"user\":{\"name\":\"a\",\"address\":{\"city\": \"c\"}},\"items\":[{\"id\":1},{\"id\":2}],\"n\":null}",
+                filter( filter, DOCUMENT ) );
+    }
+
+    @Test
+    public void keepsOnlyIncludedPaths() throws IOException {
+
+        JsonFilter filter = new JsonFilter();
+        filter.include( "user.address" );
+        filter.include( "items[1]" );
+
+        assertEquals( "{\"user\":{\"address\":{\"city\": \"c\"}},\"items\":[{\"id\": 2}]}", filter( filter, DOCUMENT ) );
+    }
+
+    @Test
+    public void excludesWithinIncludedPaths() throws IOException {
+
+        JsonFilter filter = new JsonFilter();
+        filter.include( "items" );
+        filter.exclude( "*[*].secret" );
+
+        assertEquals( "{\"items\":[{\"id\":1},{\"id\":2}]}", filter( filter, DOCUMENT ) );
+    }
+
+    @Test
+    public void copiesEverythingWithoutRules() throws IOException {
+
+        assertEquals( DOCUMENT, filter( new JsonFilter(), DOCUMENT ) );
+    }
+
+    @Test
+    public void rejectsMalformedPaths() {
+
+        JsonFilter filter = new JsonFilter();
+
+        try {
+
+            filter.include( "items[0" );
+            fail();
+        }
+        catch (IllegalArgumentException e) {
+
+            // expected
+        }
+
+        try {
+
+            filter.exclude( "." );
+            fail();
+        }
+        catch (IllegalArgumentException e) {
+
+            // expected
+        }
+    }
+}
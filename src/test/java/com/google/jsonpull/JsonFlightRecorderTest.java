@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2008-2010 Metova, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jsonpull;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.List;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.Test;
+
+public class JsonFlightRecorderTest {
+
+    @Test
+    public void recordsAnEventPerDocument() throws Exception {
+
+        assertTrue( JsonFlightRecorder.isAvailable() );
+
+        Json json = new Json( "[1, 2] [3]" );
+        json.setMultiDocument( true );
+        JsonFlightRecorder metrics = new JsonFlightRecorder();
+        json.setMetrics( metrics );
+
+        File file = File.createTempFile( "jsonpull", ".jfr" );
+        Recording recording = new Recording();
+
+        try {
+
+            recording.enable( "com.google.jsonpull.Document" );
+            recording.start();
+
+            while (json.hasNextDocument()) {
+
+                while (json.next() != JsonBase.END_ARRAY || json.getLevel() > 0) {
+
+                    // drain
+                }
+            }
+
+            recording.stop();
+            recording.dump( file.toPath() );
+
+            List events = RecordingFile.readAllEvents( file.toPath() );
+            assertEquals( 2, events.size() );
+            assertEquals( 4, ( (RecordedEvent) events.get( 0 ) ).getLong( "tokens" ) );
+            assertEquals( 3, ( (RecordedEvent) events.get( 1 ) ).getLong( "tokens" ) );
+            assertEquals( 2, metrics.getDocumentCount() );
+        }
+        finally {
+
+            recording.close();
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2008-2010 Metova, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jsonpull;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.StringReader;
+
+import org.junit.Test;
+
+public class JsonHandlerTest {
+
+    static class Recorder implements JsonHandler {
+
+        final StringBuffer events = new StringBuffer();
+
+        public void startObject() {
+
+            events.append( "{ " );
+        }
+
+        public void endObject() {
+
+            events.append( "} " );
+        }
+
+        public void startArray() {
+
+            events.append( "[ " );
+        }
+
+        public void endArray() {
+
+            events.append( "] " );
+        }
+
+        public void key( CharSequence key ) {
+
+            events.append( "key:" ).append( key.toString() ).append( ' ' );
+        }
+
+        public void stringValue( CharSequence value ) {
+
+            events.append( "string:" ).append( value.toString() ).append( ' ' );
+        }
+
+        public void longValue( long value ) {
+
+            events.append( "long:" ).append( value ).append( ' ' );
+        }
+
+        public void doubleValue( double value ) {
+
+            events.append( "double:" ).append( value ).append( ' ' );
+        }
+
+        public void numberValue( CharSequence value ) {
+
+            events.append( "number:" ).append( value.toString() ).append( ' ' );
+        }
+
+        public void booleanValue( boolean value ) {
+
+            events.append( "boolean:" ).append( value ).append( ' ' );
+        }
+
+        public void nullValue() {
+
+            events.append( "null " );
+        }
+    }
+
+    private static String parse( Json json ) {
+
+        Recorder recorder = new Recorder();
+        json.parse( recorder );
+        return recorder.events.toString();
+    }
+
+    @Test
+    public void passesEveryTokenOfAValue() {
+
+        Json json = new Json( "{\"a\\tb\": [1, 2.5, 12345678901234567890, true, false, null, \"x\\u00e9\\\"\"], \"c\": {}}" );
+
+        assertEquals( "{ key:a\tb [ long:1 double:2.5 number:12345678901234567890 boolean:true boolean:false null string:x\u00e9\" ] "
+                + "key:c { } } ", parse( json ) );
+    }
+
+    @Test
+    public void readsOneValueAtATime() {
+
+        Json json = new Json( "[[1], {\"k\": \"v\"}, 3]" );
+        json.next();
+
+        assertEquals( "[ long:1 ] ", parse( json ) );
+        assertEquals( "{ key:k string:v } ", parse( json ) );
+        assertEquals( "long:3 ", parse( json ) );
+        assertEquals( JsonBase.END_ARRAY, json.next() );
+    }
+
+    @Test
+    public void rejectsTheEndOfADocument() {
+
+        Json json = new Json( new StringReader( "[1] 2" ) );
+        json.setMultiDocument( true );
+        assertEquals( "[ long:1 ] ", parse( json ) );
+
+        try {
+
+            parse( json );
+            fail();
+        }
+        catch (IllegalStateException e) {
+
+            assertEquals( "No value to parse, the document ended", e.getMessage() );
+        }
+
+        assertEquals( "long:2 ", parse( json ) );
+        assertEquals( JsonBase.END_DOCUMENT, json.next() );
+
+        try {
+
+            parse( json );
+            fail();
+        }
+        catch (IllegalStateException e) {
+
+            assertEquals( "No value to parse, the input ended", e.getMessage() );
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2008-2010 Metova, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jsonpull;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+public class JsonHashTest {
+
+    private static String hash( String input ) {
+
+        JsonHash hash = new JsonHash();
+        long low = hash.hash( new Json( input ) );
+        assertEquals( low, hash.getLow() );
+        return Long.toHexString( hash.getHigh() ) + Long.toHexString( low );
+    }
+
+    @Test
+    public void ignoresFormattingAndMemberOrder() {
+
+        assertEquals( hash( "{\"a\": [1, 2], \"b\": {\"c\": null}}" ), hash( "{ \"b\" : { \"c\" : null } ,\n\"a\":[1,2] }" ) );
+        assertFalse( hash( "[1, 2]" ).equals( hash( "[2, 1]" ) ) );
+        assertFalse( hash( "{\"a\": 1}" ).equals( hash( "{\"b\": 1}" ) ) );
+        assertFalse( hash( "{\"a\": 1, \"b\": 2}" ).equals( hash( "{\"a\": 2, \"b\": 1}" ) ) );
+    }
+
+    @Test
+    public void hashesNumbersByValue() {
+
+        assertEquals( hash( "[1]" ), hash( "[1.0]" ) );
+        assertEquals( hash( "[1]" ), hash( "[10e-1]" ) );
+        assertEquals( hash( "[1]" ), hash( "[0.1E1]" ) );
+        assertFalse( hash( "[1]" ).equals( hash( "[\"1\"]" ) ) );
+        assertFalse( hash( "[1]" ).equals( hash( "[true]" ) ) );
+    }
+
+    @Test
+    public void hashesStringsAfterUnescaping() {
+
+        assertEquals( hash( "[\"a\\nb\\u00e9\"]" ), hash( "[\"a\\u000ab\u00e9\"]" ) );
+        assertFalse( hash( "[\"a\"]" ).equals( hash( "[\"A\"]" ) ) );
+        assertFalse( hash( "[[], []]" ).equals( hash( "[[[]]]" ) ) );
+        assertFalse( hash( "[{}]" ).equals( hash( "[[]]" ) ) );
+    }
+
+    @Test
+    public void hashesTheValueOfAMember() {
+
+        Json json = new Json( "{\"a\": [1, 2], \"b\": \"x\"}" );
+        JsonHash hash = new JsonHash();
+        json.next();
+        json.getKey();
+        long first = hash.hash( json );
+
+        assertEquals( new JsonHash().hash( new Json( "[1,2]" ) ), first );
+        assertEquals( "b", json.getKey() );
+    }
+
+    @Test
+    public void rejectsAKeyInsteadOfAValue() {
+
+        Json json = new Json( "{\"a\": 1}" );
+        json.next();
+
+        try {
+
+            new JsonHash().hash( json );
+            fail();
+        }
+        catch (IllegalStateException e) {
+
+            // expected
+        }
+    }
+
+    @Test
+    public void rejectsTheEndOfAContainer() {
+
+        Json json = new Json( "[]" );
+        json.next();
+
+        try {
+
+            new JsonHash().hash( json );
+            fail();
+        }
+        catch (IllegalStateException e) {
+
+            // expected
+        }
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2008-2010 Metova, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jsonpull;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.net.SocketTimeoutException;
+
+import org.junit.Test;
+
+public class JsonLimitTest {
+
+    private static void readAll( Json json ) {
+
+        while (json.next() != JsonBase.END_ARRAY || json.getLevel() > 0) {
+
+            // drain
+        }
+    }
+
+    private static String documents( int count, int length ) {
+
+        StringBuffer input = new StringBuffer();
+
+        for (int i = 0; i < count; i++) {
+
+            input.append( '[' );
+
+            for (int j = 0; j < length; j++) {
+
+                input.append( ( j == 0 ) ? "1" : ",1" );
+            }
+
+            input.append( "] " );
+        }
+
+        return input.toString();
+    }
+
+    @Test
+    public void stopsAfterTooManyTokens() {
+
+        Json json = new Json( "[1, 2, 3, 4, 5]" );
+        json.setMaxTokens( 4 );
+
+        try {
+
+            readAll( json );
+            fail();
+        }
+        catch (JsonLimitException e) {
+
+            assertEquals( JsonLimitException.TOKENS, e.getReason() );
+        }
+    }
+
+    @Test
+    public void countsTokensPerDocument() {
+
+        Json json = new Json( documents( 10, 5 ) );
+        json.setMultiDocument( true );
+        json.setMaxTokens( 10 );
+        int count = 0;
+
+        while (json.hasNextDocument()) {
+
+            readAll( json );
+            count++;
+        }
+
+        assertEquals( 10, count );
+    }
+
+    @Test
+    public void countsCharactersPerDocument() {
+
+        // each document is far below the limit, all of them together are far above it
+        Json json = new Json( documents( 3000, 100 ) );
+        json.setMultiDocument( true );
+        json.setMaxCharacters( 10000 );
+        int count = 0;
+
+        while (json.hasNextDocument()) {
+
+            readAll( json );
+            count++;
+        }
+
+        assertEquals( 3000, count );
+    }
+
+    @Test
+    public void stopsAfterTooManyCharacters() {
+
+        Json json = new Json( documents( 1, 5000 ) );
+        json.setMaxCharacters( 1000 );
+
+        try {
+
+            readAll( json );
+            fail();
+        }
+        catch (JsonLimitException e) {
+
+            assertEquals( JsonLimitException.CHARACTERS, e.getReason() );
+        }
+    }
+
+    @Test
+    public void stopsBelowTheMaximumDepth() {
+
+        Json json = new Json( "[[[[1]]]]" );
+        json.setMaxDepth( 3 );
+
+        try {
+
+            readAll( json );
+            fail();
+        }
+        catch (JsonLimitException e) {
+
+            assertEquals( JsonLimitException.DEPTH, e.getReason() );
+        }
+    }
+
+    @Test
+    public void stopsWhenInterrupted() {
+
+        Json json = new Json( "[1]" );
+        Thread.currentThread().interrupt();
+
+        try {
+
+            json.next();
+            fail();
+        }
+        catch (JsonLimitException e) {
+
+            assertEquals( JsonLimitException.INTERRUPTED, e.getReason() );
+        }
+        finally {
+
+            Thread.interrupted();
+        }
+    }
+
+    @Test
+    public void reportsInterruptedAndTimedOutReads() {
+
+        IOException[] failures = { new InterruptedIOException(), new SocketTimeoutException() };
+        int[] reasons = { JsonLimitException.INTERRUPTED, JsonLimitException.DEADLINE };
+
+        for (int i = 0; i < failures.length; i++) {
+
+            final IOException failure = failures[i];
+
+            Json json = new Json( new Reader() {
+
+                public int read( char[] chars, int offset, int length ) throws IOException {
+
+                    throw failure;
+                }
+
+                public void close() {
+
+                }
+            } );
+
+            try {
+
+                json.next();
+                fail();
+            }
+            catch (JsonLimitException e) {
+
+                assertEquals( reasons[i], e.getReason() );
+            }
+        }
+    }
+}
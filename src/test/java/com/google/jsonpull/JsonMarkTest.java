@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2008-2010 Metova, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jsonpull;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.Reader;
+
+import org.junit.Test;
+
+public class JsonMarkTest {
+
+    /**
+     * @return an array of count numbers, read from a stream in small blocks
+     */
+    private static Json numbers( int count ) {
+
+        StringBuffer input = new StringBuffer( "[" );
+
+        for (int i = 0; i < count; i++) {
+
+            input.append( ( i == 0 ) ? "" : ", " ).append( i );
+        }
+
+        return new Json( new ByteArrayInputStream( input.append( ']' ).toString().getBytes() ) );
+    }
+
+    @Test
+    public void parsesAgainFromTheMark() {
+
+        Json json = new Json( "{\"a\": [1, 2], \"b\": \"x\"}" );
+        json.next();
+        assertEquals( "a", json.getKey() );
+        json.mark( 100 );
+
+        assertEquals( JsonBase.START_ARRAY, json.next() );
+        assertEquals( 1, json.getIntegerValue() );
+        assertEquals( 2, json.getIntegerValue() );
+        assertEquals( JsonBase.END_ARRAY, json.next() );
+        assertEquals( "b", json.getKey() );
+
+        json.reset();
+        assertEquals( 2, json.getLevel() );
+        assertEquals( JsonBase.START_ARRAY, json.next() );
+        assertEquals( 1, json.getIntegerValue() );
+
+        json.reset();
+        assertEquals( JsonBase.START_ARRAY, json.next() );
+        assertEquals( 1, json.getIntegerValue() );
+        assertEquals( 2, json.getIntegerValue() );
+        assertEquals( JsonBase.END_ARRAY, json.next() );
+        assertEquals( "b", json.getKey() );
+        assertEquals( "x", json.getStringValue() );
+        assertEquals( JsonBase.END_OBJECT, json.next() );
+    }
+
+    @Test
+    public void replaysAcrossBlocksOfAStream() {
+
+        Json json = numbers( 5000 );
+        json.next();
+        assertEquals( 0, json.getIntegerValue() );
+        json.mark( 100000 );
+
+        for (int i = 1; i < 5000; i++) {
+
+            assertEquals( i, json.getIntegerValue() );
+        }
+
+        json.reset();
+
+        for (int i = 1; i < 5000; i++) {
+
+            assertEquals( i, json.getIntegerValue() );
+        }
+
+        assertEquals( JsonBase.END_ARRAY, json.next() );
+    }
+
+    @Test
+    public void movesTheMarkWhenMarkingAgain() {
+
+        Json json = numbers( 10 );
+        json.next();
+        json.mark( 100 );
+        json.getIntegerValue();
+        json.getIntegerValue();
+        json.mark( 100 );
+        assertEquals( 2, json.getIntegerValue() );
+
+        json.reset();
+        assertEquals( 2, json.getIntegerValue() );
+    }
+
+    @Test
+    public void dropsTheMarkPastItsLimit() {
+
+        Json json = numbers( 5000 );
+        json.next();
+        json.mark( 10 );
+
+        for (int i = 0; i < 5000; i++) {
+
+            json.getIntegerValue();
+        }
+
+        try {
+
+            json.reset();
+            fail();
+        }
+        catch (IllegalStateException e) {
+
+            assertEquals( "Mark dropped after 10 characters", e.getMessage() );
+        }
+    }
+
+    @Test
+    public void needsAMark() {
+
+        try {
+
+            numbers( 1 ).reset();
+            fail();
+        }
+        catch (IllegalStateException e) {
+
+            assertEquals( "Not marked", e.getMessage() );
+        }
+    }
+
+    @Test
+    public void cannotMarkInsideAString() throws IOException {
+
+        Json json = new Json( "[\"abcdef\"]" );
+        json.next();
+        Reader reader = json.getStringReader();
+        reader.read();
+
+        try {
+
+            json.mark( 100 );
+            fail();
+        }
+        catch (IllegalStateException e) {
+
+            // expected
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2008-2010 Metova, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jsonpull;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class JsonMetricsTest {
+
+    private static void readAll( Json json ) {
+
+        while (json.next() != JsonBase.END_OBJECT || json.getLevel() > 0) {
+
+            // drain
+        }
+    }
+
+    @Test
+    public void countsTokensOfADocument() {
+
+        Json json = new Json( "{\"a\": [1, 2], \"b\": \"x\"}" );
+        JsonMetrics metrics = new JsonMetrics();
+        json.setMetrics( metrics );
+        readAll( json );
+
+        assertEquals( 1, metrics.getDocumentCount() );
+        assertEquals( 1, metrics.getTokenCount( JsonBase.START_OBJECT ) );
+        assertEquals( 1, metrics.getTokenCount( JsonBase.START_ARRAY ) );
+        assertEquals( 2, metrics.getTokenCount( JsonBase.KEY ) );
+        assertEquals( 2, metrics.getTokenCount( JsonBase.VARIABLE ) );
+        assertEquals( 1, metrics.getTokenCount( JsonBase.STRING ) );
+        assertEquals( 9, metrics.getTokenCount() );
+        assertTrue( metrics.getCharactersRead() > 0 );
+        assertTrue( metrics.getMaxDepth() >= 2 );
+    }
+
+    @Test
+    public void reportsEachDocumentToTheHook() {
+
+        final long[] reported = new long[2];
+        JsonMetrics metrics = new JsonMetrics() {
+
+            protected void documentParsed( long nanos, long characters, long tokenCount ) {
+
+                reported[0]++;
+                reported[1] += tokenCount;
+            }
+        };
+
+        Json json = new Json( "{\"a\": 1} {\"b\": 2}" );
+        json.setMultiDocument( true );
+        json.setMetrics( metrics );
+
+        while (json.hasNextDocument()) {
+
+            readAll( json );
+        }
+
+        assertEquals( 2, reported[0] );
+        assertEquals( 8, reported[1] );
+        assertEquals( 2, metrics.getDocumentCount() );
+    }
+
+    @Test
+    public void addsAndResets() {
+
+        JsonMetrics first = new JsonMetrics();
+        JsonMetrics second = new JsonMetrics();
+
+        Json json = new Json( "{\"a\": \"b\"}" );
+        json.setMetrics( first );
+        json.next();
+        json.getKey();
+        json.getStringValue();
+        json.next();
+
+        second.add( first );
+        second.add( first );
+        assertEquals( 2 * first.getTokenCount(), second.getTokenCount() );
+        assertEquals( 2 * first.getStringsMaterialized(), second.getStringsMaterialized() );
+        assertTrue( first.getStringsMaterialized() > 0 );
+
+        second.reset();
+        assertEquals( 0, second.getTokenCount() );
+        assertEquals( 0, second.getDocumentCount() );
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2008-2010 Metova, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jsonpull;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.StringReader;
+
+import org.junit.Test;
+
+public class JsonMultiDocumentTest {
+
+    private static Json documents( String input ) {
+
+        Json json = new Json( new StringReader( input ) );
+        json.setMultiDocument( true );
+        return json;
+    }
+
+    @Test
+    public void readsScalarsUpToTheEndOfTheInput() {
+
+        Json json = documents( "1 2 3" );
+
+        for (int i = 1; i <= 3; i++) {
+
+            assertEquals( i, json.getIntegerValue() );
+            assertEquals( JsonBase.END_DOCUMENT, json.next() );
+        }
+
+        assertEquals( -1, json.next() );
+        assertEquals( -1, json.next() );
+        assertFalse( json.hasNextDocument() );
+    }
+
+    @Test
+    public void readsNewlineDelimitedValues() {
+
+        Json json = documents( "{\"a\": 1}\n[true]\n\"text\"\nnull\n" );
+
+        assertEquals( JsonBase.START_OBJECT, json.next() );
+        assertEquals( "a", json.getKey() );
+        assertEquals( 1, json.getIntegerValue() );
+        assertEquals( JsonBase.END_OBJECT, json.next() );
+        assertEquals( JsonBase.END_DOCUMENT, json.next() );
+
+        assertEquals( JsonBase.START_ARRAY, json.next() );
+        assertEquals( JsonBase.VARIABLE, json.next() );
+        assertEquals( JsonBase.END_ARRAY, json.next() );
+        assertEquals( JsonBase.END_DOCUMENT, json.next() );
+
+        assertEquals( JsonBase.STRING, json.next() );
+        assertEquals( JsonBase.END_DOCUMENT, json.next() );
+
+        assertEquals( JsonBase.NULL, json.next() );
+        assertEquals( JsonBase.END_DOCUMENT, json.next() );
+        assertEquals( -1, json.peek() );
+        assertEquals( -1, json.next() );
+    }
+
+    @Test
+    public void separatesValuesWrittenBackToBack() {
+
+        Json json = documents( "[1][2]{}7\"x\"" );
+        int[] expected = { JsonBase.START_ARRAY, JsonBase.VARIABLE, JsonBase.END_ARRAY, JsonBase.END_DOCUMENT, JsonBase.START_ARRAY,
+                JsonBase.VARIABLE, JsonBase.END_ARRAY, JsonBase.END_DOCUMENT, JsonBase.START_OBJECT, JsonBase.END_OBJECT,
+                JsonBase.END_DOCUMENT, JsonBase.VARIABLE, JsonBase.END_DOCUMENT, JsonBase.STRING, JsonBase.END_DOCUMENT, -1 };
+
+        for (int i = 0; i < expected.length; i++) {
+
+            assertEquals( "event " + i, expected[i], json.next() );
+        }
+    }
+
+    @Test
+    public void skipsTheEndOfDocumentWithHasNextDocument() {
+
+        Json json = documents( "  [1]  \n  [2]  " );
+        int count = 0;
+
+        while (json.hasNextDocument()) {
+
+            assertEquals( JsonBase.START_ARRAY, json.next() );
+            assertEquals( count + 1, json.getIntegerValue() );
+            assertEquals( JsonBase.END_ARRAY, json.next() );
+            count++;
+        }
+
+        assertEquals( 2, count );
+        assertEquals( -1, json.next() );
+    }
+
+    @Test
+    public void stillReportsATruncatedValue() {
+
+        Json json = documents( "[1] [2" );
+        assertEquals( JsonBase.START_ARRAY, json.next() );
+        assertEquals( JsonBase.VARIABLE, json.next() );
+        assertEquals( JsonBase.END_ARRAY, json.next() );
+        assertEquals( JsonBase.END_DOCUMENT, json.next() );
+        assertTrue( json.hasNextDocument() );
+        assertEquals( JsonBase.START_ARRAY, json.next() );
+
+        try {
+
+            json.next();
+            json.next();
+            fail();
+        }
+        catch (IllegalStateException e) {
+
+            // expected
+        }
+    }
+}
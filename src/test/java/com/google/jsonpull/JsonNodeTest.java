@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2008-2010 Metova, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jsonpull;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+
+import org.junit.Test;
+
+public class JsonNodeTest {
+
+    private static final String DOCUMENT = "{\"id\": 12345678901234567890, \"tags\": [\"a\", {\"deep\": [1, 2]}, null], "
+            + "\"name\": \"x\\ty\", \"k\\u0065y\": true, \"id\": 2, \"ratio\": -2.5}";
+
+    @Test
+    public void readsMembersByKey() {
+
+        JsonNode root = JsonNode.parse( DOCUMENT );
+
+        assertEquals( JsonBase.START_OBJECT, root.getType() );
+        assertEquals( 6, root.size() );
+        assertEquals( "x\ty", root.get( "name" ).getString() );
+        assertTrue( root.get( "key" ).getBoolean() );
+        assertEquals( -2.5, root.get( "ratio" ).getDouble(), 0 );
+        assertNull( root.get( "missing" ) );
+        assertSame( root.get( "name" ), root.get( 2 ) );
+    }
+
+    @Test
+    public void keepsTheFirstOfDuplicateKeys() {
+
+        JsonNode root = JsonNode.parse( DOCUMENT );
+
+        assertEquals( new BigDecimal( "12345678901234567890" ), root.get( "id" ).getBigDecimal() );
+        assertEquals( 2, root.get( 4 ).getLong() );
+        assertEquals( "key", root.getKey( 3 ) );
+    }
+
+    @Test
+    public void skipsOverNestedContainers() {
+
+        JsonNode tags = JsonNode.parse( DOCUMENT ).get( "tags" );
+
+        assertEquals( 3, tags.size() );
+        assertEquals( "a", tags.get( 0 ).getString() );
+        assertEquals( 2, tags.get( 1 ).get( "deep" ).get( 1 ).getLong() );
+        assertTrue( tags.get( 2 ).isNull() );
+        assertNull( tags.get( 3 ) );
+        assertNull( tags.get( "a" ) );
+    }
+
+    @Test
+    public void convertsScalars() {
+
+        JsonNode values = JsonNode.parse( "[1e3, \"text\", -7, 9007199254740993]" );
+
+        assertEquals( 1000, values.get( 0 ).getLong() );
+        assertEquals( 0, values.get( 1 ).getLong() );
+        assertEquals( -7, values.get( 2 ).getLong() );
+        assertEquals( 9007199254740993L, values.get( 3 ).getLong() );
+        assertEquals( 0, values.get( 2 ).size() );
+        assertFalse( values.get( 1 ).getBoolean() );
+    }
+
+    @Test
+    public void indexesManyKeys() {
+
+        StringBuffer json = new StringBuffer( "{" );
+
+        for (int i = 0; i < 500; i++) {
+
+            json.append( ( i == 0 ) ? "" : "," ).append( "\"k" ).append( i ).append( "\": " ).append( i );
+        }
+
+        JsonNode root = JsonNode.parse( json.append( '}' ).toString() );
+
+        for (int i = 0; i < 500; i++) {
+
+            assertEquals( i, root.get( "k" + i ).getLong() );
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2008-2010 Metova, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jsonpull;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+import org.junit.Test;
+
+public class JsonNumberTest {
+
+    private static int typeOf( String number ) {
+
+        Json json = new Json( "[" + number + "]" );
+        json.next();
+        json.next();
+        return json.getNumberType();
+    }
+
+    @Test
+    public void classifiesNumbers() {
+
+        assertEquals( JsonBase.NUMBER_INT, typeOf( "0" ) );
+        assertEquals( JsonBase.NUMBER_INT, typeOf( "-2147483648" ) );
+        assertEquals( JsonBase.NUMBER_LONG, typeOf( "2147483648" ) );
+        assertEquals( JsonBase.NUMBER_LONG, typeOf( "-9223372036854775808" ) );
+        assertEquals( JsonBase.NUMBER_BIG_INTEGER, typeOf( "9223372036854775808" ) );
+        assertEquals( JsonBase.NUMBER_DOUBLE, typeOf( "1.5" ) );
+        assertEquals( JsonBase.NUMBER_DOUBLE, typeOf( "-2E10" ) );
+        assertEquals( JsonBase.NUMBER_BIG_DECIMAL, typeOf( "0.12345678901234567890" ) );
+        assertEquals( JsonBase.NUMBER_BIG_DECIMAL, typeOf( "1e400" ) );
+    }
+
+    @Test
+    public void rejectsMalformedNumbers() {
+
+        assertEquals( JsonBase.NOT_A_NUMBER, typeOf( "01" ) );
+        assertEquals( JsonBase.NOT_A_NUMBER, typeOf( "1." ) );
+        assertEquals( JsonBase.NOT_A_NUMBER, typeOf( "1e" ) );
+        assertEquals( JsonBase.NOT_A_NUMBER, typeOf( "-" ) );
+        assertEquals( JsonBase.NOT_A_NUMBER, typeOf( "true" ) );
+    }
+
+    @Test
+    public void readsLargeValuesExactly() {
+
+        Json json = new Json( "[123456789012345678901234567890, -0.1000000000000000000001, 7, null]" );
+        json.next();
+
+        assertEquals( new BigInteger( "123456789012345678901234567890" ), json.getBigIntegerValue() );
+        assertEquals( new BigDecimal( "-0.1000000000000000000001" ), json.getBigDecimalValue() );
+        assertEquals( BigInteger.valueOf( 7 ), json.getBigIntegerValue() );
+        assertNull( json.getBigDecimalValue() );
+    }
+
+    @Test
+    public void truncatesDecimalsToIntegers() {
+
+        Json json = new Json( "[-2.9, 1e2]" );
+        json.next();
+
+        assertEquals( BigInteger.valueOf( -2 ), json.getBigIntegerValue() );
+        assertEquals( BigInteger.valueOf( 100 ), json.getBigIntegerValue() );
+    }
+
+    @Test(timeout = 10000)
+    public void boundsTheExponentOfIntegers() {
+
+        Json json = new Json( "[1e999999999, 1e-999999999, 12e9998]" );
+        json.next();
+
+        try {
+
+            json.getBigIntegerValue();
+            fail();
+        }
+        catch (NumberFormatException e) {
+
+            // expected
+        }
+
+        assertEquals( BigInteger.ZERO, json.getBigIntegerValue() );
+        assertEquals( 10000, json.getBigIntegerValue().toString().length() );
+    }
+
+    @Test
+    public void readsPrimitivesFromTheClassifiedValue() {
+
+        Json json = new Json( "[42, 9000000000, 2.5]" );
+        json.next();
+
+        assertEquals( 42, json.getIntegerValue() );
+        assertEquals( 9000000000L, json.getLongValue() );
+        assertEquals( 2.5, json.getDoubleValue(), 0 );
+    }
+}
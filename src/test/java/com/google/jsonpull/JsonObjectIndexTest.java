@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2008-2010 Metova, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jsonpull;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+
+import org.junit.Test;
+
+public class JsonObjectIndexTest {
+
+    private static final String DOCUMENT = "[{\"id\": 7, \"tags\": [\"a\", {\"b\": null}], \"k\\u00e9y\": \"x\", \"name\": \"n\"}, 42]";
+
+    @Test
+    public void seeksMembersInAnyOrder() {
+
+        Json json = new Json( DOCUMENT );
+        json.next();
+        JsonObjectIndex index = json.indexObject();
+
+        assertEquals( 4, index.size() );
+        assertEquals( "k\u00e9y", index.getKey( 2 ) );
+        assertEquals( 3, index.indexOf( "name" ) );
+        assertTrue( index.containsKey( "id" ) );
+        assertFalse( index.containsKey( "missing" ) );
+
+        assertTrue( index.seek( "name" ) );
+        assertEquals( "n", json.getStringValue() );
+        assertTrue( index.seek( "k\u00e9y" ) );
+        assertEquals( "x", json.getStringValue() );
+        assertTrue( index.seek( "id" ) );
+        assertEquals( 7, json.getIntegerValue() );
+        assertTrue( index.seek( "tags" ) );
+        assertEquals( JsonBase.START_ARRAY, json.next() );
+        assertEquals( "a", json.getStringValue() );
+
+        assertFalse( index.seek( "missing" ) );
+        index.seekEnd();
+        assertEquals( 42, json.getIntegerValue() );
+        assertEquals( JsonBase.END_ARRAY, json.next() );
+    }
+
+    @Test
+    public void continuesAfterTheSoughtValue() {
+
+        Json json = new Json( DOCUMENT );
+        json.next();
+        JsonObjectIndex index = json.indexObject();
+
+        index.seek( "k\u00e9y" );
+        assertEquals( "x", json.getStringValue() );
+        assertEquals( "name", json.getKey() );
+        assertEquals( "n", json.getStringValue() );
+        assertEquals( JsonBase.END_OBJECT, json.next() );
+        assertEquals( 42, json.getIntegerValue() );
+    }
+
+    @Test
+    public void readsNullAndRejectsStreams() {
+
+        Json json = new Json( "[null]" );
+        json.next();
+        assertNull( json.indexObject() );
+
+        try {
+
+            new Json( new ByteArrayInputStream( "{}".getBytes() ) ).indexObject();
+            fail();
+        }
+        catch (IllegalStateException e) {
+
+            // expected
+        }
+    }
+
+    @Test
+    public void keepsAMarkAcrossSeeks() {
+
+        Json json = new Json( DOCUMENT );
+        json.next();
+        json.mark( 1000 );
+        JsonObjectIndex index = json.indexObject();
+
+        index.seek( "name" );
+        assertEquals( "n", json.getStringValue() );
+
+        json.reset();
+        assertEquals( JsonBase.START_OBJECT, json.next() );
+        assertEquals( "id", json.getKey() );
+        assertEquals( 7, json.getIntegerValue() );
+
+        // and the same again
+        json.reset();
+        assertEquals( JsonBase.START_OBJECT, json.next() );
+    }
+
+    @Test
+    public void countsReparsedCharactersOfTheDocument() {
+
+        JsonMetrics metrics = new JsonMetrics();
+        Json json = new Json( DOCUMENT );
+        json.setMetrics( metrics );
+        json.next();
+        JsonObjectIndex index = json.indexObject();
+
+        // back to the first member, the rest of the document is parsed twice
+        index.seek( "id" );
+
+        while (json.getLevel() > 0) {
+
+            json.next();
+        }
+
+        assertEquals( 1, metrics.getDocumentCount() );
+        assertTrue( metrics.getCharactersRead() > DOCUMENT.length() + 40 );
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2008-2010 Metova, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jsonpull;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.StringReader;
+
+import org.junit.Test;
+
+public class JsonPathProfilerTest {
+
+    private static final String DOCUMENT = "{\"items\": [{\"name\": \"a\", \"tags\": [1, 2]}, {\"name\": \"b\", \"tags\": []}], \"total\": 2}";
+
+    private static void readAll( Json json ) {
+
+        while (json.next() != JsonBase.END_OBJECT || json.getLevel() > 0) {
+
+            // drain
+        }
+    }
+
+    private static int find( JsonPathProfiler profiler, String path ) {
+
+        for (int i = 0; i < profiler.size(); i++) {
+
+            if ( profiler.getPath( i ).equals( path ) ) {
+
+                return i;
+            }
+        }
+
+        fail( path );
+        return -1;
+    }
+
+    private static JsonPathProfiler profile( String input, int documents, JsonPathProfiler profiler ) {
+
+        StringBuffer all = new StringBuffer();
+
+        for (int i = 0; i < documents; i++) {
+
+            all.append( input ).append( '\n' );
+        }
+
+        Json json = new Json( new StringReader( all.toString() ) );
+        json.setMultiDocument( true );
+        json.setPathProfiler( profiler );
+
+        while (json.hasNextDocument()) {
+
+            readAll( json );
+        }
+
+        return profiler;
+    }
+
+    @Test
+    public void attributesTokensToPaths() {
+
+        JsonPathProfiler profiler = profile( DOCUMENT, 1, new JsonPathProfiler( 1 ) );
+
+        // a member counts its key and its value
+        assertEquals( 4, profiler.getTokens( find( profiler, "items[*].name" ) ) );
+        assertEquals( 2, profiler.getTokens( find( profiler, "items[*].tags[*]" ) ) );
+        assertEquals( 2, profiler.getTokens( find( profiler, "total" ) ) );
+
+        long[] totals = profiler.getTotals( JsonPathProfiler.BY_TOKENS );
+        assertEquals( 23, totals[0] );
+        assertEquals( 19, totals[find( profiler, "items" )] );
+        assertTrue( profiler.getTotals( JsonPathProfiler.BY_CHARACTERS )[0] >= DOCUMENT.length() );
+        assertTrue( profiler.getTotals( JsonPathProfiler.BY_TIME )[0] > 0 );
+    }
+
+    @Test
+    public void profilesOneDocumentInAnInterval() {
+
+        JsonPathProfiler profiler = profile( DOCUMENT, 10, new JsonPathProfiler( 4 ) );
+
+        assertEquals( 10, profiler.getDocumentCount() );
+        assertEquals( 3, profiler.getSampledDocumentCount() );
+        assertEquals( 12, profiler.getTokens( find( profiler, "items[*].name" ) ) );
+    }
+
+    @Test
+    public void boundsThePathsOfKeyedDocuments() {
+
+        StringBuffer input = new StringBuffer( "{" );
+
+        for (int i = 0; i < 100; i++) {
+
+            input.append( ( i == 0 ) ? "" : ", " ).append( "\"id" ).append( i ).append( "\": {\"v\": 1}" );
+        }
+
+        JsonPathProfiler profiler = profile( input.append( '}' ).toString(), 1, new JsonPathProfiler( 1, 10 ) );
+
+        assertTrue( profiler.size() < 20 );
+        int any = find( profiler, "*" );
+        assertTrue( profiler.getTokens( any ) > 80 );
+        assertTrue( profiler.getTokens( find( profiler, "*.*" ) ) > 80 );
+    }
+
+    @Test
+    public void ranksAndReportsPaths() {
+
+        JsonPathProfiler profiler = profile( DOCUMENT, 1, new JsonPathProfiler( 1 ) );
+        int[] top = profiler.getTopPaths( 2, JsonPathProfiler.BY_TOKENS );
+
+        assertEquals( 2, top.length );
+        assertEquals( "items", profiler.getPath( top[0] ) );
+        assertEquals( "items[*]", profiler.getPath( top[1] ) );
+
+        String report = profiler.report( 2, JsonPathProfiler.BY_TOKENS );
+        assertTrue( report, report.startsWith( "1 of 1 documents, " ) );
+        assertTrue( report, report.indexOf( "% items[*] " ) > 0 );
+        assertEquals( 3, report.split( "\n" ).length );
+    }
+
+    @Test
+    public void resets() {
+
+        JsonPathProfiler profiler = profile( DOCUMENT, 1, new JsonPathProfiler( 1 ) );
+        profiler.reset();
+
+        assertEquals( 1, profiler.size() );
+        assertEquals( 0, profiler.getDocumentCount() );
+        assertEquals( 0, profiler.getTotals( JsonPathProfiler.BY_TOKENS )[0] );
+
+        profile( DOCUMENT, 1, profiler );
+        assertEquals( 4, profiler.getTokens( find( profiler, "items[*].name" ) ) );
+    }
+
+    @Test
+    public void rejectsNonPositiveSettings() {
+
+        try {
+
+            new JsonPathProfiler( 0 );
+            fail();
+        }
+        catch (IllegalArgumentException e) {
+
+            // expected
+        }
+    }
+}
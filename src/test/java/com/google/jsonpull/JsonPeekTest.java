@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2008-2010 Metova, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jsonpull;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class JsonPeekTest {
+
+    @Test
+    public void peeksEveryTokenWithoutConsumingIt() {
+
+        Json json = new Json( "{\"a\": [1, \"s\", null, {}, []], \"b\" : true}" );
+
+        do {
+
+            int peeked = json.peek();
+            assertEquals( peeked, json.peek() );
+            assertEquals( peeked, json.next() );
+        }
+        while (json.getLevel() > 0);
+
+        assertEquals( -1, json.peek() );
+    }
+
+    @Test
+    public void consumesOnlyTheExpectedType() {
+
+        Json json = new Json( "{\"a\": 1, \"b\": [2]}" );
+
+        assertFalse( json.tryNext( JsonBase.START_ARRAY ) );
+        assertTrue( json.tryNext( JsonBase.START_OBJECT ) );
+        assertTrue( json.tryNext( JsonBase.KEY ) );
+        assertFalse( json.tryNext( JsonBase.STRING ) );
+        assertTrue( json.tryNext( JsonBase.VARIABLE ) );
+        assertEquals( "1", json.getString() );
+        assertTrue( json.tryNext( JsonBase.KEY ) );
+        assertTrue( json.tryNext( JsonBase.START_ARRAY ) );
+        assertTrue( json.tryNext( JsonBase.VARIABLE ) );
+        assertFalse( json.tryNext( JsonBase.VARIABLE ) );
+        assertTrue( json.tryNext( JsonBase.END_ARRAY ) );
+        assertFalse( json.tryNext( JsonBase.KEY ) );
+        assertTrue( json.tryNext( JsonBase.END_OBJECT ) );
+    }
+
+    @Test
+    public void reportsMalformedInputWithoutThrowing() {
+
+        Json json = new Json( "{1: 2}" );
+        json.next();
+
+        assertEquals( -1, json.peek() );
+        assertFalse( json.tryNext( JsonBase.KEY ) );
+    }
+
+    @Test
+    public void reportsTheEndOfEachDocument() {
+
+        Json json = new Json( "[1] [2]" );
+        json.setMultiDocument( true );
+        json.next();
+        json.next();
+        json.next();
+
+        assertEquals( JsonBase.END_DOCUMENT, json.peek() );
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2008-2010 Metova, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jsonpull;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+
+import org.junit.Test;
+
+public class JsonStringReaderTest {
+
+    private static String readFully( Reader reader ) throws IOException {
+
+        StringBuffer result = new StringBuffer();
+        char[] chars = new char[7];
+
+        for (int read = reader.read( chars, 0, chars.length ); read != -1; read = reader.read( chars, 0, chars.length )) {
+
+            result.append( chars, 0, read );
+        }
+
+        return result.toString();
+    }
+
+    @Test
+    public void unescapesWhileReading() throws IOException {
+
+        Json json = new Json( "[\"a\\\"b\\\\c\\n\\u00e9\\ud834\\udd1e\"]" );
+        json.next();
+
+        assertEquals( "a\"b\\c\n\u00e9\ud834\udd1e", readFully( json.getStringReader() ) );
+        assertEquals( JsonBase.END_ARRAY, json.next() );
+    }
+
+    @Test
+    public void streamsValuesLargerThanTheReadBuffer() throws IOException {
+
+        StringBuffer value = new StringBuffer();
+
+        for (int i = 0; i < 20000; i++) {
+
+            value.append( (char) ( 'a' + i % 26 ) );
+        }
+
+        Json json = new Json( new StringReader( "{\"big\": \"" + value + "\", \"next\": 1}" ) );
+        json.next();
+        json.getKey();
+
+        assertEquals( value.toString(), readFully( json.getStringReader() ) );
+        assertEquals( "next", json.getKey() );
+        assertEquals( 1, json.getIntegerValue() );
+    }
+
+    @Test
+    public void skipsUnreadCharacters() throws IOException {
+
+        Json json = new Json( "[\"abcdefghijklmnopqrstuvwxyz\", \"after\"]" );
+        json.next();
+
+        Reader reader = json.getStringReader();
+        char[] chars = new char[3];
+        assertEquals( 3, reader.read( chars, 0, 3 ) );
+        assertEquals( "after", json.getStringValue() );
+    }
+
+    @Test
+    public void returnsNullForNull() {
+
+        Json json = new Json( "[null]" );
+        json.next();
+
+        assertNull( json.getStringReader() );
+    }
+
+    @Test
+    public void decodesBase64() {
+
+        Json json = new Json( "[\"AAEC/w==\", \"_-8\"]" );
+        json.next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        assertEquals( 4, json.getBase64Value( out ) );
+        assertArrayEquals( new byte[] { 0, 1, 2, (byte) 0xFF }, out.toByteArray() );
+
+        out.reset();
+        assertEquals( 2, json.getBase64Value( out ) );
+        assertArrayEquals( new byte[] { (byte) 0xFF, (byte) 0xEF }, out.toByteArray() );
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2008-2010 Metova, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jsonpull;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class JsonTokenIndexTest {
+
+    private static final String DOCUMENT = "{\"name\": \"caf\u00e9\", \"list\": [1, {\"x\": null}], \"after\": \"\ud834\udd1e\\n\"}";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static ByteBuffer source( String text ) throws IOException {
+
+        return ByteBuffer.wrap( text.getBytes( "UTF-8" ) );
+    }
+
+    private File write( String text ) throws IOException {
+
+        File file = folder.newFile();
+        OutputStream out = new FileOutputStream( file );
+        out.write( text.getBytes( "UTF-8" ) );
+        out.close();
+        return file;
+    }
+
+    @Test
+    public void recordsTokensWithByteOffsets() throws IOException {
+
+        ByteBuffer source = source( DOCUMENT );
+        JsonTokenIndex index = JsonTokenIndex.build( source );
+
+        assertEquals( 14, index.size() );
+        assertEquals( JsonBase.START_OBJECT, index.getType( 0 ) );
+        assertEquals( 13, index.getEnd( 0 ) );
+        assertEquals( JsonBase.STRING, index.getType( 2 ) );
+        assertEquals( 5, index.getLength( 2 ) );
+        assertEquals( "caf\u00e9", index.getString( source, 2 ) );
+        assertEquals( "after", index.getString( source, 11 ) );
+        assertEquals( DOCUMENT.getBytes( "UTF-8" ).length - 1, index.getOffset( 13 ) );
+        assertEquals( 0, index.getLevel( 13 ) );
+    }
+
+    @Test
+    public void navigatesWithACursor() throws IOException {
+
+        ByteBuffer source = source( DOCUMENT );
+        JsonTokenCursor cursor = JsonTokenIndex.build( source ).cursor( source );
+
+        assertEquals( JsonBase.START_OBJECT, cursor.next() );
+        cursor.next();
+        cursor.next();
+        assertEquals( JsonBase.KEY, cursor.next() );
+        assertEquals( "list", cursor.getString() );
+        assertEquals( JsonBase.START_ARRAY, cursor.next() );
+        cursor.skipChildren();
+        assertEquals( JsonBase.END_ARRAY, cursor.next() );
+        cursor.next();
+        assertEquals( JsonBase.STRING, cursor.next() );
+        assertEquals( "\ud834\udd1e\n", cursor.getStringValue() );
+        assertEquals( JsonBase.END_OBJECT, cursor.next() );
+        assertFalse( cursor.hasNext() );
+    }
+
+    @Test
+    public void seeksToALevel() throws IOException {
+
+        ByteBuffer source = source( DOCUMENT );
+        JsonTokenCursor cursor = JsonTokenIndex.build( source ).cursor( source );
+        cursor.next();
+        cursor.next();
+        cursor.next();
+        cursor.next();
+        cursor.next();
+        cursor.next();
+
+        cursor.seekLevel( 1 );
+        assertEquals( 10, cursor.getToken() );
+        assertEquals( 1, cursor.getLevel() );
+    }
+
+    @Test
+    public void reopensASidecarUntilTheSourceChanges() throws IOException {
+
+        File file = write( DOCUMENT );
+        File sidecar = folder.newFile();
+        JsonTokenIndex.build( file ).write( sidecar );
+
+        JsonTokenIndex index = JsonTokenIndex.open( file, sidecar );
+        assertNotNull( index );
+        assertEquals( 14, index.size() );
+        assertTrue( index.matches( source( DOCUMENT ) ) );
+
+        OutputStream out = new FileOutputStream( file );
+        out.write( DOCUMENT.replace( "caf\u00e9", "cafe" ).getBytes( "UTF-8" ) );
+        out.close();
+
+        assertNull( JsonTokenIndex.open( file, sidecar ) );
+        assertNull( JsonTokenIndex.open( file, new File( folder.getRoot(), "missing" ) ) );
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2008-2010 Metova, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jsonpull;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class JsonTokenStringTest {
+
+    @Test
+    public void materializesTokensOfAnyRange() {
+
+        Json json = new Json( "{\"plain\": \"ascii\", \"caf\u00e9\": \"\u00ff\u00e9\", \"euro\": \"\u20ac1\", \"esc\": \"\\u0100\", \"n\": -12.5e1}" );
+        json.next();
+
+        assertEquals( "plain", json.getKey() );
+        assertEquals( "ascii", json.getStringValue() );
+        assertEquals( "caf\u00e9", json.getKey() );
+        assertEquals( "\u00ff\u00e9", json.getStringValue() );
+        assertEquals( "euro", json.getKey() );
+        assertEquals( "\u20ac1", json.getStringValue() );
+        assertEquals( "esc", json.getKey() );
+        assertEquals( "\u0100", json.getStringValue() );
+        assertEquals( "n", json.getKey() );
+        assertEquals( "-12.5e1", json.getUnknownValue() );
+    }
+
+    @Test
+    public void materializesTokensLongerThanTheHelperBuffer() {
+
+        StringBuffer value = new StringBuffer();
+
+        for (int i = 0; i < 10000; i++) {
+
+            value.append( (char) ( ( i % 7 == 0 ) ? 0x20ac : 'a' + i % 26 ) );
+        }
+
+        Json json = new Json( "[\"" + value + "\", \"short\"]" );
+        json.next();
+
+        assertEquals( value.toString(), json.getStringValue() );
+        assertEquals( "short", json.getStringValue() );
+    }
+
+    @Test
+    public void readsAsciiIndexedTokensAsLatin1() throws Exception {
+
+        byte[] utf8 = "[\"ascii\", \"caf\u00e9\", \"?\", -12.5e1, \"a\\u00e9\"]".getBytes( "UTF-8" );
+
+        // the ? becomes a stray continuation byte, one U+FFFD: as many characters as bytes, but not ASCII
+        utf8[20] = (byte) 0x80;
+        ByteBuffer source = ByteBuffer.wrap( utf8 );
+        JsonTokenIndex index = JsonTokenIndex.build( source );
+
+        assertTrue( index.isAscii( 1 ) );
+        assertEquals( "ascii", index.getString( source, 1 ) );
+        assertFalse( index.isAscii( 2 ) );
+        assertEquals( "caf\u00e9", index.getString( source, 2 ) );
+        assertFalse( index.isAscii( 3 ) );
+        assertEquals( "\ufffd", index.getString( source, 3 ) );
+        assertTrue( index.isAscii( 4 ) );
+        assertEquals( "-12.5e1", index.getString( source, 4 ) );
+        assertTrue( index.isAscii( 5 ) );
+        assertEquals( "a\u00e9", JsonEscapes.unescape( index.getString( source, 5 ) ) );
+
+        // a buffer without an array is copied first
+        ByteBuffer direct = ByteBuffer.allocateDirect( utf8.length );
+        direct.put( utf8 );
+        direct.flip();
+        assertEquals( "ascii", index.getString( direct, 1 ) );
+        assertEquals( "caf\u00e9", index.getString( direct, 2 ) );
+    }
+}
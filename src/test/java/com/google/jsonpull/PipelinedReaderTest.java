@@ -0,0 +1,248 @@
+/*
+ * Copyright (c) 2008-2010 Metova, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jsonpull;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.io.StringReader;
+
+import org.junit.Test;
+
+public class PipelinedReaderTest {
+
+    /**
+     * A source that blocks until it is closed, and records that it was.
+     */
+    private static final class BlockingReader extends Reader {
+
+        volatile boolean closed;
+
+        public synchronized int read( char[] chars, int offset, int length ) throws IOException {
+
+            while (!closed) {
+
+                try {
+
+                    wait();
+                }
+                catch (InterruptedException e) {
+
+                    throw new InterruptedIOException();
+                }
+            }
+
+            return -1;
+        }
+
+        public synchronized void close() {
+
+            closed = true;
+            notifyAll();
+        }
+    }
+
+    private static String readFully( Reader reader ) throws IOException {
+
+        StringBuffer result = new StringBuffer();
+        char[] chars = new char[7];
+
+        for (int read = reader.read( chars, 0, chars.length ); read != -1; read = reader.read( chars, 0, chars.length )) {
+
+            result.append( chars, 0, read );
+        }
+
+        return result.toString();
+    }
+
+    @Test
+    public void readsTheSourceThroughBothBlocks() throws IOException {
+
+        StringBuffer text = new StringBuffer();
+
+        for (int i = 0; i < 10000; i++) {
+
+            text.append( i ).append( ',' );
+        }
+
+        PipelinedReader reader = new PipelinedReader( new StringReader( text.toString() ), 64 );
+
+        assertEquals( text.toString(), readFully( reader ) );
+        assertEquals( -1, reader.read( new char[1], 0, 1 ) );
+    }
+
+    @Test
+    public void feedsTheParser() {
+
+        Json json = new Json( new PipelinedReader( new StringReader( "{\"a\": [1, 2, 3], \"b\": \"c\"}" ), 4 ) );
+        json.next();
+
+        assertEquals( "a", json.getKey() );
+        json.next();
+        assertEquals( 1, json.getIntegerValue() );
+    }
+
+    @Test
+    public void reportsSourceFailures() {
+
+        Reader failing = new Reader() {
+
+            public int read( char[] chars, int offset, int length ) throws IOException {
+
+                throw new IOException( "broken" );
+            }
+
+            public void close() {
+
+                // nothing to close
+            }
+        };
+
+        try {
+
+            readFully( new PipelinedReader( failing, 16 ) );
+            fail();
+        }
+        catch (IOException e) {
+
+            assertEquals( "broken", e.getMessage() );
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void throwsWhenTheWaitingReaderIsInterrupted() throws Exception {
+
+        BlockingReader source = new BlockingReader();
+        final PipelinedReader reader = new PipelinedReader( source, 16 );
+        final Throwable[] thrown = new Throwable[1];
+        final boolean[] interrupted = new boolean[1];
+
+        Thread consumer = new Thread() {
+
+            public void run() {
+
+                try {
+
+                    reader.read( new char[4], 0, 4 );
+                }
+                catch (Throwable e) {
+
+                    thrown[0] = e;
+                    interrupted[0] = isInterrupted();
+                }
+            }
+        };
+
+        consumer.start();
+        Thread.sleep( 100 );
+        consumer.interrupt();
+        consumer.join();
+
+        assertTrue( thrown[0] instanceof InterruptedIOException );
+        assertTrue( interrupted[0] );
+
+        reader.close();
+        source.close();
+    }
+
+    @Test(timeout = 10000)
+    public void stopsTheParserWhenInterrupted() throws Exception {
+
+        BlockingReader source = new BlockingReader();
+        PipelinedReader reader = new PipelinedReader( source, 16 );
+        final Json json = new Json( reader );
+        final Throwable[] thrown = new Throwable[1];
+        final boolean[] interrupted = new boolean[1];
+
+        Thread consumer = new Thread() {
+
+            public void run() {
+
+                try {
+
+                    json.next();
+                }
+                catch (Throwable e) {
+
+                    thrown[0] = e;
+                    interrupted[0] = isInterrupted();
+                }
+            }
+        };
+
+        consumer.start();
+        Thread.sleep( 100 );
+        consumer.interrupt();
+        consumer.join();
+
+        assertTrue( thrown[0] instanceof JsonLimitException );
+        assertEquals( JsonLimitException.INTERRUPTED, ( (JsonLimitException) thrown[0] ).getReason() );
+        assertTrue( interrupted[0] );
+
+        reader.close();
+        source.close();
+    }
+
+    @Test(timeout = 10000)
+    public void closesTheSourceWhenClosedEarly() throws Exception {
+
+        final boolean[] closed = new boolean[1];
+        StringBuffer text = new StringBuffer();
+
+        for (int i = 0; i < 1000; i++) {
+
+            text.append( "[1]" );
+        }
+
+        Reader source = new StringReader( text.toString() ) {
+
+            public void close() {
+
+                synchronized (closed) {
+
+                    closed[0] = true;
+                    closed.notifyAll();
+                }
+            }
+        };
+
+        PipelinedReader reader = new PipelinedReader( source, 16 );
+        reader.read( new char[4], 0, 4 );
+        reader.close();
+
+        synchronized (closed) {
+
+            while (!closed[0]) {
+
+                closed.wait();
+            }
+        }
+
+        try {
+
+            reader.read( new char[64], 0, 64 );
+            fail();
+        }
+        catch (IOException e) {
+
+            assertEquals( "Reader closed", e.getMessage() );
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2008-2010 Metova, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.jsonpull;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class Utf8DecoderTest {
+
+    private static final byte[] MIXED = { 'a', (byte) 0xC3, (byte) 0xA9, (byte) 0xE2, (byte) 0x82, (byte) 0xAC, (byte) 0xF0, (byte) 0x9D,
+            (byte) 0x84, (byte) 0x9E, 'z' };
+
+    private static final String MIXED_TEXT = "a\u00e9\u20ac\ud834\udd1ez";
+
+    private static String decode( byte[] bytes ) {
+
+        char[] chars = new char[bytes.length];
+        int count = new Utf8Decoder().decode( bytes, 0, bytes.length, true, chars, 0, chars.length );
+        return new String( chars, 0, count );
+    }
+
+    private static String readFully( Reader reader ) throws IOException {
+
+        StringBuffer result = new StringBuffer();
+        char[] chars = new char[3];
+
+        for (int read = reader.read( chars, 0, chars.length ); read != -1; read = reader.read( chars, 0, chars.length )) {
+
+            result.append( chars, 0, read );
+        }
+
+        return result.toString();
+    }
+
+    @Test
+    public void decodesAllSequenceLengths() {
+
+        assertEquals( MIXED_TEXT, decode( MIXED ) );
+    }
+
+    @Test
+    public void replacesInvalidSequences() {
+
+        // a lone continuation byte, a truncated sequence, an overlong form and a code point above U+10FFFF
+        assertEquals( "\ufffdx", decode( new byte[] { (byte) 0x80, 'x' } ) );
+        assertEquals( "\ufffdx", decode( new byte[] { (byte) 0xE2, (byte) 0x82, 'x' } ) );
+        assertEquals( "\ufffd", decode( new byte[] { (byte) 0xC0, (byte) 0xAF } ) );
+        assertEquals( "\ufffd", decode( new byte[] { (byte) 0xF4, (byte) 0x90, (byte) 0x80, (byte) 0x80 } ) );
+        assertEquals( "\ufffd", decode( new byte[] { (byte) 0xE2, (byte) 0x82 } ) );
+    }
+
+    @Test
+    public void leavesACutOffSequenceForTheNextCall() {
+
+        Utf8Decoder decoder = new Utf8Decoder();
+        char[] chars = new char[4];
+
+        assertEquals( 2, decoder.decode( MIXED, 0, 5, false, chars, 0, chars.length ) );
+        assertEquals( 3, decoder.getPosition() );
+    }
+
+    @Test
+    public void splitsASurrogatePairThatDoesNotFit() {
+
+        Utf8Decoder decoder = new Utf8Decoder();
+        char[] chars = new char[1];
+
+        assertEquals( 1, decoder.decode( MIXED, 6, 10, true, chars, 0, 1 ) );
+        assertEquals( '\ud834', chars[0] );
+        assertTrue( decoder.hasPendingLowSurrogate() );
+
+        assertEquals( 1, decoder.decode( MIXED, 10, 10, true, chars, 0, 1 ) );
+        assertEquals( '\udd1e', chars[0] );
+        assertFalse( decoder.hasPendingLowSurrogate() );
+    }
+
+    @Test
+    public void readsStreamsAndBuffersAlike() throws IOException {
+
+        assertEquals( MIXED_TEXT, readFully( new Utf8InputReader( new ByteArrayInputStream( MIXED ), 0 ) ) );
+        assertEquals( MIXED_TEXT, readFully( new Utf8BufferReader( ByteBuffer.wrap( MIXED ) ) ) );
+    }
+
+    @Test
+    public void mapsCharactersToBytes() {
+
+        Utf8BufferReader reader = new Utf8BufferReader( ByteBuffer.wrap( MIXED ) );
+
+        assertEquals( 1, reader.toByteOffset( 1 ) );
+        assertEquals( 3, reader.toByteOffset( 2 ) );
+        assertEquals( 6, reader.toByteOffset( 3 ) );
+        assertEquals( 10, reader.toByteOffset( 5 ) );
+        assertEquals( 11, reader.toByteOffset( 6 ) );
+    }
+}